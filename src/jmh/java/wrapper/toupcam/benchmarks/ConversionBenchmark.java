@@ -0,0 +1,72 @@
+package wrapper.toupcam.benchmarks;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wrapper.toupcam.models.ImageType;
+import wrapper.toupcam.util.FrameBufferPool;
+import wrapper.toupcam.util.Util;
+
+/**
+ * Native frame to java conversions of the capture path, one frame per op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+
+    private final FrameBufferPool pool = new FrameBufferPool();
+
+    @Benchmark
+    public BufferedImage convertImagePointerToImage(SyntheticFrame frame) {
+        return Util.convertImagePointerToImage(frame.image, frame.width, frame.height);
+    }
+
+    // the per byte JNA path convertImagePointerToImage replaced, as its baseline.
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public BufferedImage convertPerByte(SyntheticFrame frame) {
+        return Util.convertIntArrayToImage(Util.convertImagePointerToIntArrayABGR(frame.image, frame.width, frame.height),
+                frame.width, frame.height);
+    }
+
+    @Benchmark
+    public BufferedImage decimate4x(SyntheticFrame frame) {
+        return Util.convertImagePointerToImage(frame.image, frame.imageHeader(), 4);
+    }
+
+    @Benchmark
+    public BufferedImage cropQuarter(SyntheticFrame frame) {
+        return Util.convertImagePointerToImage(frame.image, frame.imageHeader(),
+                new Rectangle(frame.width / 4, frame.height / 4, frame.width / 2, frame.height / 2));
+    }
+
+    @Benchmark
+    public byte[] convertImagePointerToByteArray(SyntheticFrame frame) {
+        return Util.convertImagePointerToByteArray(frame.image, frame.width, frame.height, ImageType.ABGR);
+    }
+
+    // loads OpenCV on its first call, during warmup.
+    @Benchmark
+    public Mat convertRGBImagePointerToMat(SyntheticFrame frame) {
+        Mat mat = Util.convertRGBImagePointerToMat(frame.image, frame.height, frame.width, pool);
+        mat.release();
+        return mat;
+    }
+
+}
@@ -0,0 +1,67 @@
+package wrapper.toupcam.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wrapper.toupcam.enumerations.BayerPattern;
+import wrapper.toupcam.enumerations.DemosaicAlgorithm;
+import wrapper.toupcam.processing.DemosaicEngine;
+
+/**
+ * Demosaicing one 8 bit RGGB frame at 2592x1944 into BGR, on one thread and
+ * on several; divide the frame's 5 megapixels by the time per op, and by the
+ * thread count, for megapixels per second per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DemosaicBenchmark {
+
+    private static final int WIDTH = 2592, HEIGHT = 1944;
+
+    @Param({"BILINEAR", "EDGE_AWARE"})
+    public DemosaicAlgorithm algorithm;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private ForkJoinPool pool;
+    private DemosaicEngine engine;
+    private final byte[] raw = new byte[WIDTH * HEIGHT];
+    private final byte[] bgr = new byte[WIDTH * HEIGHT * 3];
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < raw.length; i++) raw[i] = (byte) (i * 7);
+        pool = new ForkJoinPool(threads);
+        engine = new DemosaicEngine(pool, DemosaicEngine.DEFAULT_STRIP_ROWS);
+    }
+
+    @TearDown
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public byte[] demosaic() {
+        engine.demosaic(raw, WIDTH, HEIGHT, BayerPattern.RGGB, 8, algorithm, bgr);
+        return bgr;
+    }
+
+}
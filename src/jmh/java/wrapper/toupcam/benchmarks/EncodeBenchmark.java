@@ -0,0 +1,88 @@
+package wrapper.toupcam.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.processing.JpegEncoder;
+import wrapper.toupcam.util.FrameBufferPool;
+import wrapper.toupcam.util.Util;
+
+/**
+ * Encoding a converted frame, JPEG through compressBufferedImageByteArray
+ * and plain ImageIO PNG/JPEG writes into memory, so disk speed is left out.
+ * JpegEncoder encodes the frame bytes as they are, on one thread and on
+ * every core; divide the all cores throughput by the core count for
+ * frames per second per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class EncodeBenchmark {
+
+    private BufferedImage image;
+    private Frame frame;
+    private final JpegEncoder jpegEncoder = new JpegEncoder(0.5f);
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024 * 1024);
+
+    @Setup
+    public void convert(SyntheticFrame frame) {
+        image = Util.convertImagePointerToImage(frame.image, frame.width, frame.height);
+        FrameView view = new FrameView().wrap(frame.image.getByteBuffer(0, frame.image.size()),
+                frame.imageHeader(), false);
+        this.frame = Frame.copyOf(view, new FrameBufferPool(1));
+    }
+
+    @Benchmark
+    public byte[] jpegEncoder() throws IOException {
+        return jpegEncoder.encode(frame);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public byte[] jpegEncoderAllCores() throws IOException {
+        return jpegEncoder.encode(frame);
+    }
+
+    @Benchmark
+    public byte[] compressBufferedImageByteArray() {
+        return Util.compressBufferedImageByteArray(image);
+    }
+
+    @Benchmark
+    public int imageIOWriteJpeg() throws IOException {
+        out.reset();
+        ImageIO.write(image, "jpg", out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int imageIOWritePng() throws IOException {
+        out.reset();
+        ImageIO.write(image, "png", out);
+        return out.size();
+    }
+
+}
@@ -0,0 +1,61 @@
+package wrapper.toupcam.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Platform;
+
+/**
+ * Per call overhead of interface mapped against direct mapped JNA calls,
+ * measured on a trivial C library function standing in for the toupcam
+ * SDK, so only the binding is timed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NativeCallBenchmark {
+
+    public interface StubLibrary extends Library {
+        int abs(int value);
+    }
+
+    public static class DirectStub {
+        static native int abs(int value);
+    }
+
+    private StubLibrary library;
+    private int value = -42;
+
+    @Setup
+    public void setup() {
+        library = (StubLibrary) Native.loadLibrary(Platform.C_LIBRARY_NAME, StubLibrary.class);
+        Native.register(DirectStub.class, NativeLibrary.getInstance(Platform.C_LIBRARY_NAME));
+    }
+
+    @Benchmark
+    public int interfaceMapped() {
+        return library.abs(value);
+    }
+
+    @Benchmark
+    public int directMapped() {
+        return DirectStub.abs(value);
+    }
+
+}
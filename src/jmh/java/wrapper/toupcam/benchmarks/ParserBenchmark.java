@@ -0,0 +1,42 @@
+package wrapper.toupcam.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.util.ImageHeaderReader;
+import wrapper.toupcam.util.ParserUtil;
+
+/**
+ * Per frame parsing of the BITMAPINFOHEADER pushed with every image.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+
+    private final ImageHeaderReader reader = new ImageHeaderReader();
+
+    @Benchmark
+    public ImageHeader parseImageHeader(SyntheticFrame frame) {
+        return ParserUtil.parseImageHeader(frame.header);
+    }
+
+    @Benchmark
+    public ImageHeader readImageHeader(SyntheticFrame frame) {
+        return reader.read(frame.header);
+    }
+
+}
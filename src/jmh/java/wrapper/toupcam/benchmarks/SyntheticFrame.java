@@ -0,0 +1,65 @@
+package wrapper.toupcam.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.sun.jna.Memory;
+
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.util.FrameConverter;
+
+/**
+ * A native BGR frame and its BITMAPINFOHEADER, as the SDK would push them,
+ * at the resolutions our cameras report.
+ */
+@State(Scope.Benchmark)
+public class SyntheticFrame {
+
+    @Param({"1280x960", "2592x1944", "5440x3648"})
+    public String resolution;
+
+    public int width;
+    public int height;
+    public Memory image;
+    public Memory header;
+
+    @Setup
+    public void setup() {
+        String[] size = resolution.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+
+        int frameSize = FrameConverter.frameSize(width, height, 24);
+        image = new Memory(frameSize);
+        byte[] row = new byte[FrameConverter.stride(width, 24)];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < row.length; x++) row[x] = (byte) (x + y);
+            image.write((long) y * row.length, row, 0, row.length);
+        }
+
+        header = new Memory(40);
+        header.setInt(0, 40);
+        header.setInt(4, width);
+        header.setInt(8, height);
+        header.setShort(12, (short) 1);
+        header.setShort(14, (short) 24);
+        header.setInt(16, 0);
+        header.setInt(20, frameSize);
+        header.setInt(24, 0);
+        header.setInt(28, 0);
+        header.setInt(32, 0);
+        header.setInt(36, 0);
+    }
+
+    public ImageHeader imageHeader() {
+        ImageHeader imageHeader = new ImageHeader();
+        imageHeader.setWidth(width);
+        imageHeader.setHeight(height);
+        imageHeader.setBitcount(24);
+        imageHeader.setImageSize(FrameConverter.frameSize(width, height, 24));
+        return imageHeader;
+    }
+
+}
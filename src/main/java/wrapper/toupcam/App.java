@@ -3,8 +3,14 @@ package wrapper.toupcam;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import javax.imageio.ImageIO;
 
@@ -12,46 +18,83 @@ import com.sun.jna.Memory;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 
-import org.opencv.core.Core;
-import org.opencv.core.Mat;
-import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import wrapper.toupcam.callbacks.BufferedImageStreamCallback;
-import wrapper.toupcam.callbacks.ByteImageStreamCallback;
-import wrapper.toupcam.callbacks.EventCallback;
+import wrapper.toupcam.callbacks.FrameViewCallback;
 import wrapper.toupcam.callbacks.ImageStreamCallback;
 import wrapper.toupcam.callbacks.PTOUPCAM_DATA_CALLBACK;
-import wrapper.toupcam.callbacks.PTOUPCAM_HOTPLUG_CALLBACK;
-import wrapper.toupcam.enumerations.Event;
 import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.enumerations.ImageFormat;
 import wrapper.toupcam.enumerations.Options;
+import wrapper.toupcam.enumerations.StreamState;
 import wrapper.toupcam.exceptions.StreamingException;
 import wrapper.toupcam.libraries.LibToupcam;
+import wrapper.toupcam.metrics.CameraMetrics;
 import wrapper.toupcam.models.*;
+import wrapper.toupcam.recording.FrameWriter;
+import wrapper.toupcam.streaming.FrameDispatcher;
+import wrapper.toupcam.streaming.PullModeEngine;
+import wrapper.toupcam.streaming.SnapshotRequests;
+import wrapper.toupcam.streaming.StreamStateMachine;
+import wrapper.toupcam.streaming.TriggerBurst;
 import wrapper.toupcam.util.Constants;
+import wrapper.toupcam.util.FrameBufferPool;
+import wrapper.toupcam.util.FrameConverter;
+import wrapper.toupcam.util.ImageHeaderReader;
 import wrapper.toupcam.util.NativeUtils;
-import wrapper.toupcam.util.ParserUtil;
 import wrapper.toupcam.util.Util;
 
-import static org.opencv.core.CvType.CV_8UC4;
 
 public class App implements Toupcam {
 
 
     private LibToupcam libToupcam = null;
     private Pointer camHandler;
-    private static int counter = 0;
+    // set by startPushMode, writes captured frames to disk.
+    private FrameWriter frameWriter = null;
 
 
-    private boolean isStreaming = false;
+    // start, pause, resume, stop and mode switches, frames are only delivered while STREAMING.
+    private final StreamStateMachine streamState = new StreamStateMachine(
+            state -> this.metrics.setStreaming(state == StreamState.STREAMING || state == StreamState.SWITCHING));
 
     // cache variable to store callback for image, for use case when streaming
     // has to be stopped and restarted.
     private ImageStreamCallback imageCallback = null;
 
-    static {
-        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
-    }
+    // optional queue between the SDK thread and imageCallback.
+    private volatile FrameDispatcher dispatcher = null;
+
+    // JNA only holds a weak reference to callbacks, keep the push callback
+    // reachable for as long as the SDK may call it.
+    private PTOUPCAM_DATA_CALLBACK dataCallback = null;
+
+    // resolution table of the opened camera, fixed for its model.
+    private volatile Resolution[] resolutions = null;
+
+    // burst in progress, only one at a time as frames can't be told apart.
+    private final AtomicReference<TriggerBurst> burst = new AtomicReference<>();
+
+    // stills asked for by snap(), installed as a frame tap on first use.
+    private SnapshotRequests snapshots = null;
+
+    // see every pushed frame before the streaming callback.
+    private final List<FrameViewCallback> frameTaps = new CopyOnWriteArrayList<>();
+
+    // reused for every pushed frame, the SDK delivers frames from a single thread.
+    private final FrameView frameView = new FrameView();
+    private final ImageHeaderReader headerReader = new ImageHeaderReader();
+
+    // sequence number of the last frame admitted, push and pull, see ImageHeader#getSequence().
+    private final AtomicLong sequence = new AtomicLong();
+
+    // active pull mode, null while pushing or stopped.
+    private volatile PullModeEngine pullEngine = null;
+
+    // frame rate, latencies and stream state, exposed over JMX.
+    private CameraMetrics metrics;
+
+    // frame sized scratch buffers, re-keyed whenever the resolution changes.
+    private final FrameBufferPool framePool = new FrameBufferPool();
 
     public static void main(String[] args) {
 
@@ -146,8 +189,30 @@ public class App implements Toupcam {
         //app.stopStreaming();
     }
 
+    /**
+     * Switches between video (0) and trigger mode without restarting the
+     * stream, frames in flight during the switch are discarded.
+     */
     public HResult setTriggerMode(int mode) {
-        return setOptions(Options.OPTION_TRIGGER, mode);
+        return setTriggerMode(mode, new CompletableFuture<>());
+    }
+
+    /**
+     * Same as {@link #setTriggerMode(int)}.
+     *
+     * @return completes with the nanoseconds until the first frame in the
+     * new mode, see {@link StreamStateMachine#switchMode}.
+     */
+    public CompletableFuture<Long> switchTriggerMode(int mode) {
+        CompletableFuture<Long> firstFrame = new CompletableFuture<>();
+        setTriggerMode(mode, firstFrame);
+        return firstFrame;
+    }
+
+    private HResult setTriggerMode(int mode, CompletableFuture<Long> firstFrame) {
+        HResult result = streamState.switchMode(() -> setOptions(Options.OPTION_TRIGGER, mode), firstFrame);
+        if (HResult.S_OK.equals(result)) metrics.setTriggerMode(mode);
+        return result;
     }
 
     private HResult setOptions(Options option, int value) {
@@ -165,39 +230,69 @@ public class App implements Toupcam {
         return HResult.key(libToupcam.Toupcam_Trigger(camHandler, numberOfImages));
     }
 
+    @Override
+    public CompletableFuture<List<Frame>> triggerBurst(int numberOfImages, long timeout, TimeUnit unit) {
+        Memory size = new Memory(8);
+        libToupcam.Toupcam_get_Size(getCamHandler(), size, size.share(4));
+        // push mode always delivers 24 bits, pull mode its own depth.
+        PullModeEngine engine = pullEngine;
+        int bits = engine == null ? 24 : engine.getBits();
+        TriggerBurst next = new TriggerBurst(numberOfImages, FrameConverter.frameSize(size.getInt(0), size.getInt(4), bits));
+        if (!burst.compareAndSet(null, next)) {
+            next.fail(new IllegalStateException("a trigger burst is already in progress"));
+            return next.getResult();
+        }
+        next.getResult().whenComplete((frames, e) -> {
+            removeFrameTap(next);
+            // triggers left over from a timed out burst would leak into the next one.
+            if (e != null) libToupcam.Toupcam_Trigger(getCamHandler(), 0);
+            burst.compareAndSet(next, null);
+        });
+        addFrameTap(next);
+        next.arm(timeout, unit);
+        HResult result = getTriggerImages(numberOfImages);
+        if (!HResult.S_OK.equals(result))
+            next.fail(new StreamingException("Toupcam_Trigger failed : " + result));
+        return next.getResult();
+    }
+
     @Override
     public boolean isStreaming() {
-        return isStreaming;
+        return streamState.isStreaming();
+    }
+
+    public StreamStateMachine getStreamState() {
+        return streamState;
     }
 
     @Override
     public HResult restartStreaming() throws StreamingException {
         if (this.imageCallback == null) throw new StreamingException(Constants.RESTART_STREAM_EXCEP_MSG);
-        return startStreaming(this.imageCallback);
+        return startStreaming(this.imageCallback, this.dispatcher);
     }
 
     @Override
     public HResult pauseStreaming() {
-        HResult result = HResult.key(libToupcam.Toupcam_Pause(getCamHandler()));
-        if (result.equals(HResult.S_OK) || result.equals(HResult.S_FALSE))
-            isStreaming = false;
-
-        return result;
+        return streamState.pause(() -> HResult.key(libToupcam.Toupcam_Pause(getCamHandler(), true)));
     }
 
     @Override
     public HResult resumeStreaming() {
-        HResult result = HResult.key(libToupcam.Toupcam_Pause(getCamHandler()));
-        if (result.equals(HResult.S_OK) || result.equals(HResult.S_FALSE))
-            isStreaming = true;
-
-        return result;
+        return streamState.resume(() -> HResult.key(libToupcam.Toupcam_Pause(getCamHandler(), false)));
     }
 
     @Override
     public HResult stopStreaming() {
-        isStreaming = false;
-        return HResult.key(libToupcam.Toupcam_Stop(getCamHandler()));
+        return streamState.stop(() -> {
+            if (dispatcher != null) dispatcher.close();
+            // the backlog is still written, the workers exit once it is.
+            if (frameWriter != null) frameWriter.close();
+            if (pullEngine != null) {
+                pullEngine.stop();
+                pullEngine = null;
+            }
+            return HResult.key(libToupcam.Toupcam_Stop(getCamHandler()));
+        });
     }
 
     @Override
@@ -206,38 +301,82 @@ public class App implements Toupcam {
     }
 
     @Override
-    public HResult setResolution(int resolutionIndex) {
-        return HResult.key(libToupcam.Toupcam_put_eSize(getCamHandler(), resolutionIndex));
+    public CompletableFuture<Frame> snap(int resolutionIndex) {
+        return snap(resolutionIndex, Constants.SNAP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
     }
 
-    @Override
-    public HResult startStreaming(ImageStreamCallback imageCallback) {
-        isStreaming = true;
-        this.imageCallback = imageCallback;        // caching imageCallback for later use, in case of start/restart
-
-        int result = libToupcam.Toupcam_StartPushMode(getCamHandler(),
-                (Pointer imagePointer, Pointer imageMetaData, boolean isSnapshot) -> {
+    public CompletableFuture<Frame> snap(int resolutionIndex, long timeout, TimeUnit unit) {
+        Resolution[] resolutions = getResolutions();
+        if (resolutionIndex < 0 || resolutionIndex >= resolutions.length) {
+            CompletableFuture<Frame> invalid = new CompletableFuture<>();
+            invalid.completeExceptionally(new IllegalArgumentException("no resolution " + resolutionIndex));
+            return invalid;
+        }
+        return getSnapshots().request(resolutionIndex, resolutions[resolutionIndex],
+                () -> libToupcam.Toupcam_Snap(getCamHandler(), resolutionIndex), timeout, unit);
+    }
 
-                    ImageHeader header = ParserUtil.parseImageHeader(imageMetaData);
+    public synchronized SnapshotRequests getSnapshots() {
+        if (snapshots == null) {
+            snapshots = new SnapshotRequests();
+            addFrameTap(snapshots);
+        }
+        return snapshots;
+    }
 
-                    if (imageCallback instanceof ByteImageStreamCallback) {
-                        byte[] imageBytes = Util.convertImagePointerToByteArray(imagePointer,
-                                header.getWidth(), header.getHeight(), ImageType.ABGR);
+    @Override
+    public HResult setResolution(int resolutionIndex) {
+        return setResolution(getCamHandler(), resolutionIndex);
+    }
 
-                        if (isSnapshot)
-                            imageCallback.onReceiveStillImage(imageBytes, header);
-                        else imageCallback.onReceivePreviewImage(imageBytes, header);
+    @Override
+    public HResult startStreaming(ImageStreamCallback imageCallback) {
+        return startStreaming(imageCallback, null);
+    }
 
-                    } else if (imageCallback instanceof BufferedImageStreamCallback) {
-                        BufferedImage image = Util.convertImagePointerToImage(
-                                imagePointer, header.getWidth(), header.getHeight());
+    @Override
+    public HResult startStreaming(ImageStreamCallback imageCallback, FrameDispatcher dispatcher) {
+        return streamState.start(() -> {
+            this.imageCallback = imageCallback;        // caching imageCallback for later use, in case of start/restart
+            this.dispatcher = dispatcher;
+            ImageStreamCallback target = dispatcher == null ? imageCallback : dispatcher.start(imageCallback);
+            return startPush(getCamHandler(), target);
+        });
+    }
 
-                        if (isSnapshot)
-                            imageCallback.onReceiveStillImage(image, header);
-                        else imageCallback.onReceivePreviewImage(image, header);
-                    }
+    private void runFrameTaps(FrameView frame) {
+        for (FrameViewCallback tap : frameTaps) {
+            try {
+                tap.onReceiveFrame(frame);
+            } catch (RuntimeException e) {
+                System.out.println("Exception thrown by frame tap : " + e);
+            }
+        }
+    }
 
-                }, Pointer.NULL);
+    private HResult startPush(Pointer handler, ImageStreamCallback target) {
+        dataCallback = (Pointer imagePointer, Pointer imageMetaData, boolean isSnapshot) -> {
+            long arrival = System.nanoTime();
+            if (!streamState.admit(arrival)) return;
+            long frameNumber = sequence.incrementAndGet();
+            metrics.recordFrame(arrival);
+            ImageHeader header = headerReader.read(imageMetaData);
+            if (headerReader.isFormatChanged()) {
+                framePool.invalidate();
+                System.out.println("Frame format changed: " + header);
+            }
+            ByteBuffer frame = imagePointer.getByteBuffer(0, FrameConverter.frameSize(header));
+            try {
+                frameView.wrap(frame, header, isSnapshot).stamp(arrival, frameNumber);
+                runFrameTaps(frameView);
+                target.onReceiveFrame(frameView);
+            } finally {
+                frameView.invalidate();
+                metrics.recordCallback(System.nanoTime() - arrival);
+            }
+        };
+        NativeUtils.attachCallbackThreads(dataCallback, "toupcam-sdk");
+        int result = libToupcam.Toupcam_StartPushMode(handler, dataCallback, Pointer.NULL);
         return HResult.key(result);
     }
 
@@ -257,18 +396,56 @@ public class App implements Toupcam {
     }
 
     public App() {
+        long start = System.nanoTime();
         libToupcam = (LibToupcam) NativeUtils.getNativeLib();
         camHandler = openCam(null);        // by default picks up the first toupcam connected to system.
+        initMetrics(null);
+        System.out.println(String.format("Toupcam ready in %d ms (extract %d ms, load %d ms)",
+                (System.nanoTime() - start) / 1000000, NativeUtils.getExtractionNanos() / 1000000,
+                NativeUtils.getLoadNanos() / 1000000));
         //	Util.keepVMRunning();				// keep JVM from terminating, not needed inside tomcat.
     }
 
+    /**
+     * Runs the wrapper on any {@link LibToupcam}, e.g. a
+     * {@link wrapper.toupcam.libraries.SyntheticToupcam} for tests without a camera.
+     */
+    public App(LibToupcam libToupcam) {
+        this(libToupcam, null);
+    }
+
+    public App(LibToupcam libToupcam, String id) {
+        this.libToupcam = libToupcam;
+        camHandler = openCam(id);
+        initMetrics(id);
+    }
+
+    private void initMetrics(String id) {
+        metrics = new CameraMetrics(id == null ? "default" : id);
+        metrics.addDropSource(this::getDroppedFrames);
+        frameView.setMetrics(metrics);
+        metrics.register();
+    }
+
+    @Override
+    public void close() {
+        stopStreaming();
+        if (camHandler != null) {
+            libToupcam.Toupcam_Close(camHandler);
+            camHandler = null;
+        }
+        metrics.unregister();
+    }
+
+    /**
+     * @return this camera's metrics, registered as an MBean until {@link #close()}.
+     */
+    public CameraMetrics getMetrics() {
+        return metrics;
+    }
+
     public void registerPlugInOrOut() {
-        libToupcam.Toupcam_HotPlug(new PTOUPCAM_HOTPLUG_CALLBACK() {
-            @Override
-            public void invoke() {
-                System.out.println("Camera is pluged in or out.");
-            }
-        });
+        DeviceRegistry.of(libToupcam).registerHotPlug();
     }
 
     public int getResolutionNumbers() {
@@ -279,10 +456,9 @@ public class App implements Toupcam {
     }
 
     public Resolution getResolution(int resolutionIndex) {
-        Pointer widthPointer = new Memory(4);
-        Pointer heightPointer = new Memory(4);
-        int result = libToupcam.Toupcam_get_Resolution(camHandler, resolutionIndex, widthPointer, heightPointer);
-        return new Resolution(widthPointer.getInt(0), heightPointer.getInt(0));
+        Memory size = new Memory(8);
+        int result = libToupcam.Toupcam_get_Resolution(camHandler, resolutionIndex, size, size.share(4));
+        return new Resolution(size.getInt(0), size.getInt(4));
     }
 
     public RawFormat getRawFormat(Pointer handler) {
@@ -292,113 +468,86 @@ public class App implements Toupcam {
     }
 
     public HResult setResolution(Pointer handler, int resolutionIndex) {
-        return HResult.key(libToupcam.Toupcam_put_eSize(handler, resolutionIndex));
+        Supplier<HResult> change = () -> HResult.key(libToupcam.Toupcam_put_eSize(handler, resolutionIndex));
+        PullModeEngine engine = pullEngine;
+        HResult result = engine == null ? change.get() : engine.reconfigure(change);
+        framePool.invalidate();
+        if (HResult.S_OK.equals(result)) metrics.setResolutionIndex(resolutionIndex);
+        return result;
     }
 
     @Override
     public int countConnectedCams() {
-        Memory memory = new Memory(Constants.MEM_SIZE_FOR_TOUPCAMINST);
-        return libToupcam.Toupcam_Enum(memory);
+        return DeviceRegistry.of(libToupcam).count();
     }
 
     @Override
     public List<ToupcamInst> getToupcams() {
-        List<ToupcamInst> toupcamInstList = new ArrayList<ToupcamInst>();
-        Memory structurePointer = new Memory(Constants.MEM_SIZE_FOR_TOUPCAMINST);
-        int count_cams = libToupcam.Toupcam_Enum(structurePointer);
-        for (int i = 0; i < count_cams; i++) toupcamInstList.add(new ToupcamInst());
-
-        toupcamInstList.forEach(toupcamInst -> {
-
-            int structurePointerOffset = 0;
-            toupcamInst.setDisplayName(structurePointer.getString(structurePointerOffset));
-            System.out.println(toupcamInst.getDisplayName());
-            structurePointerOffset += 64;
-            toupcamInst.setId(structurePointer.getString(structurePointerOffset));
-            System.out.println(toupcamInst.getId());
-            structurePointerOffset += 64;
-
-            Pointer modelPointer = structurePointer.getPointer(structurePointerOffset);
-            int modelPointerOffset = 0;
-            toupcamInst.setModel(new Model());
-
-            toupcamInst.getModel().setName(modelPointer.getPointer(modelPointerOffset).getString(0));
-            modelPointerOffset += Pointer.SIZE;
-            toupcamInst.getModel().setFlag(modelPointer.getInt(modelPointerOffset));
-            modelPointerOffset += Constants.INT_SIZE;
-            toupcamInst.getModel().setMaxspeed(modelPointer.getInt(modelPointerOffset));
-            modelPointerOffset += Constants.INT_SIZE;
-            toupcamInst.getModel().setStill(modelPointer.getInt(modelPointerOffset));
-            modelPointerOffset += Constants.INT_SIZE;
-            toupcamInst.getModel().setPreview(modelPointer.getInt(modelPointerOffset));
-            modelPointerOffset += Constants.INT_SIZE;
-
-            int resolutions = (int) Math.max(toupcamInst.getModel().getPreview(),
-                    toupcamInst.getModel().getStill());
-
-            Resolution[] resolutionArray = new Resolution[resolutions];
-            for (int i = 0; i < resolutions; i++) resolutionArray[i] = new Resolution();
-
-            toupcamInst.getModel().setRes(resolutionArray);
-            Resolution[] toupcamInstRes = toupcamInst.getModel().getRes();
-
-            for (int i = 0; i < resolutions; i++) {
-                toupcamInstRes[i].width = modelPointer.getInt(modelPointerOffset);
-                modelPointerOffset += Constants.INT_SIZE;
-                toupcamInstRes[i].height = modelPointer.getInt(modelPointerOffset);
-                modelPointerOffset += Constants.INT_SIZE;
-            }
-
-        });
-
-        return toupcamInstList;
+        return DeviceRegistry.of(libToupcam).getToupcams();
     }
 
     public Pointer openCam(String id) {
+        resolutions = null;
         camHandler = libToupcam.Toupcam_Open(id);
         return camHandler;
     }
 
+    @Override
+    public HResult startPullMode(int bits, ImageStreamCallback imageCallback) {
+        FrameViewCallback timed = metrics.timed(imageCallback);
+        // the engine numbers images by their event, events it coalesced advance the sequence too.
+        AtomicLong lastEvent = new AtomicLong();
+        FrameViewCallback admitted = frame -> {
+            long event = frame.getSequence();
+            long advance = event > 0 ? Math.max(1, event - lastEvent.getAndSet(event)) : 1;
+            if (!streamState.admit(frame.getArrivalNanos())) return;
+            frame.stamp(frame.getArrivalNanos(), sequence.addAndGet(advance));
+            runFrameTaps(frame);
+            timed.onReceiveFrame(frame);
+        };
+        return streamState.start(() -> {
+            // only built once the stream may start, its thread must not outlive a refused start.
+            PullModeEngine engine = new PullModeEngine(libToupcam, getCamHandler(), bits, getResolutions(), admitted);
+            NativeUtils.attachCallbackThreads(engine, "toupcam-sdk");
+            pullEngine = engine;
+            HResult result = HResult.key(libToupcam.Toupcam_StartPullModeWithCallback(getCamHandler(), engine, 0));
+            if (!HResult.S_OK.equals(result)) {
+                pullEngine = null;
+                engine.stop();
+            }
+            return result;
+        });
+    }
+
     public HResult startPullWithCallBack(Pointer handler) {
-        int result = libToupcam.Toupcam_StartPullModeWithCallback(handler, new EventCallback() {
+        return startPullMode(24, new BufferedImageStreamCallback() {
             @Override
-            public void invoke(long event) {
-                //System.out.println(Event.key(event) + " event received");
-                if (Event.key(event) == Event.EVENT_STILLIMAGE) {
-                    Image image = getStillImage(handler);
-                    System.out.println(image);
-                    Util.writeImageToDisk(Util.convertImagePointerToImage(image.getImagePointer(), image.getWidth(), image.getHeight()));
-
-                } else if (Event.key(event) == Event.EVENT_IMAGE) {
-                    Image image = getImage(handler);
-                    System.out.println(image);
-                    Util.convertImagePointerToImage(image.getImagePointer(), image.getWidth(), image.getHeight());
-                }
+            public void onReceivePreviewImage(BufferedImage image, ImageHeader imageHeader) {
+                System.out.println(imageHeader);
             }
-        }, 0);
-        return HResult.key(result);
-    }
 
-    public HResult startPushMode(Pointer handler) {
-        int result = libToupcam.Toupcam_StartPushMode(handler, new PTOUPCAM_DATA_CALLBACK() {
             @Override
-            public void invoke(Pointer imagePointer, Pointer imageMetaDataPointer, boolean isSnapshot) {
-                ImageHeader header = ParserUtil.parseImageHeader(imageMetaDataPointer);
-                System.out.println(header);
-                Mat img = Util.convertRGBImagePointerToMat(imagePointer, header.getHeight(), header.getWidth());
-                Imgcodecs.imwrite("./capturedimages/image" + counter++ + ".jpg", img);
-                Util.clearBuffer(imagePointer, header.getWidth() * header.getHeight() * 3);
-                header = null;
-                img = null;
-                //Util.writeImageToDisk(Util.convertImagePointerToImage(imagePointer,
-                //header.getWidth(), header.getHeight()));
-                //Util.writeMatToDisk()
-                //Mat img = new Mat(new Size(header.getWidth(), header.getHeight()), CV_8UC4);
-                //img.put(0, 0, Util.convertImagePointerToByteArray(imagePointer, header.getWidth(), header.getHeight(), ImageType.BGRA));
-                //Imgcodecs.imwrite("/Users/dementor/morphle/scano/hello.jpg", img);
+            public void onReceiveStillImage(BufferedImage image, ImageHeader imageHeader) {
+                System.out.println(imageHeader);
+                Util.writeImageToDisk(image);
             }
-        }, Pointer.NULL);
-        return HResult.key(result);
+        });
+    }
+
+    /**
+     * Saves every pushed frame as JPEG under {@code Constants.IMAGES_PATH},
+     * encoding and writing happen off the SDK thread.
+     */
+    public HResult startPushMode(Pointer handler) {
+        return streamState.start(() -> {
+            if (frameWriter != null) frameWriter.close();
+            frameWriter = new FrameWriter(new File(Constants.IMAGES_PATH), ImageFormat.JPEG).setMetrics(metrics);
+            return startPush(handler, frameWriter);
+        });
+    }
+
+    public FrameWriter getFrameWriter() {
+        return frameWriter;
     }
 
     public HResult setOptions(Pointer handler, Options option, int value) {
@@ -409,20 +558,31 @@ public class App implements Toupcam {
         return HResult.key(libToupcam.Toupcam_Snap(handler, resolutionIndex));
     }
 
+    /**
+     * One off pull sized for the active resolution, see {@link #startPullMode(int, ImageStreamCallback)}
+     * for pulling a stream of images.
+     */
     public Image getImage(Pointer handler) {
-        //width=1280, height=960
-        Pointer imageBuffer = new Memory(1280 * 960 * 4);
-        Pointer width = new Memory(4), height = new Memory(4);
-        int result = libToupcam.Toupcam_PullImage(handler, imageBuffer, 32, width, height);
-        return new Image(imageBuffer, width.getInt(0), height.getInt(0), HResult.key(result));
+        Memory size = new Memory(8);
+        libToupcam.Toupcam_get_Size(handler, size, size.share(4));
+        Pointer imageBuffer = new Memory(FrameConverter.frameSize(size.getInt(0), size.getInt(4), 32));
+        int result = libToupcam.Toupcam_PullImage(handler, imageBuffer, 32, size, size.share(4));
+        return new Image(imageBuffer, size.getInt(0), size.getInt(4), HResult.key(result));
     }
 
     public Image getStillImage(Pointer handler) {
-        //width=2592, height=1944
-        Pointer imageBuffer = new Memory(2592 * 1944);
-        Pointer width = new Memory(4), height = new Memory(4);
-        int result = libToupcam.Toupcam_PullStillImage(handler, imageBuffer, 8, width, height);
-        return new Image(imageBuffer, width.getInt(0), height.getInt(0), HResult.key(result));
+        int largest = 0;
+        for (Resolution resolution : getResolutions())
+            largest = Math.max(largest, FrameConverter.frameSize((int) resolution.getWidth(),
+                    (int) resolution.getHeight(), 8));
+        Pointer imageBuffer = new Memory(largest);
+        Memory size = new Memory(8);
+        int result = libToupcam.Toupcam_PullStillImage(handler, imageBuffer, 8, size, size.share(4));
+        return new Image(imageBuffer, size.getInt(0), size.getInt(4), HResult.key(result));
+    }
+
+    public FrameBufferPool getFramePool() {
+        return framePool;
     }
 
     public Pointer getCamHandler() {
@@ -433,14 +593,40 @@ public class App implements Toupcam {
         this.camHandler = camHandler;
     }
 
+    @Override
+    public void addFrameTap(FrameViewCallback tap) {
+        frameTaps.add(tap);
+    }
+
+    @Override
+    public void removeFrameTap(FrameViewCallback tap) {
+        frameTaps.remove(tap);
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        FrameDispatcher current = dispatcher;
+        return current == null ? 0 : current.getDroppedFrames();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        FrameDispatcher current = dispatcher;
+        return current == null ? 0 : current.getQueueDepth();
+    }
+
     @Override
     public Resolution[] getResolutions() {
-        int resolutionCount = getResolutionNumbers();
-        Resolution[] resolutions = new Resolution[resolutionCount];
-        for (int i = 0; i < resolutionCount; i++) {
-            resolutions[i] = getResolution(i);
+        Resolution[] cached = resolutions;
+        if (cached == null) {
+            int resolutionCount = getResolutionNumbers();
+            cached = new Resolution[resolutionCount];
+            for (int i = 0; i < resolutionCount; i++) {
+                cached[i] = getResolution(i);
+            }
+            resolutions = cached;
         }
-        return resolutions;
+        return cached.clone();
     }
 
 
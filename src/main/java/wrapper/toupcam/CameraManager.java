@@ -0,0 +1,230 @@
+package wrapper.toupcam;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.callbacks.ImageStreamCallback;
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.enumerations.ImageFormat;
+import wrapper.toupcam.libraries.LibToupcam;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ToupcamInst;
+import wrapper.toupcam.recording.FrameWriter;
+import wrapper.toupcam.util.NativeUtils;
+
+/**
+ * Opens every connected toupcam by id, each with its own {@link App}, so
+ * every camera streams through an independent pipeline (SDK thread,
+ * callbacks, frame pool, writer) and its own output directory.
+ *
+ * @author arpit
+ */
+public class CameraManager {
+
+    private final LibToupcam libToupcam;
+    private final File outputRoot;
+    private final Map<String, ManagedCamera> cameras = new LinkedHashMap<>();
+
+    /**
+     * One opened camera, counts the frames pushed by its SDK thread.
+     */
+    public static class ManagedCamera implements FrameViewCallback {
+        private final ToupcamInst toupcamInst;
+        private final App toupcam;
+        private final File outputDirectory;
+        private final AtomicLong frames = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile long startNanos = System.nanoTime();
+        private volatile FrameWriter frameWriter;
+
+        ManagedCamera(ToupcamInst toupcamInst, App toupcam, File outputDirectory) {
+            this.toupcamInst = toupcamInst;
+            this.toupcam = toupcam;
+            this.outputDirectory = outputDirectory;
+            toupcam.addFrameTap(this);
+        }
+
+        @Override
+        public void onReceiveFrame(FrameView frame) {
+            frames.incrementAndGet();
+            bytes.addAndGet(frame.getSize());
+        }
+
+        public String getId() {
+            return toupcamInst.getId();
+        }
+
+        public ToupcamInst getToupcamInst() {
+            return toupcamInst;
+        }
+
+        public Toupcam getToupcam() {
+            return toupcam;
+        }
+
+        public File getOutputDirectory() {
+            return outputDirectory;
+        }
+
+        /**
+         * @return the writer of {@link CameraManager#startRecording}, null otherwise.
+         */
+        public FrameWriter getFrameWriter() {
+            return frameWriter;
+        }
+
+        public long getFrames() {
+            return frames.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public double getFramesPerSecond() {
+            return frames.get() / elapsedSeconds();
+        }
+
+        public double getMegabytesPerSecond() {
+            return bytes.get() / 1e6 / elapsedSeconds();
+        }
+
+        private double elapsedSeconds() {
+            return Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        }
+
+        void resetThroughput() {
+            frames.set(0);
+            bytes.set(0);
+            startNanos = System.nanoTime();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d frames, %.1f fps, %.1f MB/s", getId(), getFrames(),
+                    getFramesPerSecond(), getMegabytesPerSecond());
+        }
+    }
+
+    public CameraManager(File outputRoot) {
+        this((LibToupcam) NativeUtils.getNativeLib(), outputRoot);
+    }
+
+    public CameraManager(LibToupcam libToupcam, File outputRoot) {
+        this.libToupcam = libToupcam;
+        this.outputRoot = outputRoot;
+    }
+
+    /**
+     * Opens every enumerated camera not opened yet, cameras that fail to
+     * open (eg. in use by another process) are skipped.
+     *
+     * @return all cameras managed so far.
+     */
+    public synchronized List<ManagedCamera> openAll() {
+        for (ToupcamInst toupcamInst : DeviceRegistry.of(libToupcam).getToupcams()) {
+            String id = toupcamInst.getId();
+            if (cameras.containsKey(id)) continue;
+            App toupcam = new App(libToupcam, id);
+            if (toupcam.getCamHandler() == null) {
+                System.out.println("Could not open toupcam : " + id);
+                continue;
+            }
+            cameras.put(id, new ManagedCamera(toupcamInst, toupcam, new File(outputRoot, directoryName(id))));
+        }
+        return getCameras();
+    }
+
+    // ids are usb paths on some platforms, keep them usable as a directory name.
+    private static String directoryName(String id) {
+        return id.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    public synchronized List<ManagedCamera> getCameras() {
+        return Collections.unmodifiableList(new ArrayList<>(cameras.values()));
+    }
+
+    public synchronized ManagedCamera getCamera(String id) {
+        return cameras.get(id);
+    }
+
+    /**
+     * Starts streaming every camera into its own callback.
+     *
+     * @return ids of the cameras which failed to start, with the result.
+     */
+    public Map<String, HResult> startStreaming(Function<ManagedCamera, ImageStreamCallback> callbacks) {
+        Map<String, HResult> failures = new LinkedHashMap<>();
+        for (ManagedCamera camera : getCameras()) {
+            camera.resetThroughput();
+            HResult result = camera.toupcam.startStreaming(callbacks.apply(camera));
+            if (!HResult.S_OK.equals(result)) failures.put(camera.getId(), result);
+        }
+        return failures;
+    }
+
+    /**
+     * Streams every camera to disk, under {@code outputRoot/<camera id>}.
+     */
+    public Map<String, HResult> startRecording(ImageFormat format) {
+        return startStreaming(camera -> {
+            camera.outputDirectory.mkdirs();
+            if (camera.frameWriter != null) camera.frameWriter.close();
+            camera.frameWriter = new FrameWriter(camera.outputDirectory, format).setMetrics(camera.toupcam.getMetrics());
+            return camera.frameWriter;
+        });
+    }
+
+    /**
+     * Stops every camera and waits up to {@code timeout} for each writer
+     * to flush its backlog.
+     */
+    public void stopAll(long timeout, TimeUnit unit) throws InterruptedException {
+        for (ManagedCamera camera : getCameras()) {
+            camera.toupcam.stopStreaming();
+            FrameWriter writer = camera.frameWriter;
+            if (writer != null && !writer.close(timeout, unit))
+                System.out.println("Frame writer of " + camera.getId() + " did not finish : " + writer);
+        }
+    }
+
+    /**
+     * Stops and closes every camera, its writer and its metrics, and forgets
+     * them, so cameras plugged back in are opened again by {@link #openAll()}.
+     */
+    public synchronized void closeAll(long timeout, TimeUnit unit) throws InterruptedException {
+        stopAll(timeout, unit);
+        for (ManagedCamera camera : cameras.values()) camera.toupcam.close();
+        cameras.clear();
+        DeviceRegistry.of(libToupcam).invalidate();
+    }
+
+    public long getTotalFrames() {
+        return getCameras().stream().mapToLong(ManagedCamera::getFrames).sum();
+    }
+
+    public double getTotalFramesPerSecond() {
+        return getCameras().stream().mapToDouble(ManagedCamera::getFramesPerSecond).sum();
+    }
+
+    public double getTotalMegabytesPerSecond() {
+        return getCameras().stream().mapToDouble(ManagedCamera::getMegabytesPerSecond).sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format("%d cameras, %.1f fps, %.1f MB/s",
+                cameras.size(), getTotalFramesPerSecond(), getTotalMegabytesPerSecond()));
+        for (ManagedCamera camera : getCameras()) report.append("\n  ").append(camera);
+        return report.toString();
+    }
+
+}
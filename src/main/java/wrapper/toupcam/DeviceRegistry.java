@@ -0,0 +1,140 @@
+package wrapper.toupcam;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.jna.Memory;
+
+import wrapper.toupcam.callbacks.PTOUPCAM_HOTPLUG_CALLBACK;
+import wrapper.toupcam.libraries.LibToupcam;
+import wrapper.toupcam.models.DeviceCapabilities;
+import wrapper.toupcam.models.ToupcamInst;
+import wrapper.toupcam.util.Constants;
+import wrapper.toupcam.util.NativeUtils;
+import wrapper.toupcam.util.ParserUtil;
+
+/**
+ * Cached enumeration of the connected toupcams and the capabilities of
+ * their models. {@code Toupcam_Enum} is called on the first lookup and
+ * again only after the cache is invalidated, by the hotplug callback once
+ * {@link #registerHotPlug()} is called, or explicitly.
+ * <p>
+ * The SDK takes a single hotplug callback, so there is one registry per
+ * library, see {@link #of(LibToupcam)}. A registry only holds its library
+ * weakly, so it goes away with the library.
+ * <p>
+ * Lookups hand out copies, the cached enumeration can't be changed by callers.
+ *
+ * @author arpit
+ */
+public class DeviceRegistry {
+
+    private static final Map<LibToupcam, DeviceRegistry> REGISTRIES = new WeakHashMap<>();
+
+    // weak, the registry is the value of its library's entry in REGISTRIES.
+    private final WeakReference<LibToupcam> libToupcam;
+    // reused by every enumeration, guarded by this.
+    private final Memory structurePointer = new Memory(Constants.MEM_SIZE_FOR_TOUPCAMINST);
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong enumerations = new AtomicLong();
+    private volatile Snapshot snapshot = null;
+
+    // JNA only holds a weak reference to callbacks.
+    private PTOUPCAM_HOTPLUG_CALLBACK hotplugCallback = null;
+
+    private static class Snapshot {
+        final List<ToupcamInst> toupcams;
+        final Map<String, DeviceCapabilities> capabilities = new LinkedHashMap<>();
+
+        Snapshot(List<ToupcamInst> toupcams) {
+            this.toupcams = Collections.unmodifiableList(toupcams);
+            for (ToupcamInst toupcamInst : toupcams)
+                capabilities.put(toupcamInst.getId(), new DeviceCapabilities(toupcamInst.getModel()));
+        }
+    }
+
+    public static synchronized DeviceRegistry of(LibToupcam libToupcam) {
+        return REGISTRIES.computeIfAbsent(libToupcam, DeviceRegistry::new);
+    }
+
+    private DeviceRegistry(LibToupcam libToupcam) {
+        this.libToupcam = new WeakReference<>(libToupcam);
+    }
+
+    private LibToupcam library() {
+        LibToupcam library = libToupcam.get();
+        if (library == null) throw new IllegalStateException("toupcam library was unloaded");
+        return library;
+    }
+
+    /**
+     * Invalidates the cache whenever a camera is plugged in or out.
+     */
+    public synchronized void registerHotPlug() {
+        if (hotplugCallback != null) return;
+        hotplugCallback = NativeUtils.attachCallbackThreads(new PTOUPCAM_HOTPLUG_CALLBACK() {
+            @Override
+            public void invoke() {
+                System.out.println("Camera is pluged in or out.");
+                invalidate();
+            }
+        }, "toupcam-hotplug");
+        library().Toupcam_HotPlug(hotplugCallback);
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null) return current;
+        synchronized (this) {
+            if (snapshot != null) return snapshot;
+            long expected = generation.get();
+            structurePointer.clear();
+            int count = library().Toupcam_Enum(structurePointer);
+            enumerations.incrementAndGet();
+            current = new Snapshot(ParserUtil.parseToupcamInsts(structurePointer, count));
+            // a hotplug during the enumeration leaves the cache invalid.
+            if (generation.get() == expected) snapshot = current;
+            return current;
+        }
+    }
+
+    public int count() {
+        return snapshot().toupcams.size();
+    }
+
+    /**
+     * @return copies of the cached enumeration.
+     */
+    public List<ToupcamInst> getToupcams() {
+        List<ToupcamInst> toupcams = snapshot().toupcams;
+        List<ToupcamInst> copies = new ArrayList<>(toupcams.size());
+        for (ToupcamInst toupcamInst : toupcams) copies.add(new ToupcamInst(toupcamInst));
+        return copies;
+    }
+
+    /**
+     * @return capabilities of the camera with {@code id}, null when not connected.
+     */
+    public DeviceCapabilities getCapabilities(String id) {
+        return snapshot().capabilities.get(id);
+    }
+
+    /**
+     * @return number of {@code Toupcam_Enum} calls made so far.
+     */
+    public long getEnumerations() {
+        return enumerations.get();
+    }
+
+}
@@ -1,12 +1,17 @@
 package wrapper.toupcam;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
+import wrapper.toupcam.callbacks.FrameViewCallback;
 import wrapper.toupcam.callbacks.ImageStreamCallback;
 import wrapper.toupcam.enumerations.HResult;
 import wrapper.toupcam.exceptions.StreamingException;
+import wrapper.toupcam.models.Frame;
 import wrapper.toupcam.models.Resolution;
 import wrapper.toupcam.models.ToupcamInst;
+import wrapper.toupcam.streaming.FrameDispatcher;
 
 public interface Toupcam {
 	
@@ -16,12 +21,39 @@ public interface Toupcam {
 	
 	public HResult startStreaming(ImageStreamCallback imageCallback);
 	
+	/**
+	 * Streams through {@code dispatcher}, so that {@code imageCallback} runs on the
+	 * dispatcher's executor instead of the SDK's grab thread.
+	 */
+	public HResult startStreaming(ImageStreamCallback imageCallback, FrameDispatcher dispatcher);
+	
+	/**
+	 * Starts pull mode, images are pulled with {@code bits} per pixel (8, 24 or 32)
+	 * into reused buffers and delivered off the SDK's event thread.
+	 */
+	public HResult startPullMode(int bits, ImageStreamCallback imageCallback);
+	
+	/**
+	 * Adds a callback that sees every pushed frame on the SDK thread, before
+	 * the streaming callback, eg. a {@code PreTriggerRing}.
+	 */
+	public void addFrameTap(FrameViewCallback tap);
+	
+	public void removeFrameTap(FrameViewCallback tap);
+	
 	//public Toupcam getInstance();
 	
 	public HResult setResolution(int resolutionIndex);
 	
 	public HResult getStillImage(int resolutionIndex);
 	
+	/**
+	 * Snaps a still at {@code resolutionIndex}, completed once the SDK
+	 * delivers it while streaming. Safe to call concurrently, stills are
+	 * matched to requests in order.
+	 */
+	public CompletableFuture<Frame> snap(int resolutionIndex);
+	
 	public HResult pauseStreaming();
 	
 	public HResult resumeStreaming();
@@ -34,6 +66,27 @@ public interface Toupcam {
 	
 	public HResult getTriggerImages(int numberOfImages);
 	
+	/**
+	 * Fires {@code numberOfImages} software triggers and collects exactly
+	 * those frames, in trigger mode and while streaming. Completes
+	 * exceptionally on timeout, when the trigger fails or while another
+	 * burst is in progress.
+	 */
+	public CompletableFuture<List<Frame>> triggerBurst(int numberOfImages, long timeout, TimeUnit unit);
+	
 	public Resolution[] getResolutions();
 	
+	/**
+	 * @return frames dropped by the dispatcher, 0 when streaming without one.
+	 */
+	public long getDroppedFrames();
+	
+	public int getQueueDepth();
+	
+	/**
+	 * Stops streaming, closes the camera's handle and unregisters its
+	 * metrics, for when the camera is no longer used.
+	 */
+	public void close();
+	
 }
@@ -1,9 +1,22 @@
 package wrapper.toupcam.callbacks;
 
+import java.awt.image.BufferedImage;
+
+import wrapper.toupcam.models.FrameView;
 import wrapper.toupcam.models.ImageHeader;
 
 public interface BufferedImageStreamCallback extends ImageStreamCallback {
 
+	@Override
+	default void onReceiveFrame(FrameView frame) {
+		BufferedImage image = frame.toBufferedImage();
+		// the frame's header is reused for the next frame, the callee may keep its copy.
+		ImageHeader header = new ImageHeader(frame.getHeader());
+		if (frame.isSnapshot())
+			onReceiveStillImage(image, header);
+		else onReceivePreviewImage(image, header);
+	}
+
 	@Override
 	default void onReceivePreviewImage(byte[] imageBytes, ImageHeader imageHeader) {}
 
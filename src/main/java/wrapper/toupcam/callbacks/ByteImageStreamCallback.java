@@ -2,10 +2,22 @@ package wrapper.toupcam.callbacks;
 
 import java.awt.image.BufferedImage;
 
+import wrapper.toupcam.models.FrameView;
 import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.models.ImageType;
 
 public interface ByteImageStreamCallback extends ImageStreamCallback {
 
+	@Override
+	default void onReceiveFrame(FrameView frame) {
+		byte[] imageBytes = frame.toByteArray(ImageType.ABGR);
+		// the frame's header is reused for the next frame, the callee may keep its copy.
+		ImageHeader header = new ImageHeader(frame.getHeader());
+		if (frame.isSnapshot())
+			onReceiveStillImage(imageBytes, header);
+		else onReceivePreviewImage(imageBytes, header);
+	}
+
 	@Override
 	default void onReceivePreviewImage(BufferedImage image, ImageHeader imageHeader) {}
 
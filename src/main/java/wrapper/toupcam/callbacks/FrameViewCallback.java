@@ -0,0 +1,32 @@
+package wrapper.toupcam.callbacks;
+
+import java.awt.image.BufferedImage;
+
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+
+/**
+ * Receives frames as zero-copy views over the SDK's native buffer,
+ * without any conversion or copy being made by the wrapper.
+ */
+public interface FrameViewCallback extends ImageStreamCallback {
+
+	/**
+	 * Called on the SDK's thread, {@code frame} is invalid once this returns.
+	 */
+	@Override
+	void onReceiveFrame(FrameView frame);
+
+	@Override
+	default void onReceivePreviewImage(BufferedImage image, ImageHeader imageHeader) {}
+
+	@Override
+	default void onReceiveStillImage(BufferedImage image, ImageHeader imageHeader) {}
+
+	@Override
+	default void onReceivePreviewImage(byte[] imageBytes, ImageHeader imageHeader) {}
+
+	@Override
+	default void onReceiveStillImage(byte[] imageBytes, ImageHeader imageHeader) {}
+
+}
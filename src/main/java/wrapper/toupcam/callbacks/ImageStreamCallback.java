@@ -2,10 +2,17 @@ package wrapper.toupcam.callbacks;
 
 import java.awt.image.BufferedImage;
 
+import wrapper.toupcam.models.FrameView;
 import wrapper.toupcam.models.ImageHeader;
 
 public interface ImageStreamCallback {
 
+	/**
+	 * Entry point for every frame, sub interfaces convert the view into
+	 * the representation they deliver.
+	 */
+	default void onReceiveFrame(FrameView frame) {}
+
 	void onReceivePreviewImage(BufferedImage image, ImageHeader imageHeader);
 	
 	void onReceiveStillImage(BufferedImage image, ImageHeader imageHeader);
@@ -0,0 +1,48 @@
+package wrapper.toupcam.enumerations;
+
+/**
+ * Colour filter layout of raw frames, named after the top left 2x2 cell
+ * read row by row.
+ */
+public enum BayerPattern {
+
+	RGGB(0, 1, 1, 2),
+	BGGR(2, 1, 1, 0),
+	GRBG(1, 0, 2, 1),
+	GBRG(1, 2, 0, 1);
+
+	public static final int RED = 0, GREEN = 1, BLUE = 2;
+
+	private int[] cell;
+
+	BayerPattern(int... cell) {
+		this.cell = cell;
+	}
+
+	/**
+	 * @return {@link #RED}, {@link #GREEN} or {@link #BLUE} filter at the pixel.
+	 */
+	public int colorAt(int x, int y) {
+		return cell[((y & 1) << 1) | (x & 1)];
+	}
+
+	/**
+	 * FourCC reported by {@code Toupcam_get_RawFormat}, MAKEFOURCC('R', 'G', 'G', 'B') etc.
+	 */
+	public int getFourCC() {
+		String name = name();
+		return name.charAt(0) | (name.charAt(1) << 8) | (name.charAt(2) << 16) | (name.charAt(3) << 24);
+	}
+
+	/**
+	 * @return null when the FourCC is not a bayer layout, eg. a mono sensor.
+	 */
+	public static BayerPattern key(long fourCC) {
+		for (BayerPattern v : values()) {
+			if (v.getFourCC() == fourCC)
+				return v;
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,8 @@
+package wrapper.toupcam.enumerations;
+
+public enum DemosaicAlgorithm {
+
+	BILINEAR,		/* average of the nearest samples of each colour, fastest */
+	EDGE_AWARE		/* green interpolated along the smaller gradient, red and blue from colour differences */
+
+}
@@ -17,6 +17,10 @@ public enum Event {
 		this.value = value;
 	}
 	
+	public int getValue(){
+		return value;
+	}
+	
 	public static Event key(long event){
 		for(Event v : values()){
 			if(v.value == event)
@@ -1,5 +1,7 @@
 package wrapper.toupcam.enumerations;
 
+import java.util.EnumSet;
+
 public enum Flag {
 
 	FLAG_CMOS(0x00000001),       		//cmos sensor
@@ -29,6 +31,10 @@ public enum Flag {
 		this.value = value;
 	}
 	
+	public int getValue(){
+		return value;
+	}
+	
 	public static Flag key(long flag){
 		for(Flag v : values()){
 			if(v.value == flag)
@@ -37,4 +43,16 @@ public enum Flag {
 		return null;
 	}
 	
-}
\ No newline at end of file
+	/**
+	 * Decodes the flag bitset of a toupcam model.
+	 */
+	public static EnumSet<Flag> decode(long flags){
+		EnumSet<Flag> set = EnumSet.noneOf(Flag.class);
+		for(Flag v : values()){
+			if((flags & v.value) != 0)
+				set.add(v);
+		}
+		return set;
+	}
+	
+}
@@ -0,0 +1,19 @@
+package wrapper.toupcam.enumerations;
+
+public enum ImageFormat {
+
+	JPEG("jpg"),
+	PNG("png"),
+	RAW_BGR("bgr");		/* frame bytes as delivered by the SDK, no encoding */
+
+	private String extension;
+
+	ImageFormat(String extension) {
+		this.extension = extension;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+}
@@ -0,0 +1,9 @@
+package wrapper.toupcam.enumerations;
+
+public enum OverflowPolicy {
+
+	DROP_OLDEST,		/* evict the oldest queued frame to make room for the new one */
+	DROP_NEWEST,		/* discard the incoming frame, queued frames are kept */
+	BLOCK				/* block the SDK thread until there is room or the timeout elapses, then drop the incoming frame */
+
+}
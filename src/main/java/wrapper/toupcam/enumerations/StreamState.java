@@ -0,0 +1,10 @@
+package wrapper.toupcam.enumerations;
+
+public enum StreamState {
+
+	STOPPED,			/* not started, or stopped */
+	STREAMING,			/* frames are delivered */
+	PAUSED,				/* Toupcam_Pause(TRUE), the camera keeps its settings */
+	SWITCHING			/* trigger mode is being changed, frames in flight are discarded */
+
+}
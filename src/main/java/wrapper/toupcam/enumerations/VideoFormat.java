@@ -0,0 +1,18 @@
+package wrapper.toupcam.enumerations;
+
+public enum VideoFormat {
+
+	MJPEG_AVI("avi"),		/* every frame JPEG encoded into an AVI 1.0 file with an idx1 index */
+	Y4M("y4m");				/* raw YUV 4:4:4 (or mono) frames, no encoding */
+
+	private String extension;
+
+	VideoFormat(String extension) {
+		this.extension = extension;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+}
@@ -0,0 +1,155 @@
+package wrapper.toupcam.libraries;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Pointer;
+
+import wrapper.toupcam.callbacks.EventCallback;
+import wrapper.toupcam.callbacks.PTOUPCAM_DATA_CALLBACK;
+import wrapper.toupcam.callbacks.PTOUPCAM_HOTPLUG_CALLBACK;
+
+/**
+ * {@link LibToupcam} whose per frame and control loop calls (pull, snap,
+ * trigger, size and options) are JNA direct mapped, skipping the reflective
+ * proxy dispatch of an interface mapped library. The remaining, one off
+ * calls go to the interface mapped {@code library}.
+ *
+ * @author arpit
+ */
+public class DirectToupcam implements LibToupcam {
+
+    private final LibToupcam library;
+
+    /**
+     * Direct mapped functions, bound once by {@link #register(NativeLibrary)}.
+     */
+    private static class Functions {
+        static native int Toupcam_PullImage(Pointer handler, Pointer pImageData, int bits, Pointer pnWidth, Pointer pnHeight);
+
+        static native int Toupcam_PullStillImage(Pointer handler, Pointer pImageData, int bits, Pointer pnWidth, Pointer pnHeight);
+
+        static native int Toupcam_Snap(Pointer handler, int resolutionIndex);
+
+        static native int Toupcam_Trigger(Pointer handler, int number);
+
+        static native int Toupcam_get_Size(Pointer handler, Pointer pnWidth, Pointer pnHeight);
+
+        static native int Toupcam_put_Option(Pointer handler, int iOption, int iValue);
+
+        static native int Toupcam_get_Option(Pointer handler, int iOption, Pointer iValue);
+    }
+
+    private static volatile NativeLibrary registered;
+
+    /**
+     * Binds the direct mapped functions to {@code nativeLibrary}, throws
+     * UnsatisfiedLinkError when the library misses one of them.
+     */
+    public static synchronized void register(NativeLibrary nativeLibrary) {
+        if (registered == nativeLibrary) return;
+        if (registered != null) Native.unregister(Functions.class);
+        Native.register(Functions.class, nativeLibrary);
+        registered = nativeLibrary;
+    }
+
+    public DirectToupcam(LibToupcam library) {
+        if (registered == null) throw new IllegalStateException("native functions not registered");
+        this.library = library;
+    }
+
+    @Override
+    public int Toupcam_PullImage(Pointer handler, Pointer pImageData, int bits, Pointer pnWidth, Pointer pnHeight) {
+        return Functions.Toupcam_PullImage(handler, pImageData, bits, pnWidth, pnHeight);
+    }
+
+    @Override
+    public int Toupcam_PullStillImage(Pointer handler, Pointer pImageData, int bits, Pointer pnWidth, Pointer pnHeight) {
+        return Functions.Toupcam_PullStillImage(handler, pImageData, bits, pnWidth, pnHeight);
+    }
+
+    @Override
+    public int Toupcam_Snap(Pointer handler, int resolutionIndex) {
+        return Functions.Toupcam_Snap(handler, resolutionIndex);
+    }
+
+    @Override
+    public int Toupcam_Trigger(Pointer handler, int number) {
+        return Functions.Toupcam_Trigger(handler, number);
+    }
+
+    @Override
+    public int Toupcam_get_Size(Pointer handler, Pointer pnWidth, Pointer pnHeight) {
+        return Functions.Toupcam_get_Size(handler, pnWidth, pnHeight);
+    }
+
+    @Override
+    public int Toupcam_put_Option(Pointer handler, int iOption, int iValue) {
+        return Functions.Toupcam_put_Option(handler, iOption, iValue);
+    }
+
+    @Override
+    public int Toupcam_get_Option(Pointer handler, int iOption, Pointer iValue) {
+        return Functions.Toupcam_get_Option(handler, iOption, iValue);
+    }
+
+    @Override
+    public int Toupcam_Enum(Pointer pointer) {
+        return library.Toupcam_Enum(pointer);
+    }
+
+    @Override
+    public Pointer Toupcam_Open(String id) {
+        return library.Toupcam_Open(id);
+    }
+
+    @Override
+    public void Toupcam_Close(Pointer handler) {
+        library.Toupcam_Close(handler);
+    }
+
+    @Override
+    public int Toupcam_StartPullModeWithCallback(Pointer handler, EventCallback callback, int other) {
+        return library.Toupcam_StartPullModeWithCallback(handler, callback, other);
+    }
+
+    @Override
+    public int Toupcam_StartPushMode(Pointer handler, PTOUPCAM_DATA_CALLBACK callback, Pointer other) {
+        return library.Toupcam_StartPushMode(handler, callback, other);
+    }
+
+    @Override
+    public void Toupcam_HotPlug(PTOUPCAM_HOTPLUG_CALLBACK callback) {
+        library.Toupcam_HotPlug(callback);
+    }
+
+    @Override
+    public int Toupcam_put_eSize(Pointer handler, int resolutionIndex) {
+        return library.Toupcam_put_eSize(handler, resolutionIndex);
+    }
+
+    @Override
+    public int Toupcam_get_RawFormat(Pointer handler, Pointer nFourCC, Pointer bitdepth) {
+        return library.Toupcam_get_RawFormat(handler, nFourCC, bitdepth);
+    }
+
+    @Override
+    public int Toupcam_Stop(Pointer handler) {
+        return library.Toupcam_Stop(handler);
+    }
+
+    @Override
+    public int Toupcam_Pause(Pointer handler, boolean pause) {
+        return library.Toupcam_Pause(handler, pause);
+    }
+
+    @Override
+    public int Toupcam_get_ResolutionNumber(Pointer handler, int resolutionIndex, Pointer width, Pointer height) {
+        return library.Toupcam_get_ResolutionNumber(handler, resolutionIndex, width, height);
+    }
+
+    @Override
+    public int Toupcam_get_Resolution(Pointer handler, int resolutionIndex, Pointer width, Pointer height) {
+        return library.Toupcam_get_Resolution(handler, resolutionIndex, width, height);
+    }
+
+}
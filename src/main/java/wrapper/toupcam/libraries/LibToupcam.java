@@ -13,6 +13,11 @@ public interface LibToupcam extends Library {
 	int Toupcam_Enum(Pointer pointer);
 	
 	Pointer Toupcam_Open(String id);
+	
+	/**
+	 * Stops the camera and releases its handle, the camera can be opened again afterwards.
+	 */
+	void Toupcam_Close(Pointer handler);
 
 	int Toupcam_StartPullModeWithCallback(Pointer handler, EventCallback callback, int other);
 	
@@ -32,13 +37,21 @@ public interface LibToupcam extends Library {
 	
 	int Toupcam_Stop(Pointer handler);
 	
-	int Toupcam_Pause(Pointer handler);
+	/**
+	 * Pauses ({@code pause} TRUE) or resumes ({@code pause} FALSE) the stream.
+	 */
+	int Toupcam_Pause(Pointer handler, boolean pause);
 	
 	int Toupcam_Trigger(Pointer handler, int number);
 	
 	int Toupcam_get_ResolutionNumber(Pointer handler, int resolutionIndex, Pointer width, Pointer height);
 	
 	int Toupcam_get_Resolution(Pointer handler, int resolutionIndex, Pointer width, Pointer height);
+	
+	/**
+	 * Width and height of the active preview resolution.
+	 */
+	int Toupcam_get_Size(Pointer handler, Pointer pnWidth, Pointer pnHeight);
 	/**
 	 * To set various options for the toupcam to work.
 	 * Like set Raw format images, quality of received images.
@@ -0,0 +1,512 @@
+package wrapper.toupcam.libraries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+
+import wrapper.toupcam.callbacks.EventCallback;
+import wrapper.toupcam.callbacks.PTOUPCAM_DATA_CALLBACK;
+import wrapper.toupcam.callbacks.PTOUPCAM_HOTPLUG_CALLBACK;
+import wrapper.toupcam.enumerations.BayerPattern;
+import wrapper.toupcam.enumerations.Event;
+import wrapper.toupcam.enumerations.Flag;
+import wrapper.toupcam.enumerations.Options;
+import wrapper.toupcam.models.Resolution;
+import wrapper.toupcam.util.Constants;
+import wrapper.toupcam.util.FrameConverter;
+
+/**
+ * Pure java stand-in for the toupcam SDK, to load test the wrapper on a box
+ * without cameras: {@code new App(new SyntheticToupcam(...))}.
+ * <p>
+ * Each opened camera has its own generator thread, playing the role of the
+ * SDK's grab thread, which produces BGR frames in native memory at the
+ * configured frame rate (plus random jitter) and hands them out through the
+ * push callback or pull mode events. Trigger mode, snapshots, resolution
+ * changes and options are emulated; the enumeration is laid out in native
+ * memory the way the SDK does it.
+ *
+ * @author arpit
+ */
+public class SyntheticToupcam implements LibToupcam {
+
+    public static final int S_OK = 0x00000000;
+    public static final int E_FAIL = 0x80004005;
+    public static final int E_INVALIDARG = 0x80070057;
+    public static final int E_UNEXPECTED = 0x8000FFFF;
+
+    private static final int NAME_LENGTH = 64;
+    private static final int ENTRY_SIZE = NAME_LENGTH * 2 + Pointer.SIZE;
+    private static final int MAX_RESOLUTIONS = 16;
+
+    // distinct frames kept per resolution, each stamped with a frame counter when sent.
+    private static final int PATTERN_FRAMES = 4;
+
+    private final Resolution[] resolutions;
+    private final long periodNanos;
+    private final long jitterNanos;
+    private final AtomicInteger connected;
+    private final Map<Pointer, Camera> opened = new ConcurrentHashMap<>();
+    private final List<Memory> modelMemory = new ArrayList<>();
+    private volatile PTOUPCAM_HOTPLUG_CALLBACK hotplugCallback;
+
+    private final AtomicLong generatedFrames = new AtomicLong();
+
+    private class Camera {
+        final String id;
+        final Memory handle = new Memory(8);
+        final Map<Integer, Integer> options = new ConcurrentHashMap<>();
+        final AtomicInteger triggers = new AtomicInteger();
+        final ConcurrentLinkedQueue<Integer> snaps = new ConcurrentLinkedQueue<>();
+        final Random random = new Random();
+        final Memory header = new Memory(40);
+
+        volatile int resolutionIndex = 0;
+        volatile boolean running = false;
+        volatile boolean paused = false;
+        volatile PTOUPCAM_DATA_CALLBACK dataCallback;
+        volatile EventCallback eventCallback;
+        Thread generator;
+
+        // frames at the current resolution, and the latest image/still for pull mode.
+        Memory[] frames;
+        int framesResolution = -1;
+        volatile Memory latest;
+        volatile int latestWidth, latestHeight;
+        volatile Memory latestStill;
+        volatile int stillWidth, stillHeight;
+        long sequence = 0;
+
+        Camera(String id) {
+            this.id = id;
+        }
+    }
+
+    public SyntheticToupcam() {
+        this(1, new Resolution[]{new Resolution(2592, 1944), new Resolution(1280, 960), new Resolution(640, 480)},
+                30, 0);
+    }
+
+    /**
+     * @param cameras     number of cameras reported by Toupcam_Enum.
+     * @param resolutions resolution table of every camera, index 0 is the default.
+     * @param fps         frames per second generated by each camera.
+     * @param jitterMillis frames arrive up to this much early or late.
+     */
+    public SyntheticToupcam(int cameras, Resolution[] resolutions, double fps, double jitterMillis) {
+        if (resolutions.length == 0 || resolutions.length > MAX_RESOLUTIONS)
+            throw new IllegalArgumentException("1 to " + MAX_RESOLUTIONS + " resolutions expected");
+        this.resolutions = resolutions;
+        this.periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+        this.jitterNanos = (long) (jitterMillis * 1e6);
+        this.connected = new AtomicInteger(cameras);
+    }
+
+    public static String idOf(int index) {
+        return "synthetic-" + index;
+    }
+
+    /**
+     * Simulates plugging in one more camera.
+     */
+    public void plugIn() {
+        connected.incrementAndGet();
+        if (hotplugCallback != null) hotplugCallback.invoke();
+    }
+
+    /**
+     * Simulates unplugging the last enumerated camera. If it is open its
+     * generator stops, pull mode gets EVENT_DISCONNECTED and every later
+     * call on its handle fails, as after {@code Toupcam_Close}.
+     */
+    public synchronized void plugOut() {
+        if (connected.get() > 0) {
+            String id = idOf(connected.decrementAndGet());
+            for (Camera camera : opened.values()) {
+                if (!camera.id.equals(id)) continue;
+                opened.remove(camera.handle);
+                stopGenerator(camera);
+                EventCallback eventCallback = camera.eventCallback;
+                if (eventCallback != null) eventCallback.invoke(Event.EVENT_DISCONNECTED.getValue());
+            }
+        }
+        if (hotplugCallback != null) hotplugCallback.invoke();
+    }
+
+    public long getGeneratedFrames() {
+        return generatedFrames.get();
+    }
+
+    @Override
+    public int Toupcam_Enum(Pointer pointer) {
+        int count = Math.min(connected.get(), (int) (Constants.MEM_SIZE_FOR_TOUPCAMINST / ENTRY_SIZE));
+        Pointer model = model();
+        for (int i = 0; i < count; i++) {
+            long offset = (long) i * ENTRY_SIZE;
+            writeString(pointer, offset, "Synthetic Toupcam " + i);
+            writeString(pointer, offset + NAME_LENGTH, idOf(i));
+            pointer.setPointer(offset + NAME_LENGTH * 2, model);
+        }
+        return count;
+    }
+
+    private synchronized Pointer model() {
+        if (!modelMemory.isEmpty()) return modelMemory.get(0);
+        Memory name = new Memory(NAME_LENGTH);
+        name.setString(0, "SyntheticCam");
+        Memory model = new Memory(Pointer.SIZE + 4 * Constants.INT_SIZE + MAX_RESOLUTIONS * 2 * Constants.INT_SIZE);
+        model.clear();
+        long offset = 0;
+        model.setPointer(offset, name);
+        offset += Pointer.SIZE;
+        model.setInt(offset, Flag.FLAG_CMOS.getValue() | Flag.FLAG_USB30.getValue() | Flag.FLAG_TRIGGER.getValue());
+        offset += Constants.INT_SIZE;
+        model.setInt(offset, 0);                           // maxspeed
+        offset += Constants.INT_SIZE;
+        model.setInt(offset, resolutions.length);          // preview
+        offset += Constants.INT_SIZE;
+        model.setInt(offset, resolutions.length);          // still
+        offset += Constants.INT_SIZE;
+        for (Resolution resolution : resolutions) {
+            model.setInt(offset, (int) resolution.getWidth());
+            offset += Constants.INT_SIZE;
+            model.setInt(offset, (int) resolution.getHeight());
+            offset += Constants.INT_SIZE;
+        }
+        modelMemory.add(model);
+        modelMemory.add(name);
+        return model;
+    }
+
+    private static void writeString(Pointer pointer, long offset, String value) {
+        byte[] bytes = new byte[NAME_LENGTH];
+        byte[] chars = value.getBytes();
+        System.arraycopy(chars, 0, bytes, 0, Math.min(chars.length, NAME_LENGTH - 1));
+        pointer.write(offset, bytes, 0, NAME_LENGTH);
+    }
+
+    @Override
+    public synchronized Pointer Toupcam_Open(String id) {
+        for (int i = 0; i < connected.get(); i++) {
+            String candidate = idOf(i);
+            if (id != null && !id.equals(candidate)) continue;
+            boolean inUse = opened.values().stream().anyMatch(camera -> camera.id.equals(candidate));
+            if (inUse) {
+                if (id != null) return null;
+                continue;
+            }
+            Camera camera = new Camera(candidate);
+            opened.put(camera.handle, camera);
+            return camera.handle;
+        }
+        return null;
+    }
+
+    private Camera camera(Pointer handler) {
+        return handler == null ? null : opened.get(handler);
+    }
+
+    @Override
+    public int Toupcam_StartPushMode(Pointer handler, PTOUPCAM_DATA_CALLBACK callback, Pointer other) {
+        Camera camera = camera(handler);
+        if (camera == null || callback == null) return E_INVALIDARG;
+        stopGenerator(camera);
+        camera.dataCallback = callback;
+        camera.eventCallback = null;
+        startGenerator(camera);
+        return S_OK;
+    }
+
+    @Override
+    public int Toupcam_StartPullModeWithCallback(Pointer handler, EventCallback callback, int other) {
+        Camera camera = camera(handler);
+        if (camera == null || callback == null) return E_INVALIDARG;
+        stopGenerator(camera);
+        camera.eventCallback = callback;
+        camera.dataCallback = null;
+        startGenerator(camera);
+        return S_OK;
+    }
+
+    private void startGenerator(Camera camera) {
+        camera.running = true;
+        camera.paused = false;
+        camera.generator = new Thread(() -> generate(camera), "synthetic-toupcam-" + camera.id);
+        camera.generator.setDaemon(true);
+        camera.generator.start();
+    }
+
+    private void stopGenerator(Camera camera) {
+        camera.running = false;
+        Thread generator = camera.generator;
+        if (generator != null && generator != Thread.currentThread()) {
+            generator.interrupt();
+            try {
+                generator.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        camera.generator = null;
+    }
+
+    /**
+     * Generator loop, the camera's equivalent of the SDK grab thread.
+     */
+    private void generate(Camera camera) {
+        long next = System.nanoTime();
+        while (camera.running) {
+            next += periodNanos;
+            long jitter = jitterNanos == 0 ? 0 : (long) ((camera.random.nextDouble() * 2 - 1) * jitterNanos);
+            long wait = next + jitter - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            if (!camera.running) return;
+
+            Integer still = camera.snaps.poll();
+            if (still != null) deliver(camera, still, true);
+
+            if (camera.paused) continue;
+            if (camera.options.getOrDefault(Options.OPTION_TRIGGER.getValue(), 0) != 0) {
+                if (camera.triggers.get() <= 0) continue;
+                camera.triggers.decrementAndGet();
+            }
+            deliver(camera, camera.resolutionIndex, false);
+        }
+    }
+
+    private void deliver(Camera camera, int resolutionIndex, boolean isSnapshot) {
+        Resolution resolution = resolutions[resolutionIndex];
+        int width = (int) resolution.getWidth(), height = (int) resolution.getHeight();
+        Memory frame = frame(camera, resolutionIndex, isSnapshot);
+        frame.setLong(0, camera.sequence++);                   // so consecutive frames differ
+        generatedFrames.incrementAndGet();
+
+        PTOUPCAM_DATA_CALLBACK dataCallback = camera.dataCallback;
+        EventCallback eventCallback = camera.eventCallback;
+        if (dataCallback != null) {
+            writeHeader(camera.header, width, height);
+            dataCallback.invoke(frame, camera.header, isSnapshot);
+        } else if (eventCallback != null) {
+            if (isSnapshot) {
+                camera.stillWidth = width;
+                camera.stillHeight = height;
+                camera.latestStill = frame;
+                eventCallback.invoke(Event.EVENT_STILLIMAGE.getValue());
+            } else {
+                camera.latestWidth = width;
+                camera.latestHeight = height;
+                camera.latest = frame;
+                eventCallback.invoke(Event.EVENT_IMAGE.getValue());
+            }
+        }
+    }
+
+    /**
+     * One of the pre-generated frames of the resolution, stills get their own
+     * buffer so a preview frame never overwrites them.
+     */
+    private Memory frame(Camera camera, int resolutionIndex, boolean isSnapshot) {
+        Resolution resolution = resolutions[resolutionIndex];
+        if (isSnapshot) return pattern((int) resolution.getWidth(), (int) resolution.getHeight(), 0);
+        if (camera.framesResolution != resolutionIndex) {
+            camera.frames = new Memory[PATTERN_FRAMES];
+            for (int i = 0; i < PATTERN_FRAMES; i++)
+                camera.frames[i] = pattern((int) resolution.getWidth(), (int) resolution.getHeight(), i * 16);
+            camera.framesResolution = resolutionIndex;
+        }
+        return camera.frames[(int) (camera.sequence % PATTERN_FRAMES)];
+    }
+
+    private static Memory pattern(int width, int height, int shift) {
+        int stride = FrameConverter.stride(width, 24);
+        Memory frame = new Memory((long) stride * height);
+        byte[] row = new byte[stride];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x * 3] = (byte) (x + shift);
+                row[x * 3 + 1] = (byte) (y + shift);
+                row[x * 3 + 2] = (byte) (x + y);
+            }
+            frame.write((long) y * stride, row, 0, stride);
+        }
+        return frame;
+    }
+
+    private static void writeHeader(Memory header, int width, int height) {
+        header.setInt(0, 40);
+        header.setInt(4, width);
+        header.setInt(8, height);
+        header.setShort(12, (short) 1);
+        header.setShort(14, (short) 24);
+        header.setInt(16, 0);
+        header.setInt(20, FrameConverter.frameSize(width, height, 24));
+        header.setInt(24, 0);
+        header.setInt(28, 0);
+        header.setInt(32, 0);
+        header.setInt(36, 0);
+    }
+
+    @Override
+    public int Toupcam_PullImage(Pointer handler, Pointer pImageData, int bits, Pointer pnWidth, Pointer pnHeight) {
+        Camera camera = camera(handler);
+        if (camera == null) return E_INVALIDARG;
+        Memory latest = camera.latest;
+        if (latest == null) return E_UNEXPECTED;
+        return pull(latest, camera.latestWidth, camera.latestHeight, pImageData, bits, pnWidth, pnHeight);
+    }
+
+    @Override
+    public int Toupcam_PullStillImage(Pointer handler, Pointer pImageData, int bits, Pointer pnWidth, Pointer pnHeight) {
+        Camera camera = camera(handler);
+        if (camera == null) return E_INVALIDARG;
+        Memory still = camera.latestStill;
+        if (still == null) return E_UNEXPECTED;
+        camera.latestStill = null;
+        return pull(still, camera.stillWidth, camera.stillHeight, pImageData, bits, pnWidth, pnHeight);
+    }
+
+    /**
+     * Copies a BGR24 frame into the caller's buffer at 8, 24 or 32 bits.
+     */
+    private static int pull(Memory frame, int width, int height, Pointer pImageData, int bits,
+                            Pointer pnWidth, Pointer pnHeight) {
+        if (bits != 8 && bits != 24 && bits != 32) return E_INVALIDARG;
+        if (pnWidth != null) pnWidth.setInt(0, width);
+        if (pnHeight != null) pnHeight.setInt(0, height);
+        if (pImageData == null) return S_OK;
+
+        int srcStride = FrameConverter.stride(width, 24), dstStride = FrameConverter.stride(width, bits);
+        byte[] src = new byte[srcStride], dst = new byte[dstStride];
+        for (int y = 0; y < height; y++) {
+            frame.read((long) y * srcStride, src, 0, srcStride);
+            if (bits == 24) {
+                System.arraycopy(src, 0, dst, 0, srcStride);
+            } else {
+                for (int x = 0; x < width; x++) {
+                    int blue = src[x * 3] & 0xff, green = src[x * 3 + 1] & 0xff, red = src[x * 3 + 2] & 0xff;
+                    if (bits == 8) {
+                        dst[x] = (byte) ((blue + green + red) / 3);
+                    } else {
+                        dst[x * 4] = (byte) blue;
+                        dst[x * 4 + 1] = (byte) green;
+                        dst[x * 4 + 2] = (byte) red;
+                        dst[x * 4 + 3] = (byte) 0xff;
+                    }
+                }
+            }
+            pImageData.write((long) y * dstStride, dst, 0, dstStride);
+        }
+        return S_OK;
+    }
+
+    @Override
+    public int Toupcam_Snap(Pointer handler, int resolutionIndex) {
+        Camera camera = camera(handler);
+        if (camera == null || resolutionIndex < 0 || resolutionIndex >= resolutions.length) return E_INVALIDARG;
+        camera.snaps.add(resolutionIndex);
+        return S_OK;
+    }
+
+    @Override
+    public void Toupcam_HotPlug(PTOUPCAM_HOTPLUG_CALLBACK callback) {
+        this.hotplugCallback = callback;
+    }
+
+    @Override
+    public int Toupcam_put_eSize(Pointer handler, int resolutionIndex) {
+        Camera camera = camera(handler);
+        if (camera == null || resolutionIndex < 0 || resolutionIndex >= resolutions.length) return E_INVALIDARG;
+        camera.resolutionIndex = resolutionIndex;
+        return S_OK;
+    }
+
+    @Override
+    public int Toupcam_get_RawFormat(Pointer handler, Pointer nFourCC, Pointer bitdepth) {
+        if (camera(handler) == null) return E_INVALIDARG;
+        nFourCC.setInt(0, BayerPattern.RGGB.getFourCC());
+        bitdepth.setInt(0, 8);
+        return S_OK;
+    }
+
+    @Override
+    public void Toupcam_Close(Pointer handler) {
+        Camera camera = handler == null ? null : opened.remove(handler);
+        if (camera != null) stopGenerator(camera);
+    }
+
+    @Override
+    public int Toupcam_Stop(Pointer handler) {
+        Camera camera = camera(handler);
+        if (camera == null) return E_INVALIDARG;
+        stopGenerator(camera);
+        return S_OK;
+    }
+
+    @Override
+    public int Toupcam_Pause(Pointer handler, boolean pause) {
+        Camera camera = camera(handler);
+        if (camera == null) return E_INVALIDARG;
+        camera.paused = pause;
+        return S_OK;
+    }
+
+    @Override
+    public int Toupcam_Trigger(Pointer handler, int number) {
+        Camera camera = camera(handler);
+        if (camera == null) return E_INVALIDARG;
+        if (camera.options.getOrDefault(Options.OPTION_TRIGGER.getValue(), 0) == 0) return E_UNEXPECTED;
+        // 0 cancels the triggers not served yet, as in the SDK.
+        if (number == 0) camera.triggers.set(0);
+        else camera.triggers.addAndGet(number);
+        return S_OK;
+    }
+
+    @Override
+    public int Toupcam_get_ResolutionNumber(Pointer handler, int resolutionIndex, Pointer width, Pointer height) {
+        return camera(handler) == null ? E_INVALIDARG : resolutions.length;
+    }
+
+    @Override
+    public int Toupcam_get_Resolution(Pointer handler, int resolutionIndex, Pointer width, Pointer height) {
+        if (camera(handler) == null || resolutionIndex < 0 || resolutionIndex >= resolutions.length)
+            return E_INVALIDARG;
+        width.setInt(0, (int) resolutions[resolutionIndex].getWidth());
+        height.setInt(0, (int) resolutions[resolutionIndex].getHeight());
+        return S_OK;
+    }
+
+    @Override
+    public int Toupcam_get_Size(Pointer handler, Pointer pnWidth, Pointer pnHeight) {
+        Camera camera = camera(handler);
+        if (camera == null) return E_INVALIDARG;
+        return Toupcam_get_Resolution(handler, camera.resolutionIndex, pnWidth, pnHeight);
+    }
+
+    @Override
+    public int Toupcam_put_Option(Pointer handler, int iOption, int iValue) {
+        Camera camera = camera(handler);
+        if (camera == null || Options.key(iOption) == null) return E_INVALIDARG;
+        camera.options.put(iOption, iValue);
+        if (iOption == Options.OPTION_TRIGGER.getValue()) camera.triggers.set(0);
+        return S_OK;
+    }
+
+    @Override
+    public int Toupcam_get_Option(Pointer handler, int iOption, Pointer iValue) {
+        Camera camera = camera(handler);
+        if (camera == null || Options.key(iOption) == null) return E_INVALIDARG;
+        iValue.setInt(0, camera.options.getOrDefault(iOption, 0));
+        return S_OK;
+    }
+
+}
@@ -0,0 +1,325 @@
+package wrapper.toupcam.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.callbacks.ImageStreamCallback;
+import wrapper.toupcam.models.FrameView;
+
+/**
+ * Per camera capture metrics, exposed over JMX as
+ * {@code wrapper.toupcam:type=Camera,name=<camera id>}.
+ * <p>
+ * Recording methods run on the frame path, they are lock free and don't
+ * allocate. Drop counts are read from the registered sources (dispatcher,
+ * writers) only when the MBean is queried.
+ *
+ * @author arpit
+ */
+public class CameraMetrics implements CameraMetricsMBean {
+
+    public static final String DOMAIN = "wrapper.toupcam";
+
+    // a frame arriving later than this many average intervals is late.
+    private static final double LATE_FACTOR = 2.0;
+    private static final double EWMA_WEIGHT = 0.1;
+
+    // metrics currently registered under each name, a camera only unregisters its own.
+    private static final ConcurrentMap<ObjectName, CameraMetrics> REGISTERED = new ConcurrentHashMap<>();
+
+    private final String cameraId;
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder lateFrames = new LongAdder();
+    private final AtomicLong lastArrival = new AtomicLong();
+    // exponentially weighted average interval, as double bits.
+    private final AtomicLong averageInterval = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    private final LatencyHistogram intervals = new LatencyHistogram();
+    private final LatencyHistogram callbacks = new LatencyHistogram();
+    private final LatencyHistogram conversions = new LatencyHistogram();
+    private final LatencyHistogram encodes = new LatencyHistogram();
+
+    private final List<LongSupplier> dropSources = new CopyOnWriteArrayList<>();
+    // frames dropped by removed sources.
+    private final AtomicLong retiredDrops = new AtomicLong();
+
+    private volatile boolean streaming = false;
+    private volatile int triggerMode = 0;
+    private volatile int resolutionIndex = 0;
+    private ObjectName objectName;
+
+    public CameraMetrics(String cameraId) {
+        this.cameraId = cameraId;
+    }
+
+    /**
+     * Marks the arrival of a frame, {@code arrivalNanos} from System.nanoTime().
+     */
+    public void recordFrame(long arrivalNanos) {
+        frames.increment();
+        long previous = lastArrival.getAndSet(arrivalNanos);
+        if (previous == 0) return;
+        long interval = arrivalNanos - previous;
+        intervals.record(interval);
+
+        long bits = averageInterval.get();
+        double average = Double.longBitsToDouble(bits);
+        if (average > 0 && interval > LATE_FACTOR * average) lateFrames.increment();
+        double updated = average == 0 ? interval : average + EWMA_WEIGHT * (interval - average);
+        // losing a race only skips one sample of the average.
+        averageInterval.compareAndSet(bits, Double.doubleToRawLongBits(updated));
+    }
+
+    public void recordCallback(long nanos) {
+        callbacks.record(nanos);
+    }
+
+    public void recordConversion(long nanos) {
+        conversions.record(nanos);
+    }
+
+    public void recordEncode(long nanos) {
+        encodes.record(nanos);
+    }
+
+    /**
+     * Adds a counter of dropped frames, eg. {@code dispatcher::getDroppedFrames}.
+     */
+    public void addDropSource(LongSupplier droppedFrames) {
+        dropSources.add(droppedFrames);
+    }
+
+    /**
+     * Removes a source added by {@link #addDropSource}, eg. when its writer
+     * is closed. What it dropped so far still counts.
+     */
+    public void removeDropSource(LongSupplier droppedFrames) {
+        if (dropSources.remove(droppedFrames)) retiredDrops.addAndGet(droppedFrames.getAsLong());
+    }
+
+    /**
+     * Wraps {@code target} so every frame's arrival and callback time is
+     * recorded, for paths that deliver frames off the SDK thread.
+     */
+    public FrameViewCallback timed(ImageStreamCallback target) {
+        return frame -> {
+            if (frame.getMetrics() == null) frame.setMetrics(this);
+            long start = System.nanoTime();
+            recordFrame(start);
+            try {
+                target.onReceiveFrame(frame);
+            } finally {
+                recordCallback(System.nanoTime() - start);
+            }
+        };
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public void setTriggerMode(int triggerMode) {
+        this.triggerMode = triggerMode;
+    }
+
+    public void setResolutionIndex(int resolutionIndex) {
+        this.resolutionIndex = resolutionIndex;
+    }
+
+    /**
+     * Registers with the platform MBean server, replacing a previous
+     * registration for the same camera id.
+     */
+    public synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Camera,name=" + ObjectName.quote(cameraId));
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+            REGISTERED.put(name, this);
+            objectName = name;
+        } catch (JMException e) {
+            System.out.println("Exception thrown while registering metrics of " + cameraId + " : " + e);
+        }
+    }
+
+    /**
+     * Unregisters from the MBean server, unless another camera's metrics
+     * replaced this registration since.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) return;
+        try {
+            if (REGISTERED.remove(objectName, this))
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            System.out.println("Exception thrown while unregistering metrics of " + cameraId + " : " + e);
+        }
+        objectName = null;
+    }
+
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    public LatencyHistogram getFrameIntervals() {
+        return intervals;
+    }
+
+    public LatencyHistogram getCallbackTimes() {
+        return callbacks;
+    }
+
+    public LatencyHistogram getConversionTimes() {
+        return conversions;
+    }
+
+    public LatencyHistogram getEncodeTimes() {
+        return encodes;
+    }
+
+    @Override
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    @Override
+    public long getFramesReceived() {
+        return frames.sum();
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        double average = Double.longBitsToDouble(averageInterval.get());
+        return average == 0 ? 0 : 1e9 / average;
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        long dropped = retiredDrops.get();
+        for (LongSupplier source : dropSources) dropped += source.getAsLong();
+        return dropped;
+    }
+
+    @Override
+    public long getLateFrames() {
+        return lateFrames.sum();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    @Override
+    public double getFrameIntervalP50Millis() {
+        return millis(intervals.getPercentile(50));
+    }
+
+    @Override
+    public double getFrameIntervalP99Millis() {
+        return millis(intervals.getPercentile(99));
+    }
+
+    @Override
+    public double getFrameIntervalMaxMillis() {
+        return millis(intervals.getMax());
+    }
+
+    @Override
+    public double getCallbackP50Millis() {
+        return millis(callbacks.getPercentile(50));
+    }
+
+    @Override
+    public double getCallbackP99Millis() {
+        return millis(callbacks.getPercentile(99));
+    }
+
+    @Override
+    public double getCallbackMaxMillis() {
+        return millis(callbacks.getMax());
+    }
+
+    @Override
+    public double getConversionP50Millis() {
+        return millis(conversions.getPercentile(50));
+    }
+
+    @Override
+    public double getConversionP99Millis() {
+        return millis(conversions.getPercentile(99));
+    }
+
+    @Override
+    public double getConversionMaxMillis() {
+        return millis(conversions.getMax());
+    }
+
+    @Override
+    public double getEncodeP50Millis() {
+        return millis(encodes.getPercentile(50));
+    }
+
+    @Override
+    public double getEncodeP99Millis() {
+        return millis(encodes.getPercentile(99));
+    }
+
+    @Override
+    public double getEncodeMaxMillis() {
+        return millis(encodes.getMax());
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    @Override
+    public int getTriggerMode() {
+        return triggerMode;
+    }
+
+    @Override
+    public int getResolutionIndex() {
+        return resolutionIndex;
+    }
+
+    @Override
+    public void reset() {
+        frames.reset();
+        lateFrames.reset();
+        lastArrival.set(0);
+        averageInterval.set(Double.doubleToRawLongBits(0));
+        intervals.reset();
+        callbacks.reset();
+        conversions.reset();
+        encodes.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CameraMetrics [camera=%s, frames=%d, fps=%.1f, dropped=%d, late=%d, interval p50=%.2f ms"
+                        + " p99=%.2f ms, callback p99=%.2f ms, conversion p99=%.2f ms, encode p99=%.2f ms]",
+                cameraId, getFramesReceived(), getFramesPerSecond(), getDroppedFrames(), getLateFrames(),
+                getFrameIntervalP50Millis(), getFrameIntervalP99Millis(), getCallbackP99Millis(),
+                getConversionP99Millis(), getEncodeP99Millis());
+    }
+
+}
@@ -0,0 +1,52 @@
+package wrapper.toupcam.metrics;
+
+/**
+ * JMX view of {@link CameraMetrics}, durations in milliseconds.
+ *
+ * @author arpit
+ */
+public interface CameraMetricsMBean {
+
+    String getCameraId();
+
+    long getFramesReceived();
+
+    double getFramesPerSecond();
+
+    long getDroppedFrames();
+
+    long getLateFrames();
+
+    double getFrameIntervalP50Millis();
+
+    double getFrameIntervalP99Millis();
+
+    double getFrameIntervalMaxMillis();
+
+    double getCallbackP50Millis();
+
+    double getCallbackP99Millis();
+
+    double getCallbackMaxMillis();
+
+    double getConversionP50Millis();
+
+    double getConversionP99Millis();
+
+    double getConversionMaxMillis();
+
+    double getEncodeP50Millis();
+
+    double getEncodeP99Millis();
+
+    double getEncodeMaxMillis();
+
+    boolean isStreaming();
+
+    int getTriggerMode();
+
+    int getResolutionIndex();
+
+    void reset();
+
+}
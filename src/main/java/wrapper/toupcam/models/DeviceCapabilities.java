@@ -0,0 +1,84 @@
+package wrapper.toupcam.models;
+
+import java.util.Collections;
+import java.util.Set;
+
+import wrapper.toupcam.enumerations.Flag;
+
+/**
+ * Immutable capabilities of a toupcam model, decoded once from its
+ * {@link Model} when the cameras are enumerated.
+ *
+ * @author arpit
+ */
+public class DeviceCapabilities {
+
+	private final String name;
+	private final Set<Flag> flags;
+	private final long maxSpeed;
+	private final int previewResolutions;
+	private final int stillResolutions;
+	private final Resolution[] resolutions;
+	
+	public DeviceCapabilities(Model model) {
+		this.name = model.getName();
+		this.flags = Collections.unmodifiableSet(Flag.decode(model.getFlag()));
+		this.maxSpeed = model.getMaxspeed();
+		this.previewResolutions = (int) model.getPreview();
+		this.stillResolutions = (int) model.getStill();
+		Resolution[] res = model.getRes() == null ? new Resolution[0] : model.getRes();
+		this.resolutions = new Resolution[res.length];
+		for (int i = 0; i < res.length; i++)
+			resolutions[i] = new Resolution((int) res[i].getWidth(), (int) res[i].getHeight());
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public Set<Flag> getFlags() {
+		return flags;
+	}
+	
+	public boolean has(Flag flag) {
+		return flags.contains(flag);
+	}
+	
+	public long getMaxSpeed() {
+		return maxSpeed;
+	}
+	
+	public int getPreviewResolutions() {
+		return previewResolutions;
+	}
+	
+	public int getStillResolutions() {
+		return stillResolutions;
+	}
+	
+	/**
+	 * @return a copy of the resolution table, indexed like {@code Toupcam_put_eSize}.
+	 */
+	public Resolution[] getResolutions() {
+		Resolution[] copy = new Resolution[resolutions.length];
+		for (int i = 0; i < resolutions.length; i++)
+			copy[i] = getResolution(i);
+		return copy;
+	}
+	
+	public Resolution getResolution(int resolutionIndex) {
+		Resolution resolution = resolutions[resolutionIndex];
+		return new Resolution((int) resolution.getWidth(), (int) resolution.getHeight());
+	}
+	
+	public int getResolutionCount() {
+		return resolutions.length;
+	}
+	
+	@Override
+	public String toString() {
+		return "DeviceCapabilities [name=" + name + ", flags=" + flags + ", maxSpeed=" + maxSpeed
+				+ ", resolutions=" + resolutions.length + "]";
+	}
+	
+}
@@ -0,0 +1,133 @@
+package wrapper.toupcam.models;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import wrapper.toupcam.util.FrameBufferPool;
+
+/**
+ * A frame copied out of the SDK's buffer into a pooled heap buffer, so it
+ * can outlive the SDK callback. Release it once done so the buffer goes
+ * back to its pool.
+ * <p>
+ * One copy can be handed to several consumers with {@link #share()}, the
+ * buffer goes back to its pool once every share has been released.
+ *
+ * @author arpit
+ */
+public class Frame {
+
+    private final FrameBuffer buffer;
+    private final ImageHeader header;
+    private final boolean snapshot;
+    private final FrameView view = new FrameView();
+    private long requestNanos;
+    // shares of the buffer still unreleased, common to all shares.
+    private final AtomicInteger references;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    public Frame(FrameBuffer buffer, ImageHeader header, boolean snapshot) {
+        this.buffer = buffer;
+        this.header = new ImageHeader(header);
+        this.snapshot = snapshot;
+        this.references = new AtomicInteger(1);
+    }
+
+    private Frame(Frame shared) {
+        this.buffer = shared.buffer;
+        this.header = new ImageHeader(shared.header);
+        this.snapshot = shared.snapshot;
+        this.requestNanos = shared.requestNanos;
+        this.references = shared.references;
+        this.view.setMetrics(shared.view.getMetrics());
+    }
+
+    public static Frame copyOf(FrameView view, FrameBufferPool pool) {
+        Frame frame = new Frame(view.copyTo(pool), view.getHeader(), view.isSnapshot());
+        frame.view.setMetrics(view.getMetrics());
+        return frame;
+    }
+
+    public ImageHeader getHeader() {
+        return header;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return System.nanoTime() when the frame reached the wrapper, 0 when not stamped.
+     */
+    public long getArrivalNanos() {
+        return header.getTimestamp();
+    }
+
+    public long getSequence() {
+        return header.getSequence();
+    }
+
+    /**
+     * @return System.nanoTime() when the frame was asked for (trigger or
+     * snap), 0 for streamed frames.
+     */
+    public long getRequestNanos() {
+        return requestNanos;
+    }
+
+    public void setRequestNanos(long requestNanos) {
+        this.requestNanos = requestNanos;
+    }
+
+    /**
+     * @return request to arrival time, -1 unless both are known.
+     */
+    public long getLatencyNanos() {
+        return requestNanos == 0 || getArrivalNanos() == 0 ? -1 : getArrivalNanos() - requestNanos;
+    }
+
+    public byte[] getData() {
+        return buffer.getData();
+    }
+
+    public int getLength() {
+        return buffer.getLength();
+    }
+
+    /**
+     * @return a view over this frame's heap copy, so consumers written
+     * against {@link FrameView} work on queued frames too. Valid until
+     * {@link #release()}.
+     */
+    public FrameView view() {
+        return view.wrap(ByteBuffer.wrap(buffer.getData(), 0, buffer.getLength()), header, snapshot);
+    }
+
+    /**
+     * @return another handle on the same bytes, with a header and view of
+     * its own so it can be used from another thread. Must be released on
+     * its own.
+     */
+    public Frame share() {
+        if (released.get() || references.getAndIncrement() <= 0)
+            throw new IllegalStateException("frame shared after release");
+        return new Frame(this);
+    }
+
+    public int getReferences() {
+        return references.get();
+    }
+
+    public void release() {
+        if (!released.compareAndSet(false, true)) throw new IllegalStateException("frame released twice");
+        view.invalidate();
+        if (references.decrementAndGet() == 0) buffer.release();
+    }
+
+    @Override
+    public String toString() {
+        return "Frame [header=" + header + ", snapshot=" + snapshot + ", buffer=" + buffer + "]";
+    }
+
+}
@@ -0,0 +1,62 @@
+package wrapper.toupcam.models;
+
+import wrapper.toupcam.util.FrameBufferPool;
+
+/**
+ * A frame sized byte array leased from a {@link FrameBufferPool}.
+ * Must be released exactly once, after which it may be handed to the
+ * next frame.
+ *
+ * @author arpit
+ */
+public class FrameBuffer {
+
+    private final byte[] data;
+    private final FrameBufferPool pool;
+    private final int generation;
+    private int length;
+    private boolean leased;
+
+    public FrameBuffer(byte[] data, FrameBufferPool pool, int generation) {
+        this.data = data;
+        this.pool = pool;
+        this.generation = generation;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return number of valid bytes in {@link #getData()}.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public synchronized void markLeased() {
+        leased = true;
+    }
+
+    public void release() {
+        synchronized (this) {
+            if (!leased) throw new IllegalStateException("frame buffer released twice");
+            leased = false;
+        }
+        if (pool != null) pool.release(this);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameBuffer [capacity=" + data.length + ", length=" + length + ", generation=" + generation + "]";
+    }
+
+}
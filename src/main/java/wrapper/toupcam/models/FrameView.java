@@ -0,0 +1,186 @@
+package wrapper.toupcam.models;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import wrapper.toupcam.metrics.CameraMetrics;
+import wrapper.toupcam.util.FrameBufferPool;
+import wrapper.toupcam.util.FrameConverter;
+
+/**
+ * Read-only view over a frame still owned by the toupcam SDK.
+ * <p>
+ * A view is only valid while the callback it was handed to is running,
+ * the SDK reuses the underlying native buffer for the next frame. Use
+ * {@link #copy()} to keep the data beyond that.
+ *
+ * @author arpit
+ */
+public class FrameView {
+
+    private ByteBuffer buffer;
+    private ImageHeader header;
+    private boolean snapshot;
+    private boolean valid;
+    // conversion times are recorded here when set, kept across frames.
+    private CameraMetrics metrics;
+
+    /**
+     * Points this view at a new frame, views are reused across frames
+     * to keep the frame path free of allocations.
+     */
+    public FrameView wrap(ByteBuffer buffer, ImageHeader header, boolean snapshot) {
+        this.buffer = buffer.isReadOnly() ? buffer : buffer.asReadOnlyBuffer();
+        this.header = header;
+        this.snapshot = snapshot;
+        this.valid = true;
+        return this;
+    }
+
+    /**
+     * Stamps the header with the arrival time and sequence number of the
+     * frame, see {@link ImageHeader#getTimestamp()} and {@link ImageHeader#getSequence()}.
+     */
+    public FrameView stamp(long arrivalNanos, long sequence) {
+        header.setTimestamp(arrivalNanos);
+        header.setSequence(sequence);
+        return this;
+    }
+
+    /**
+     * @return System.nanoTime() when the frame reached the wrapper, 0 when not stamped.
+     */
+    public long getArrivalNanos() {
+        return header.getTimestamp();
+    }
+
+    public long getSequence() {
+        return header.getSequence();
+    }
+
+    public FrameView setMetrics(CameraMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public CameraMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void invalidate() {
+        valid = false;
+        buffer = null;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public ImageHeader getHeader() {
+        return header;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public int getWidth() {
+        return header.getWidth();
+    }
+
+    public int getHeight() {
+        return header.getHeight();
+    }
+
+    public int getSize() {
+        checkValid();
+        return buffer.remaining();
+    }
+
+    /**
+     * @return a read-only, direct when backed by native memory, buffer
+     * positioned at the first byte of the frame.
+     */
+    public ByteBuffer getBuffer() {
+        checkValid();
+        return buffer.duplicate();
+    }
+
+    /**
+     * Copies the frame out of native memory, the returned array stays
+     * valid after the callback returns.
+     */
+    public byte[] copy() {
+        checkValid();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Copies the frame into a buffer leased from {@code pool}, the caller
+     * must release it once done.
+     */
+    public FrameBuffer copyTo(FrameBufferPool pool) {
+        checkValid();
+        FrameBuffer frameBuffer = pool.lease(header);
+        int length = Math.min(buffer.remaining(), frameBuffer.getData().length);
+        buffer.duplicate().get(frameBuffer.getData(), 0, length);
+        frameBuffer.setLength(length);
+        return frameBuffer;
+    }
+
+    /**
+     * Bulk copies the frame into {@code dst} at its position, without
+     * allocating.
+     *
+     * @return number of bytes copied.
+     */
+    public int copyTo(ByteBuffer dst) {
+        checkValid();
+        int position = buffer.position();
+        int length = buffer.remaining();
+        dst.put(buffer);
+        buffer.position(position);
+        return length;
+    }
+
+    public BufferedImage toBufferedImage() {
+        checkValid();
+        long start = System.nanoTime();
+        BufferedImage image = FrameConverter.toImage(buffer, header);
+        if (metrics != null) metrics.recordConversion(System.nanoTime() - start);
+        return image;
+    }
+
+    /**
+     * Preview of the frame, {@code roi} (the whole frame when null) scaled
+     * down by {@code factor}, see {@link FrameConverter#decimate(ByteBuffer, ImageHeader, Rectangle, int)}.
+     */
+    public BufferedImage toPreviewImage(Rectangle roi, int factor) {
+        checkValid();
+        long start = System.nanoTime();
+        BufferedImage image = FrameConverter.decimate(buffer, header, roi, factor);
+        if (metrics != null) metrics.recordConversion(System.nanoTime() - start);
+        return image;
+    }
+
+    public byte[] toByteArray(ImageType imageType) {
+        checkValid();
+        long start = System.nanoTime();
+        byte[] bytes = FrameConverter.toByteArray(buffer, header, imageType);
+        if (metrics != null) metrics.recordConversion(System.nanoTime() - start);
+        return bytes;
+    }
+
+    private void checkValid() {
+        if (!valid) throw new IllegalStateException("frame view used outside of its callback");
+    }
+
+    @Override
+    public String toString() {
+        return "FrameView [header=" + header + ", snapshot=" + snapshot + ", valid=" + valid + "]";
+    }
+
+}
@@ -14,6 +14,32 @@ public class ImageHeader {
 	private int clrUsed;
 	private int clrImportant;
 	
+	// not part of the BITMAPINFOHEADER, stamped by the wrapper as the frame arrives.
+	private long sequence;
+	private long timestamp;
+	
+	public ImageHeader() {}
+	
+	public ImageHeader(ImageHeader other) {
+		copyFrom(other);
+	}
+	
+	public void copyFrom(ImageHeader other) {
+		this.size = other.size;
+		this.width = other.width;
+		this.height = other.height;
+		this.planes = other.planes;
+		this.bitcount = other.bitcount;
+		this.compression = other.compression;
+		this.imageSize = other.imageSize;
+		this.xPelsPerMeter = other.xPelsPerMeter;
+		this.yPelsPerMeter = other.yPelsPerMeter;
+		this.clrUsed = other.clrUsed;
+		this.clrImportant = other.clrImportant;
+		this.sequence = other.sequence;
+		this.timestamp = other.timestamp;
+	}
+	
 	public int getSize() {
 		return size;
 	}
@@ -81,12 +107,33 @@ public class ImageHeader {
 		this.clrImportant = clrImportant;
 	}
 	
+	/**
+	 * @return per camera frame number, starting at 1 and counting every
+	 * frame delivered while streaming; a gap means frames were lost on the
+	 * way. 0 when not stamped.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+	/**
+	 * @return System.nanoTime() when the frame reached the wrapper, 0 when not stamped.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+	
 	@Override
 	public String toString() {
 		return "ImageHeader [size=" + size + ", width=" + width + ", height=" + height + ", planes=" + planes
 				+ ", bitcount=" + bitcount + ", compression=" + compression + ", imageSize=" + imageSize
 				+ ", xPelsPerMeter=" + xPelsPerMeter + ", yPelsPerMeter=" + yPelsPerMeter + ", clrUsed=" + clrUsed
-				+ ", clrImportant=" + clrImportant + "]";
+				+ ", clrImportant=" + clrImportant + ", sequence=" + sequence + ", timestamp=" + timestamp + "]";
 	}
 	
 }
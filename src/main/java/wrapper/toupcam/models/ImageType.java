@@ -2,5 +2,6 @@ package wrapper.toupcam.models;
 
 public enum ImageType {
     BGRA,
-    ABGR
+    ABGR,
+    BGR         // native 24 bit layout of toupcam frames
 }
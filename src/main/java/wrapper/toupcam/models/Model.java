@@ -11,6 +11,24 @@ public class Model implements IModel {
 	public long still;
 	public Resolution[] res;
 	
+	public Model() {}
+	
+	/**
+	 * Deep copy, including the resolution table.
+	 */
+	public Model(Model other) {
+		this.name = other.name;
+		this.flag = other.flag;
+		this.maxspeed = other.maxspeed;
+		this.preview = other.preview;
+		this.still = other.still;
+		if (other.res != null) {
+			this.res = new Resolution[other.res.length];
+			for (int i = 0; i < res.length; i++)
+				res[i] = other.res[i] == null ? null : new Resolution(other.res[i]);
+		}
+	}
+	
 	public String getName() {
 		return name;
 	}
@@ -1,5 +1,6 @@
 package wrapper.toupcam.models;
 
+import wrapper.toupcam.enumerations.BayerPattern;
 import wrapper.toupcam.enumerations.HResult;
 
 public class RawFormat {
@@ -25,6 +26,12 @@ public class RawFormat {
 	public void setBitdepth(int bitdepth) {
 		this.bitdepth = bitdepth;
 	}
+	/**
+	 * @return bayer layout of the raw frames, null for non bayer formats.
+	 */
+	public BayerPattern getBayerPattern() {
+		return BayerPattern.key(nFourCC);
+	}
 	public HResult getResult() {
 		return result;
 	}
@@ -12,6 +12,11 @@ public class Resolution implements IModel {
 		this.height = height;
 	}
 	
+	public Resolution(Resolution other){
+		this.width = other.width;
+		this.height = other.height;
+	}
+	
 	public long getWidth() {
 		return width;
 	}
@@ -6,6 +6,17 @@ public class ToupcamInst implements IModel {
 	public String id;
 	public Model model;
 	
+	public ToupcamInst() {}
+	
+	/**
+	 * Deep copy, including the model.
+	 */
+	public ToupcamInst(ToupcamInst other) {
+		this.displayName = other.displayName;
+		this.id = other.id;
+		this.model = other.model == null ? null : new Model(other.model);
+	}
+	
 	public String getDisplayName() {
 		return displayName;
 	}
@@ -0,0 +1,280 @@
+package wrapper.toupcam.processing;
+
+import static wrapper.toupcam.enumerations.BayerPattern.BLUE;
+import static wrapper.toupcam.enumerations.BayerPattern.GREEN;
+import static wrapper.toupcam.enumerations.BayerPattern.RED;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import wrapper.toupcam.enumerations.BayerPattern;
+import wrapper.toupcam.enumerations.DemosaicAlgorithm;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.RawFormat;
+
+/**
+ * Host side demosaic of {@code OPTION_RAW} frames into colour images.
+ * <p>
+ * Raw frames are one sample per pixel, 1 byte for 8 bit sensors and
+ * 2 little endian bytes for deeper ones. Output keeps the B, G, R order of
+ * regular toupcam frames, either 8 bit (byte[]) or 16 bit (short[]), samples
+ * scaled to the full range of the output. Rows are split into strips that
+ * are processed in parallel on a {@link ForkJoinPool}; image borders are
+ * mirrored so every pixel is interpolated the same way.
+ *
+ * @author arpit
+ */
+public class DemosaicEngine {
+
+    public static final int DEFAULT_STRIP_ROWS = 64;
+
+    private final ForkJoinPool pool;
+    private final int stripRows;
+    // native frames are copied in here, reused frame after frame by each calling thread.
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[0]);
+
+    public DemosaicEngine() {
+        this(ForkJoinPool.commonPool(), DEFAULT_STRIP_ROWS);
+    }
+
+    public DemosaicEngine(ForkJoinPool pool, int stripRows) {
+        this.pool = pool;
+        this.stripRows = Math.max(2, stripRows);
+    }
+
+    public byte[] demosaic8(FrameView raw, RawFormat format, DemosaicAlgorithm algorithm) {
+        byte[] bgr = new byte[raw.getWidth() * Math.abs(raw.getHeight()) * 3];
+        int shift = Math.max(0, format.getBitdepth() - 8);
+        run(mosaic(raw, format), algorithm, (index, blue, green, red) -> {
+            bgr[index] = (byte) (blue >> shift);
+            bgr[index + 1] = (byte) (green >> shift);
+            bgr[index + 2] = (byte) (red >> shift);
+        });
+        return bgr;
+    }
+
+    public short[] demosaic16(FrameView raw, RawFormat format, DemosaicAlgorithm algorithm) {
+        short[] bgr = new short[raw.getWidth() * Math.abs(raw.getHeight()) * 3];
+        int shift = 16 - format.getBitdepth();
+        run(mosaic(raw, format), algorithm, (index, blue, green, red) -> {
+            bgr[index] = (short) (blue << shift);
+            bgr[index + 1] = (short) (green << shift);
+            bgr[index + 2] = (short) (red << shift);
+        });
+        return bgr;
+    }
+
+    /**
+     * Samples are bulk copied into the calling thread's scratch array first,
+     * reading them one by one from the frame's buffer is much slower than
+     * the copy.
+     */
+    private Mosaic mosaic(FrameView raw, RawFormat format) {
+        ByteBuffer buffer = raw.getBuffer();
+        int width = raw.getWidth(), height = Math.abs(raw.getHeight());
+        int length = buffer.remaining();
+        byte[] samples = scratch.get();
+        if (samples.length < length) scratch.set(samples = new byte[length]);
+        buffer.get(samples, 0, length);
+        return new Mosaic(samples, 0, length, width, height, format.getBayerPattern(), format.getBitdepth());
+    }
+
+    /**
+     * Demosaics into 8 bit BGR, {@code dst} holds width * height * 3 bytes.
+     */
+    public void demosaic(byte[] raw, int width, int height, BayerPattern pattern, int bitDepth,
+                         DemosaicAlgorithm algorithm, byte[] dst) {
+        int shift = Math.max(0, bitDepth - 8);
+        run(new Mosaic(raw, 0, raw.length, width, height, pattern, bitDepth), algorithm,
+                (index, blue, green, red) -> {
+                    dst[index] = (byte) (blue >> shift);
+                    dst[index + 1] = (byte) (green >> shift);
+                    dst[index + 2] = (byte) (red >> shift);
+                });
+    }
+
+    /**
+     * Demosaics into 16 bit BGR, {@code dst} holds width * height * 3 samples.
+     */
+    public void demosaic(byte[] raw, int width, int height, BayerPattern pattern, int bitDepth,
+                         DemosaicAlgorithm algorithm, short[] dst) {
+        int shift = 16 - bitDepth;
+        run(new Mosaic(raw, 0, raw.length, width, height, pattern, bitDepth), algorithm,
+                (index, blue, green, red) -> {
+                    dst[index] = (short) (blue << shift);
+                    dst[index + 1] = (short) (green << shift);
+                    dst[index + 2] = (short) (red << shift);
+                });
+    }
+
+    private interface Output {
+        void set(int index, int blue, int green, int red);
+    }
+
+    private interface RowKernel {
+        void rows(int from, int to);
+    }
+
+    private void run(Mosaic mosaic, DemosaicAlgorithm algorithm, Output output) {
+        if (mosaic.pattern == null) throw new IllegalArgumentException("not a bayer raw format");
+        if (algorithm == DemosaicAlgorithm.BILINEAR) {
+            pool.invoke(new Strips(0, mosaic.height, (from, to) -> bilinear(mosaic, output, from, to)));
+        } else {
+            int[] green = new int[mosaic.width * mosaic.height];
+            pool.invoke(new Strips(0, mosaic.height, (from, to) -> directedGreen(mosaic, green, from, to)));
+            pool.invoke(new Strips(0, mosaic.height, (from, to) -> colourDifference(mosaic, green, output, from, to)));
+        }
+    }
+
+    private class Strips extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from, to;
+        private final RowKernel kernel;
+
+        Strips(int from, int to, RowKernel kernel) {
+            this.from = from;
+            this.to = to;
+            this.kernel = kernel;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= stripRows) {
+                kernel.rows(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Strips(from, middle, kernel), new Strips(middle, to, kernel));
+        }
+    }
+
+    /**
+     * Raw samples with mirrored borders, mirroring by 1 or 2 keeps the
+     * bayer parity of the pixel and needs frames of at least 3x3.
+     */
+    private static class Mosaic {
+        final byte[] raw;
+        final int offset;
+        final int width, height, max;
+        final boolean wide;
+        final BayerPattern pattern;
+
+        Mosaic(byte[] raw, int offset, int length, int width, int height, BayerPattern pattern, int bitDepth) {
+            this.wide = bitDepth > 8;
+            if (width < 3 || height < 3)
+                throw new IllegalArgumentException("raw frame must be at least 3x3 : " + width + "x" + height);
+            if (length < width * height * (wide ? 2 : 1))
+                throw new IllegalArgumentException("raw frame too small for " + width + "x" + height);
+            this.raw = raw;
+            this.offset = offset;
+            this.width = width;
+            this.height = height;
+            this.pattern = pattern;
+            this.max = (1 << bitDepth) - 1;
+        }
+
+        int at(int x, int y) {
+            if (x < 0) x = -x;
+            else if (x >= width) x = 2 * width - 2 - x;
+            if (y < 0) y = -y;
+            else if (y >= height) y = 2 * height - 2 - y;
+            int index = y * width + x;
+            if (!wide) return raw[offset + index] & 0xff;
+            return (raw[offset + 2 * index] & 0xff) | ((raw[offset + 2 * index + 1] & 0xff) << 8);
+        }
+
+        int clamp(int value) {
+            return value < 0 ? 0 : value > max ? max : value;
+        }
+    }
+
+    private static void bilinear(Mosaic m, Output output, int from, int to) {
+        int[] rgb = new int[3];
+        for (int y = from; y < to; y++) {
+            int index = y * m.width * 3;
+            for (int x = 0; x < m.width; x++, index += 3) {
+                int colour = m.pattern.colorAt(x, y);
+                int centre = m.at(x, y);
+                if (colour == GREEN) {
+                    rgb[GREEN] = centre;
+                    rgb[m.pattern.colorAt(x + 1, y)] = (m.at(x - 1, y) + m.at(x + 1, y) + 1) >> 1;
+                    rgb[m.pattern.colorAt(x, y + 1)] = (m.at(x, y - 1) + m.at(x, y + 1) + 1) >> 1;
+                } else {
+                    rgb[colour] = centre;
+                    rgb[GREEN] = (m.at(x - 1, y) + m.at(x + 1, y) + m.at(x, y - 1) + m.at(x, y + 1) + 2) >> 2;
+                    rgb[RED + BLUE - colour] = (m.at(x - 1, y - 1) + m.at(x + 1, y - 1)
+                            + m.at(x - 1, y + 1) + m.at(x + 1, y + 1) + 2) >> 2;
+                }
+                output.set(index, rgb[BLUE], rgb[GREEN], rgb[RED]);
+            }
+        }
+    }
+
+    /**
+     * First pass of the edge aware algorithm, green at red and blue sites
+     * interpolated along the direction with the smaller gradient, corrected
+     * by the curvature of the site's own colour.
+     */
+    private static void directedGreen(Mosaic m, int[] green, int from, int to) {
+        for (int y = from; y < to; y++) {
+            int index = y * m.width;
+            for (int x = 0; x < m.width; x++, index++) {
+                int centre = m.at(x, y);
+                if (m.pattern.colorAt(x, y) == GREEN) {
+                    green[index] = centre;
+                    continue;
+                }
+                int west = m.at(x - 1, y), east = m.at(x + 1, y);
+                int north = m.at(x, y - 1), south = m.at(x, y + 1);
+                int curveH = 2 * centre - m.at(x - 2, y) - m.at(x + 2, y);
+                int curveV = 2 * centre - m.at(x, y - 2) - m.at(x, y + 2);
+                int gradientH = Math.abs(west - east) + Math.abs(curveH);
+                int gradientV = Math.abs(north - south) + Math.abs(curveV);
+
+                int value;
+                if (gradientH < gradientV) value = ((west + east) * 2 + curveH) / 4;
+                else if (gradientV < gradientH) value = ((north + south) * 2 + curveV) / 4;
+                else value = (west + east + north + south) / 4 + (curveH + curveV) / 8;
+                green[index] = m.clamp(value);
+            }
+        }
+    }
+
+    /**
+     * Second pass, red and blue from the average colour difference to green
+     * of their nearest samples.
+     */
+    private static void colourDifference(Mosaic m, int[] green, Output output, int from, int to) {
+        int[] rgb = new int[3];
+        for (int y = from; y < to; y++) {
+            int index = y * m.width;
+            for (int x = 0; x < m.width; x++, index++) {
+                int colour = m.pattern.colorAt(x, y);
+                int g = green[index];
+                rgb[GREEN] = g;
+                if (colour == GREEN) {
+                    rgb[m.pattern.colorAt(x + 1, y)] = m.clamp(g + (difference(m, green, x - 1, y)
+                            + difference(m, green, x + 1, y)) / 2);
+                    rgb[m.pattern.colorAt(x, y + 1)] = m.clamp(g + (difference(m, green, x, y - 1)
+                            + difference(m, green, x, y + 1)) / 2);
+                } else {
+                    rgb[colour] = m.at(x, y);
+                    rgb[RED + BLUE - colour] = m.clamp(g + (difference(m, green, x - 1, y - 1)
+                            + difference(m, green, x + 1, y - 1) + difference(m, green, x - 1, y + 1)
+                            + difference(m, green, x + 1, y + 1)) / 4);
+                }
+                output.set(index * 3, rgb[BLUE], rgb[GREEN], rgb[RED]);
+            }
+        }
+    }
+
+    private static int difference(Mosaic m, int[] green, int x, int y) {
+        if (x < 0) x = -x;
+        else if (x >= m.width) x = 2 * m.width - 2 - x;
+        if (y < 0) y = -y;
+        else if (y >= m.height) y = 2 * m.height - 2 - y;
+        return m.at(x, y) - green[y * m.width + x];
+    }
+
+}
@@ -0,0 +1,292 @@
+package wrapper.toupcam.processing;
+
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.util.FrameConverter;
+import wrapper.toupcam.util.Util;
+
+/**
+ * JPEG encoding of toupcam frames, the replacement of
+ * {@code Util.compressBufferedImageByteArray}.
+ * <p>
+ * Every thread keeps its own ImageIO writer, write param and output buffer,
+ * so nothing is looked up or allocated per frame apart from the returned
+ * bytes. Frame bytes are handed to the writer as they are, through a raster
+ * over the padded BGR (or grey, or BGRX) rows, instead of being redrawn into
+ * a new image first.
+ * <p>
+ * {@link #encode} runs on the calling thread, {@link #submit(Frame)} on the
+ * encoder's own pool, so frames are encoded in parallel. CPU time spent
+ * encoding is measured, see {@link #getFramesPerCoreSecond()}.
+ *
+ * @author arpit
+ */
+public class JpegEncoder {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private final float quality;
+    private final int threads;
+    private final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+    private ExecutorService pool = null;
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong cpuNanos = new AtomicLong();
+    private final AtomicLong wallNanos = new AtomicLong();
+
+    // ByteArrayOutputStream whose array is reused across frames.
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(1 << 20);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * Per thread encoding state.
+     */
+    private class Context {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        final Buffer out = new Buffer();
+        // frame bytes copied out of views which don't expose their array.
+        byte[] scratch = new byte[0];
+
+        Context() {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+        }
+
+        byte[] scratch(int length) {
+            if (scratch.length < length) scratch = new byte[length];
+            return scratch;
+        }
+    }
+
+    /**
+     * @param quality 0..1.
+     */
+    public JpegEncoder(float quality) {
+        this(quality, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads size of the pool used by {@link #submit(Frame)}, started on first use.
+     */
+    public JpegEncoder(float quality, int threads) {
+        if (quality < 0 || quality > 1) throw new IllegalArgumentException("quality must be within 0..1 : " + quality);
+        this.quality = quality;
+        this.threads = Math.max(1, threads);
+    }
+
+    public float getQuality() {
+        return quality;
+    }
+
+    /**
+     * Encodes a frame still owned by the SDK or a {@link Frame}'s view,
+     * its bytes are bulk copied once into a per thread buffer.
+     */
+    public byte[] encode(FrameView frame) throws IOException {
+        Context context = contexts.get();
+        int length = frame.getSize();
+        byte[] data = context.scratch(length);
+        frame.getBuffer().get(data, 0, length);
+        return toByteArray(encode(context, wrap(data, 0, length, frame.getHeader())));
+    }
+
+    /**
+     * Encodes a queued frame straight from its heap buffer, nothing is copied.
+     */
+    public byte[] encode(Frame frame) throws IOException {
+        return toByteArray(encodeFrame(frame));
+    }
+
+    /**
+     * Encodes a queued frame into {@code target}, skipping the intermediate array.
+     *
+     * @return number of bytes written.
+     */
+    public int encode(Frame frame, OutputStream target) throws IOException {
+        Buffer out = encodeFrame(frame);
+        out.writeTo(target);
+        return out.size();
+    }
+
+    /**
+     * Encodes any image, images with alpha are drawn onto an opaque one
+     * first as JPEG can't hold it.
+     */
+    public byte[] encode(BufferedImage image) throws IOException {
+        if (image.getColorModel().hasAlpha()) {
+            BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+            Graphics2D graphics = opaque.createGraphics();
+            graphics.drawImage(image, 0, 0, null);
+            graphics.dispose();
+            image = opaque;
+        }
+        return toByteArray(encode(contexts.get(), image));
+    }
+
+    private Buffer encodeFrame(Frame frame) throws IOException {
+        return encode(contexts.get(), wrap(frame.getData(), 0, frame.getLength(), frame.getHeader()));
+    }
+
+    /**
+     * Encodes on the encoder's pool, ownership of {@code frame} passes to
+     * the encoder which releases it once encoded.
+     */
+    public CompletableFuture<byte[]> submit(Frame frame) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        try {
+            pool().execute(() -> {
+                try {
+                    result.complete(encode(frame));
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    frame.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            frame.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private synchronized ExecutorService pool() {
+        if (pool == null) pool = Executors.newFixedThreadPool(threads, Util.namedDaemonThreads("toupcam-jpeg"));
+        return pool;
+    }
+
+    private Buffer encode(Context context, BufferedImage image) throws IOException {
+        long cpuStart = cpuTime();
+        long start = System.nanoTime();
+        context.out.reset();
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(context.out)) {
+            context.writer.setOutput(out);
+            context.writer.write(null, new IIOImage(image, null, null), context.param);
+        } finally {
+            context.writer.setOutput(null);
+        }
+        long elapsed = System.nanoTime() - start;
+        wallNanos.addAndGet(elapsed);
+        cpuNanos.addAndGet(CPU_TIME ? cpuTime() - cpuStart : elapsed);
+        frames.incrementAndGet();
+        bytes.addAndGet(context.out.size());
+        return context.out;
+    }
+
+    private static long cpuTime() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static byte[] toByteArray(Buffer out) {
+        return Arrays.copyOf(out.array(), out.size());
+    }
+
+    /**
+     * An image over the frame's rows as they are, 8 bit grey, 24 bit BGR or
+     * 32 bit BGRX, rows padded to 4 bytes.
+     */
+    static BufferedImage wrap(byte[] data, int offset, int length, ImageHeader header) {
+        int width = header.getWidth(), height = Math.abs(header.getHeight());
+        int bitcount = header.getBitcount() > 0 ? header.getBitcount() : 24;
+        int stride = FrameConverter.stride(width, bitcount);
+        if (length < stride * height)
+            throw new IllegalArgumentException("frame of " + length + " bytes too small for " + header);
+
+        DataBufferByte buffer = new DataBufferByte(data, length, offset);
+        boolean grey = bitcount == 8;
+        int[] bandOffsets = grey ? new int[] { 0 } : new int[] { 2, 1, 0 };
+        WritableRaster raster = Raster.createInterleavedRaster(buffer, width, height, stride, bitcount / 8,
+                bandOffsets, null);
+        ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(grey ? ColorSpace.CS_GRAY
+                : ColorSpace.CS_sRGB), false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (pool != null) pool.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        ExecutorService current;
+        synchronized (this) {
+            current = pool;
+        }
+        return current == null || current.awaitTermination(timeout, unit);
+    }
+
+    public long getEncodedFrames() {
+        return frames.get();
+    }
+
+    public long getEncodedBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return frames one fully busy core encodes per second, from the CPU
+     * time of the encoding threads, wall clock time where the JVM can't
+     * measure it.
+     */
+    public double getFramesPerCoreSecond() {
+        long nanos = cpuNanos.get();
+        return nanos == 0 ? 0 : frames.get() / (nanos / 1e9);
+    }
+
+    /**
+     * @return average wall clock time of one encode, in milliseconds.
+     */
+    public double getAverageEncodeMillis() {
+        long count = frames.get();
+        return count == 0 ? 0 : wallNanos.get() / 1e6 / count;
+    }
+
+    @Override
+    public String toString() {
+        return "JpegEncoder [quality=" + quality + ", encoded=" + frames + ", fps/core="
+                + String.format("%.1f", getFramesPerCoreSecond()) + ", ms/frame="
+                + String.format("%.2f", getAverageEncodeMillis()) + "]";
+    }
+
+}
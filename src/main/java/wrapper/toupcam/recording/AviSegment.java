@@ -0,0 +1,161 @@
+package wrapper.toupcam.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.processing.JpegEncoder;
+
+/**
+ * MJPEG AVI 1.0 segment, every frame a JPEG in a {@code 00dc} chunk of
+ * the {@code movi} list and an {@code idx1} index at the end.
+ * <p>
+ * The index is allocated for the whole segment up front and written in
+ * one go when the segment is finished; a segment whose index is full
+ * rolls over. The frame rate in the headers is the one measured from the
+ * frames' arrival times.
+ *
+ * @author arpit
+ */
+class AviSegment extends Segment {
+
+    static final int INDEX_ENTRY_SIZE = 16;
+    static final int AVIF_HASINDEX = 0x10;
+    static final int AVIIF_KEYFRAME = 0x10;
+    // one RIFF list of AVI 1.0 holds at most 1 GB.
+    static final long MAX_SIZE = 1L << 30;
+
+    // offsets of the header fields patched on finish.
+    private static final int RIFF_SIZE = 4;
+    private static final int AVIH_MICROSEC_PER_FRAME = 32;
+    private static final int AVIH_MAX_BYTES_PER_SEC = 36;
+    private static final int AVIH_TOTAL_FRAMES = 48;
+    private static final int AVIH_SUGGESTED_BUFFER = 60;
+    private static final int STRH_RATE = 132;
+    private static final int STRH_LENGTH = 140;
+    private static final int STRH_SUGGESTED_BUFFER = 144;
+    private static final int MOVI_SIZE = 216;
+    private static final int MOVI = 220;
+    private static final byte[] VIDEO_CHUNK = "00dc".getBytes(StandardCharsets.US_ASCII);
+
+    private final JpegEncoder encoder;
+    private final double nominalFps;
+    private final ByteBuffer index;
+    private int largestChunk = 0;
+
+    AviSegment(File file, ImageHeader header, ByteBuffer buffer, JpegEncoder encoder, int indexFrames,
+               double nominalFps) throws IOException {
+        super(file, header, buffer);
+        this.encoder = encoder;
+        this.nominalFps = nominalFps;
+        this.index = ByteBuffer.allocate(indexFrames * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        putAscii("RIFF");
+        putInt(0);
+        putAscii("AVI ");
+
+        putAscii("LIST");
+        putInt(192);
+        putAscii("hdrl");
+        putAscii("avih");
+        putInt(56);
+        putInt(0);                      // microseconds per frame
+        putInt(0);                      // max bytes per second
+        putInt(0);                      // padding granularity
+        putInt(AVIF_HASINDEX);
+        putInt(0);                      // total frames
+        putInt(0);                      // initial frames
+        putInt(1);                      // streams
+        putInt(0);                      // suggested buffer size
+        putInt(width);
+        putInt(height);
+        for (int i = 0; i < 4; i++) putInt(0);
+
+        putAscii("LIST");
+        putInt(116);
+        putAscii("strl");
+        putAscii("strh");
+        putInt(56);
+        putAscii("vids");
+        putAscii("MJPG");
+        putInt(0);                      // flags
+        putShort(0);                    // priority
+        putShort(0);                    // language
+        putInt(0);                      // initial frames
+        putInt(1000);                   // scale, rate / scale is the frame rate
+        putInt(0);                      // rate
+        putInt(0);                      // start
+        putInt(0);                      // length in frames
+        putInt(0);                      // suggested buffer size
+        putInt(-1);                     // quality, driver default
+        putInt(0);                      // sample size, varies
+        putShort(0);
+        putShort(0);
+        putShort(width);
+        putShort(height);
+
+        putAscii("strf");
+        putInt(40);
+        putInt(40);
+        putInt(width);
+        putInt(height);
+        putShort(1);
+        putShort(24);
+        putAscii("MJPG");
+        putInt(width * height * 3);
+        for (int i = 0; i < 4; i++) putInt(0);
+
+        putAscii("LIST");
+        putInt(0);
+        putAscii("movi");
+    }
+
+    @Override
+    boolean isFull() {
+        return !index.hasRemaining();
+    }
+
+    @Override
+    void writeFrame(Frame frame) throws IOException {
+        long chunk = size();
+        put(VIDEO_CHUNK, 0, VIDEO_CHUNK.length);
+        putInt(0);
+        int length = encoder.encode(frame, stream());
+        if ((length & 1) == 1) stream().write(0);
+        patchInt(chunk + 4, length);
+
+        // index offsets are relative to the movi fourcc.
+        index.put(VIDEO_CHUNK);
+        index.putInt(AVIIF_KEYFRAME);
+        index.putInt((int) (chunk - MOVI));
+        index.putInt(length);
+        largestChunk = Math.max(largestChunk, length);
+    }
+
+    @Override
+    void finish() throws IOException {
+        long indexStart = size();
+        putAscii("idx1");
+        putInt(index.position());
+        put(index.array(), 0, index.position());
+
+        double fps = measuredFps(nominalFps);
+        patchInt(RIFF_SIZE, (int) (size() - 8));
+        patchInt(MOVI_SIZE, (int) (indexStart - MOVI));
+        patchInt(AVIH_MICROSEC_PER_FRAME, (int) Math.max(1, Math.round(1e6 / fps)));
+        patchInt(AVIH_MAX_BYTES_PER_SEC, (int) Math.min(Integer.MAX_VALUE, Math.round(largestChunk * fps)));
+        patchInt(AVIH_TOTAL_FRAMES, frames);
+        patchInt(AVIH_SUGGESTED_BUFFER, largestChunk + 8);
+        patchInt(STRH_RATE, (int) Math.min(Integer.MAX_VALUE, Math.round(fps * 1000)));
+        patchInt(STRH_LENGTH, frames);
+        patchInt(STRH_SUGGESTED_BUFFER, largestChunk + 8);
+    }
+
+}
@@ -0,0 +1,20 @@
+package wrapper.toupcam.recording;
+
+import wrapper.toupcam.models.ImageHeader;
+
+/**
+ * Naming scheme of the files written by {@link FrameWriter}, without extension.
+ */
+public interface FileNamer {
+
+	String fileName(long sequence, ImageHeader header, boolean isSnapshot);
+
+	/**
+	 * {@code prefix} followed by the zero padded sequence number, eg. image000042.
+	 * Padding keeps lexical and capture order the same.
+	 */
+	static FileNamer sequential(String prefix) {
+		return (sequence, header, isSnapshot) -> String.format("%s%09d", prefix, sequence);
+	}
+
+}
@@ -0,0 +1,317 @@
+package wrapper.toupcam.recording;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.imageio.ImageIO;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.ImageFormat;
+import wrapper.toupcam.enumerations.OverflowPolicy;
+import wrapper.toupcam.metrics.CameraMetrics;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.processing.JpegEncoder;
+import wrapper.toupcam.util.FrameBufferPool;
+import wrapper.toupcam.util.Util;
+
+/**
+ * Capture to disk stage: frames are copied off the SDK thread into a bounded
+ * queue and encoded and written by a pool of worker threads.
+ * <p>
+ * Sequence numbers are taken atomically when a frame is accepted. Workers
+ * write to a temporary file and files are renamed to their final name
+ * strictly in sequence order, so a reader of the output directory never
+ * sees frame n + 1 before frame n.
+ *
+ * @author arpit
+ */
+public class FrameWriter implements FrameViewCallback {
+
+    private static final String TEMP_SUFFIX = ".part";
+
+    private final File directory;
+    private final ImageFormat format;
+    private final FileNamer namer;
+    private final OverflowPolicy policy;
+    private final ArrayBlockingQueue<Task> queue;
+    private final ExecutorService workers;
+    private final FrameBufferPool pool;
+    private final JpegEncoder jpegEncoder;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    // finished tasks waiting for their predecessors to be committed.
+    private final PriorityQueue<Task> finished = new PriorityQueue<>((a, b) -> Long.compare(a.sequence, b.sequence));
+    private long nextToCommit = 0;
+
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = true;
+    private volatile CameraMetrics metrics = null;
+    // added to the metrics by setMetrics, removed again on close.
+    private final LongSupplier dropSource = this::getDroppedFrames;
+
+    private static class Task {
+        final long sequence;
+        final Frame frame;
+        File file;
+        boolean ok;
+
+        Task(long sequence, Frame frame) {
+            this.sequence = sequence;
+            this.frame = frame;
+        }
+    }
+
+    public FrameWriter(File directory, ImageFormat format) {
+        this(directory, format, 0.9f, FileNamer.sequential("image"), 32,
+                Runtime.getRuntime().availableProcessors(), OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * @param jpegQuality 0..1, only used for {@link ImageFormat#JPEG}.
+     * @param capacity    frames that may wait to be encoded.
+     * @param threads     number of parallel encode and write workers.
+     * @param policy      applied when the queue is full, BLOCK waits at most one second.
+     */
+    public FrameWriter(File directory, ImageFormat format, float jpegQuality, FileNamer namer,
+                       int capacity, int threads, OverflowPolicy policy) {
+        this.directory = directory;
+        this.format = format;
+        this.jpegEncoder = format == ImageFormat.JPEG ? new JpegEncoder(jpegQuality) : null;
+        this.namer = namer;
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.pool = new FrameBufferPool(capacity + threads + 1);
+        this.workers = Executors.newFixedThreadPool(threads, Util.namedDaemonThreads("toupcam-writer"));
+        if (!directory.exists()) directory.mkdirs();
+        for (int i = 0; i < threads; i++) workers.execute(this::work);
+    }
+
+    /**
+     * Reports encode and write times, and dropped frames, to {@code metrics}.
+     */
+    public FrameWriter setMetrics(CameraMetrics metrics) {
+        metrics.addDropSource(dropSource);
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Runs on the SDK thread, only copies and enqueues the frame.
+     */
+    @Override
+    public void onReceiveFrame(FrameView frame) {
+        if (running) submit(Frame.copyOf(frame, pool));
+    }
+
+    /**
+     * Enqueues a frame, ownership passes to the writer.
+     *
+     * @return false if the frame was dropped.
+     */
+    public boolean submit(Frame frame) {
+        // sequence is taken under the queue's order, so that names follow arrival order.
+        synchronized (queue) {
+            Task task = new Task(sequence.get(), frame);
+            boolean accepted = queue.offer(task);
+            if (!accepted && policy == OverflowPolicy.DROP_OLDEST) {
+                Task oldest = queue.poll();
+                if (oldest != null) discard(oldest);
+                accepted = queue.offer(task);
+            } else if (!accepted && policy == OverflowPolicy.BLOCK) {
+                try {
+                    accepted = queue.offer(task, 1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (!accepted) {
+                dropped.incrementAndGet();
+                frame.release();
+                return false;
+            }
+            sequence.incrementAndGet();
+            return true;
+        }
+    }
+
+    private void work() {
+        while (running || !queue.isEmpty()) {
+            Task task;
+            try {
+                task = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == null) continue;
+            try {
+                task.file = new File(directory, namer.fileName(task.sequence, task.frame.getHeader(),
+                        task.frame.isSnapshot()) + "." + format.getExtension());
+                long start = System.nanoTime();
+                writtenBytes.addAndGet(write(task.frame, new File(task.file.getPath() + TEMP_SUFFIX)));
+                CameraMetrics current = metrics;
+                if (current != null) current.recordEncode(System.nanoTime() - start);
+                task.ok = true;
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+                System.out.println("Exception thrown while writing frame " + task.sequence + " : " + e);
+                deleteTemp(task);
+            } finally {
+                task.frame.release();
+            }
+            commit(task);
+        }
+    }
+
+    private long write(Frame frame, File target) throws IOException {
+        FrameView view = frame.view();
+        if (format == ImageFormat.RAW_BGR) {
+            try (OutputStream out = new FileOutputStream(target)) {
+                out.write(frame.getData(), 0, frame.getLength());
+            }
+            return frame.getLength();
+        }
+
+        if (format == ImageFormat.PNG) {
+            ImageIO.write(view.toBufferedImage(), "png", target);
+            return target.length();
+        }
+
+        // encoded on this worker, straight from the frame's bytes.
+        try (OutputStream out = new FileOutputStream(target)) {
+            return jpegEncoder.encode(frame, out);
+        }
+    }
+
+    /**
+     * Renames finished files to their final name in sequence order.
+     */
+    private void commit(Task task) {
+        synchronized (finished) {
+            finished.add(task);
+            while (!finished.isEmpty() && finished.peek().sequence == nextToCommit) {
+                Task next = finished.poll();
+                nextToCommit++;
+                if (!next.ok) {
+                    deleteTemp(next);
+                    continue;
+                }
+                try {
+                    Files.move(new File(next.file.getPath() + TEMP_SUFFIX).toPath(), next.file.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    written.incrementAndGet();
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                    System.out.println("Exception thrown while committing " + next.file + " : " + e);
+                }
+            }
+        }
+    }
+
+    private void deleteTemp(Task task) {
+        if (task.file == null) return;
+        File temp = new File(task.file.getPath() + TEMP_SUFFIX);
+        if (temp.exists() && !temp.delete()) System.out.println("Could not delete " + temp);
+    }
+
+    private void discard(Task task) {
+        dropped.incrementAndGet();
+        task.frame.release();
+        task.ok = false;
+        commit(task);
+    }
+
+    /**
+     * Stops accepting frames and waits for the backlog to be written.
+     */
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        close();
+        return workers.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Stops accepting frames, the workers write the backlog and exit
+     * without the caller waiting for them.
+     */
+    public void close() {
+        running = false;
+        workers.shutdown();
+        CameraMetrics current = metrics;
+        if (current != null) current.removeDropSource(dropSource);
+    }
+
+    public boolean isClosed() {
+        return !running;
+    }
+
+    /**
+     * @return the encoder of a JPEG writer, with its frames per core second, null for other formats.
+     */
+    public JpegEncoder getJpegEncoder() {
+        return jpegEncoder;
+    }
+
+    public long getBacklog() {
+        return queue.size();
+    }
+
+    public long getAcceptedFrames() {
+        return sequence.get();
+    }
+
+    public long getWrittenFrames() {
+        return written.get();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+
+    public long getFailedFrames() {
+        return failed.get();
+    }
+
+    /**
+     * @return sustained frames written per second since the writer was created.
+     */
+    public double getFramesPerSecond() {
+        return written.get() / elapsedSeconds();
+    }
+
+    public double getMegabytesPerSecond() {
+        return writtenBytes.get() / (1024.0 * 1024.0) / elapsedSeconds();
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameWriter [format=" + format + ", directory=" + directory + ", written=" + written
+                + ", backlog=" + getBacklog() + ", dropped=" + dropped + ", failed=" + failed
+                + ", fps=" + String.format("%.1f", getFramesPerSecond())
+                + ", MB/s=" + String.format("%.1f", getMegabytesPerSecond()) + "]";
+    }
+
+}
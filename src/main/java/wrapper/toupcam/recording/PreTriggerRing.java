@@ -0,0 +1,323 @@
+package wrapper.toupcam.recording;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.callbacks.ImageStreamCallback;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.util.Util;
+
+/**
+ * Keeps the last N frames, or the last few seconds of frames, in an off-heap
+ * ring so that the frames from just before an event can be saved.
+ * <p>
+ * The ring is one direct buffer allocated on the first frame, split into
+ * frame sized slots within the memory budget. Recording a frame is a single
+ * bulk copy into the next slot, no heap allocation on the frame path.
+ * <p>
+ * {@link #freeze(int, ImageStreamCallback)} seals the ring, collects the next
+ * M frames and streams all of them to a sink on a separate thread. The M
+ * frames go to slots reserved for them at the end of the ring, within the
+ * same budget. Capture carries on meanwhile; the ring simply doesn't record
+ * until the dump is done.
+ *
+ * @author arpit
+ */
+public class PreTriggerRing implements FrameViewCallback {
+
+    private static final long POST_EVENT_TIMEOUT_SECONDS = 10;
+
+    private final int maxFrames;
+    private final int maxPostEventFrames;
+    private final long budgetBytes;
+    private final long windowNanos;
+
+    private ByteBuffer memory;
+    private ByteBuffer[] slots;
+    private ImageHeader[] headers;
+    private boolean[] snapshots;
+    private long[] arrivals;
+    private int slotSize = 0;
+    private int capacity = 0;
+    // slots after the history, for the frames collected after a freeze.
+    private int postEventSlots = 0;
+    private int next = 0;
+    private int count = 0;
+
+    // guards the ring between the SDK thread and freeze.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition postEventArrived = lock.newCondition();
+    private final ExecutorService dumper = Executors.newSingleThreadExecutor(Util.namedDaemonThreads("toupcam-pretrigger"));
+    private Dump dump = null;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+
+    private class Dump {
+        final int first;
+        final int frames;
+        final long frozenAt;
+        final int postEventFrames;
+        final ImageStreamCallback sink;
+        // post-event frames copied into their slots so far, guarded by the lock.
+        int postEventTaken = 0;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Dump(int first, int frames, long frozenAt, int postEventFrames, ImageStreamCallback sink) {
+            this.first = first;
+            this.frames = frames;
+            this.frozenAt = frozenAt;
+            this.postEventFrames = postEventFrames;
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * @param maxFrames          most frames kept.
+     * @param maxPostEventFrames slots reserved for the frames collected after a freeze.
+     * @param budgetBytes        upper bound of the off-heap memory used by the ring, history
+     *                           slots come first, the post-event slots get what is left.
+     *                           At most 2 GB, the largest direct buffer.
+     * @param window             only frames newer than this, relative to the freeze, are dumped. 0 for no limit.
+     */
+    public PreTriggerRing(int maxFrames, int maxPostEventFrames, long budgetBytes, long window, TimeUnit unit) {
+        if (maxFrames < 1) throw new IllegalArgumentException("maxFrames must be at least 1");
+        if (maxPostEventFrames < 0) throw new IllegalArgumentException("maxPostEventFrames must not be negative");
+        if (budgetBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("budget of " + budgetBytes + " bytes is over the 2 GB of a direct buffer");
+        this.maxFrames = maxFrames;
+        this.maxPostEventFrames = maxPostEventFrames;
+        this.budgetBytes = budgetBytes;
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * Reserves as many post-event slots as history slots.
+     */
+    public PreTriggerRing(int maxFrames, long budgetBytes, long window, TimeUnit unit) {
+        this(maxFrames, maxFrames, budgetBytes, window, unit);
+    }
+
+    public PreTriggerRing(int maxFrames, long budgetBytes) {
+        this(maxFrames, budgetBytes, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs on the SDK thread.
+     */
+    @Override
+    public void onReceiveFrame(FrameView frame) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (dump != null) {
+                collectPostEvent(frame);
+                return;
+            }
+            int size = frame.getSize();
+            if (size > slotSize) allocate(size);
+            if (capacity == 0) {
+                missed.incrementAndGet();
+                return;
+            }
+
+            ByteBuffer slot = slots[next];
+            slot.clear();
+            frame.copyTo(slot);
+            slot.flip();
+            headers[next].copyFrom(frame.getHeader());
+            snapshots[next] = frame.isSnapshot();
+            arrivals[next] = now;
+            next = (next + 1) % capacity;
+            if (count < capacity) count++;
+            recorded.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void collectPostEvent(FrameView frame) {
+        if (dump.postEventTaken >= dump.postEventFrames || frame.getSize() > slotSize) {
+            missed.incrementAndGet();
+            return;
+        }
+        int index = capacity + dump.postEventTaken;
+        ByteBuffer slot = slots[index];
+        slot.clear();
+        frame.copyTo(slot);
+        slot.flip();
+        headers[index].copyFrom(frame.getHeader());
+        snapshots[index] = frame.isSnapshot();
+        dump.postEventTaken++;
+        postEventArrived.signal();
+    }
+
+    /**
+     * Sizes the ring for frames of {@code frameSize} bytes, dropping what
+     * was recorded at the previous size.
+     */
+    private void allocate(int frameSize) {
+        slotSize = frameSize;
+        int total = (int) Math.min((long) maxFrames + maxPostEventFrames, budgetBytes / frameSize);
+        capacity = Math.min(maxFrames, total);
+        postEventSlots = total - capacity;
+        next = count = 0;
+        memory = null;
+        if (capacity == 0) return;
+
+        memory = ByteBuffer.allocateDirect(total * frameSize);
+        slots = new ByteBuffer[total];
+        headers = new ImageHeader[total];
+        snapshots = new boolean[total];
+        arrivals = new long[capacity];
+        for (int i = 0; i < total; i++) {
+            memory.limit((i + 1) * frameSize).position(i * frameSize);
+            slots[i] = memory.slice();
+            headers[i] = new ImageHeader();
+        }
+    }
+
+    /**
+     * Seals the frames recorded so far, collects the next {@code postEventFrames}
+     * and hands all of them, oldest first, to {@code sink} on the dump thread.
+     * {@link FrameWriter} makes a sink that writes them to disk.
+     *
+     * @return completes with the number of frames handed to the sink.
+     * @throws IllegalStateException    if a dump is already in progress.
+     * @throws IllegalArgumentException if {@code postEventFrames} don't fit the
+     *                                  post-event slots, see {@link #getPostEventSlots()}.
+     */
+    public CompletableFuture<Integer> freeze(int postEventFrames, ImageStreamCallback sink) {
+        Dump current;
+        lock.lock();
+        try {
+            if (dump != null) throw new IllegalStateException("pre-trigger ring is already being dumped");
+            if (postEventFrames < 0 || postEventFrames > postEventSlots)
+                throw new IllegalArgumentException("only " + postEventSlots + " post-event frames fit : "
+                        + postEventFrames);
+            long frozenAt = System.nanoTime();
+            int frames = count;
+            int first = capacity == 0 ? 0 : (next - count + capacity) % capacity;
+            // skip frames older than the window.
+            while (windowNanos > 0 && frames > 0 && frozenAt - arrivals[first] > windowNanos) {
+                first = (first + 1) % capacity;
+                frames--;
+            }
+            current = dump = new Dump(first, frames, frozenAt, postEventFrames, sink);
+        } finally {
+            lock.unlock();
+        }
+        dumper.execute(() -> runDump(current));
+        return current.result;
+    }
+
+    private void runDump(Dump current) {
+        int delivered = 0;
+        Throwable failure = null;
+        try {
+            FrameView view = new FrameView();
+            for (int i = 0; i < current.frames; i++) {
+                int slot = (current.first + i) % capacity;
+                current.sink.onReceiveFrame(view.wrap(slots[slot].duplicate(), headers[slot], snapshots[slot]));
+                view.invalidate();
+                delivered++;
+            }
+            for (int i = 0; i < current.postEventFrames; i++) {
+                // gives up on the remaining frames if the stream stopped.
+                if (!awaitPostEvent(current, i)) break;
+                // written once per dump, before the wait above returned.
+                int slot = capacity + i;
+                current.sink.onReceiveFrame(view.wrap(slots[slot].duplicate(), headers[slot], snapshots[slot]));
+                view.invalidate();
+                delivered++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            lock.lock();
+            try {
+                next = count = 0;
+                dump = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+        // completed once the ring records again, so callers may freeze right away.
+        if (failure == null) current.result.complete(delivered);
+        else current.result.completeExceptionally(failure);
+    }
+
+    /**
+     * @return false if post-event frame {@code index} didn't arrive in time.
+     */
+    private boolean awaitPostEvent(Dump current, int index) throws InterruptedException {
+        long remaining = TimeUnit.SECONDS.toNanos(POST_EVENT_TIMEOUT_SECONDS);
+        lock.lock();
+        try {
+            while (current.postEventTaken <= index) {
+                if (remaining <= 0) return false;
+                remaining = postEventArrived.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isDumping() {
+        lock.lock();
+        try {
+            return dump != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return most frames a freeze may collect after the event, 0 before the first frame.
+     */
+    public int getPostEventSlots() {
+        return postEventSlots;
+    }
+
+    public int getBufferedFrames() {
+        return count;
+    }
+
+    public long getMemoryBytes() {
+        return memory == null ? 0 : memory.capacity();
+    }
+
+    public long getRecordedFrames() {
+        return recorded.get();
+    }
+
+    /**
+     * @return frames neither recorded nor dumped, while the ring was frozen or did not fit the budget.
+     */
+    public long getMissedFrames() {
+        return missed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PreTriggerRing [capacity=" + capacity + ", postEventSlots=" + postEventSlots + ", buffered=" + count + ", memory=" + getMemoryBytes()
+                + ", recorded=" + recorded + ", missed=" + missed + "]";
+    }
+
+}
@@ -0,0 +1,176 @@
+package wrapper.toupcam.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.ImageHeader;
+
+/**
+ * One video file of a {@link SegmentRecorder}.
+ * <p>
+ * Everything is appended through a direct write buffer shared by the
+ * segments of a recorder, which goes to the {@link FileChannel} in large
+ * sequential writes. Header fields only known at the end (frame count,
+ * frame rate, sizes) are patched in place when the segment is finished.
+ *
+ * @author arpit
+ */
+abstract class Segment {
+
+    final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    // file offset of the first byte in the buffer.
+    private long flushed = 0;
+
+    final int width, height, bitcount;
+    int frames = 0;
+    long firstArrival = 0, lastArrival = 0;
+
+    // puts bytes written to it into the write buffer.
+    private final OutputStream stream = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+            ensure(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            put(bytes, offset, length);
+        }
+    };
+
+    Segment(File file, ImageHeader header, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = buffer;
+        buffer.clear();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.width = header.getWidth();
+        this.height = Math.abs(header.getHeight());
+        this.bitcount = header.getBitcount() > 0 ? header.getBitcount() : 24;
+    }
+
+    /**
+     * @return false when frames of this shape need a segment of their own.
+     */
+    boolean accepts(ImageHeader header) {
+        int frameBitcount = header.getBitcount() > 0 ? header.getBitcount() : 24;
+        return header.getWidth() == width && Math.abs(header.getHeight()) == height && frameBitcount == bitcount;
+    }
+
+    /**
+     * @return true when the segment can't take another frame, eg. its index is full.
+     */
+    boolean isFull() {
+        return false;
+    }
+
+    void write(Frame frame) throws IOException {
+        if (frames == 0) firstArrival = frame.getArrivalNanos();
+        lastArrival = frame.getArrivalNanos();
+        writeFrame(frame);
+        frames++;
+    }
+
+    abstract void writeFrame(Frame frame) throws IOException;
+
+    /**
+     * Writes what only the end of the segment knows, called once before close.
+     */
+    abstract void finish() throws IOException;
+
+    /**
+     * @return frames per second from the arrival times of the frames, {@code fallback} under two frames.
+     */
+    double measuredFps(double fallback) {
+        if (frames < 2 || lastArrival <= firstArrival) return fallback;
+        return (frames - 1) * 1e9 / (lastArrival - firstArrival);
+    }
+
+    void close() throws IOException {
+        try {
+            finish();
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return bytes written so far, including those still in the buffer.
+     */
+    long size() {
+        return flushed + buffer.position();
+    }
+
+    OutputStream stream() {
+        return stream;
+    }
+
+    void ensure(int length) throws IOException {
+        if (buffer.remaining() < length) flush();
+    }
+
+    void putInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    void putShort(int value) throws IOException {
+        ensure(2);
+        buffer.putShort((short) value);
+    }
+
+    void putAscii(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        put(bytes, 0, bytes.length);
+    }
+
+    void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) flush();
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Overwrites bytes written earlier, in the buffer if they are still
+     * there, on the file otherwise.
+     */
+    void patch(long offset, byte[] bytes) throws IOException {
+        // the part already on the file, a patch may straddle the last flush.
+        int onFile = (int) Math.max(0, Math.min(bytes.length, flushed - offset));
+        ByteBuffer patch = ByteBuffer.wrap(bytes, 0, onFile);
+        while (patch.hasRemaining()) channel.write(patch, offset + patch.position());
+        if (onFile < bytes.length) {
+            int position = buffer.position();
+            buffer.position((int) (offset + onFile - flushed));
+            buffer.put(bytes, onFile, bytes.length - onFile);
+            buffer.position(position);
+        }
+    }
+
+    void patchInt(long offset, int value) throws IOException {
+        patch(offset, ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array());
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) flushed += channel.write(buffer);
+        buffer.clear();
+    }
+
+}
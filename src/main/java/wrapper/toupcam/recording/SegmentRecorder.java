@@ -0,0 +1,298 @@
+package wrapper.toupcam.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.VideoFormat;
+import wrapper.toupcam.metrics.CameraMetrics;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.processing.JpegEncoder;
+import wrapper.toupcam.util.FrameBufferPool;
+
+/**
+ * Records a stream into a few large video files instead of a file per
+ * frame: MJPEG AVI or raw Y4M, one file per segment.
+ * <p>
+ * Frames are copied off the SDK thread into a bounded queue, a single
+ * writer thread encodes them and appends them, in arrival order, to the
+ * current segment through a large write buffer. A segment rolls over to
+ * the next file once it reaches the size or duration limit, when its
+ * index is full or when the frame format changes. Segments are written
+ * under a temporary name and renamed once finished, so a reader of the
+ * directory only sees complete files.
+ *
+ * @author arpit
+ */
+public class SegmentRecorder implements FrameViewCallback {
+
+    public static final long DEFAULT_SEGMENT_BYTES = AviSegment.MAX_SIZE;
+    public static final long DEFAULT_SEGMENT_SECONDS = 600;
+    public static final int DEFAULT_CAPACITY = 32;
+    public static final int WRITE_BUFFER_SIZE = 4 << 20;
+    // frame rate in the headers of a segment with less than two frames.
+    public static final double NOMINAL_FPS = 30;
+
+    private static final String TEMP_SUFFIX = ".part";
+
+    private final File directory;
+    private final String prefix;
+    private final VideoFormat format;
+    private final JpegEncoder jpegEncoder;
+    private final long maxSegmentBytes;
+    private final long maxSegmentNanos;
+    private final int indexFrames;
+    private final ArrayBlockingQueue<Frame> queue;
+    private final FrameBufferPool pool;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final Thread writer;
+
+    // only touched by the writer thread.
+    private Segment segment = null;
+    private int segmentNumber = 0;
+
+    private final List<File> segments = new CopyOnWriteArrayList<>();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+
+    private final long startNanos = System.nanoTime();
+    private volatile boolean running = true;
+    private volatile CameraMetrics metrics = null;
+    // added to the metrics by setMetrics, removed again on close.
+    private final LongSupplier dropSource = this::getDroppedFrames;
+
+    public SegmentRecorder(File directory, VideoFormat format) {
+        this(directory, "video", format, 0.9f, DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENT_SECONDS, TimeUnit.SECONDS,
+                DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param prefix          segments are named {@code prefix000000.avi}, {@code prefix000001.avi}, ...
+     * @param jpegQuality     0..1, only used for {@link VideoFormat#MJPEG_AVI}.
+     * @param maxSegmentBytes a segment rolls over once it is this large, 0 for
+     *                        no limit; AVI segments are kept under 1 GB whatever the limit.
+     * @param maxDuration     a segment rolls over once its frames span this long, 0 for no limit.
+     * @param capacity        frames that may wait to be written, frames
+     *                        arriving while the queue is full are dropped.
+     */
+    public SegmentRecorder(File directory, String prefix, VideoFormat format, float jpegQuality,
+                           long maxSegmentBytes, long maxDuration, TimeUnit unit, int capacity) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.format = format;
+        this.jpegEncoder = format == VideoFormat.MJPEG_AVI ? new JpegEncoder(jpegQuality, 1) : null;
+        this.maxSegmentBytes = format != VideoFormat.MJPEG_AVI ? maxSegmentBytes
+                : maxSegmentBytes > 0 ? Math.min(maxSegmentBytes, AviSegment.MAX_SIZE) : AviSegment.MAX_SIZE;
+        this.maxSegmentNanos = unit.toNanos(maxDuration);
+        // enough entries for a segment at 1000 fps, 16 bytes each.
+        long seconds = maxSegmentNanos > 0 ? TimeUnit.NANOSECONDS.toSeconds(maxSegmentNanos) : DEFAULT_SEGMENT_SECONDS;
+        this.indexFrames = (int) Math.min(1 << 20, Math.max(1024, seconds * 1000));
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        // the queue, the frame being written and the one being copied in.
+        this.pool = new FrameBufferPool(capacity + 2);
+        if (!directory.exists()) directory.mkdirs();
+        this.writer = new Thread(this::work, "toupcam-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Reports encode and write times, and dropped frames, to {@code metrics}.
+     */
+    public SegmentRecorder setMetrics(CameraMetrics metrics) {
+        metrics.addDropSource(dropSource);
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Runs on the SDK thread, only copies and enqueues the frame.
+     */
+    @Override
+    public void onReceiveFrame(FrameView frame) {
+        if (running) submit(Frame.copyOf(frame, pool));
+    }
+
+    /**
+     * Enqueues a frame, ownership passes to the recorder.
+     *
+     * @return false if the frame was dropped, or the recorder is closed.
+     */
+    public boolean submit(Frame frame) {
+        if (frame.getArrivalNanos() == 0) frame.getHeader().setTimestamp(System.nanoTime());
+        // close() flips running under the same lock, the writer drains whatever got in before.
+        synchronized (queue) {
+            if (running && queue.offer(frame)) {
+                accepted.incrementAndGet();
+                return true;
+            }
+        }
+        dropped.incrementAndGet();
+        frame.release();
+        return false;
+    }
+
+    private void work() {
+        while (running || !queue.isEmpty()) {
+            Frame frame;
+            try {
+                frame = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) continue;
+            try {
+                long start = System.nanoTime();
+                write(frame);
+                CameraMetrics current = metrics;
+                if (current != null) current.recordEncode(System.nanoTime() - start);
+                written.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+                System.out.println("Exception thrown while recording frame " + frame.getSequence() + " : " + e);
+            } finally {
+                frame.release();
+            }
+        }
+        closeSegment();
+    }
+
+    private void write(Frame frame) throws IOException {
+        if (segment != null && isFinished(segment, frame)) closeSegment();
+        if (segment == null) {
+            segment = openSegment(frame);
+            writtenBytes.addAndGet(segment.size());
+        }
+        long before = segment.size();
+        segment.write(frame);
+        writtenBytes.addAndGet(segment.size() - before);
+    }
+
+    private boolean isFinished(Segment current, Frame frame) {
+        return (maxSegmentBytes > 0 && current.size() >= maxSegmentBytes) || current.isFull()
+                || !current.accepts(frame.getHeader())
+                || (maxSegmentNanos > 0 && frame.getArrivalNanos() - current.firstArrival >= maxSegmentNanos);
+    }
+
+    private Segment openSegment(Frame frame) throws IOException {
+        File file = new File(directory, String.format("%s%06d.%s%s", prefix, segmentNumber++, format.getExtension(),
+                TEMP_SUFFIX));
+        if (format == VideoFormat.MJPEG_AVI)
+            return new AviSegment(file, frame.getHeader(), writeBuffer, jpegEncoder, indexFrames, NOMINAL_FPS);
+        return new Y4mSegment(file, frame.getHeader(), writeBuffer, NOMINAL_FPS);
+    }
+
+    private void closeSegment() {
+        if (segment == null) return;
+        Segment current = segment;
+        segment = null;
+        try {
+            long before = current.size();
+            current.close();
+            writtenBytes.addAndGet(current.size() - before);
+            String name = current.file.getName();
+            File finished = new File(directory, name.substring(0, name.length() - TEMP_SUFFIX.length()));
+            Files.move(current.file.toPath(), finished.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            segments.add(finished);
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            System.out.println("Exception thrown while finishing " + current.file + " : " + e);
+        }
+    }
+
+    /**
+     * Stops accepting frames, writes the backlog and finishes the last segment.
+     *
+     * @return false if the backlog wasn't written within the timeout.
+     */
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (queue) {
+            running = false;
+        }
+        CameraMetrics current = metrics;
+        if (current != null) current.removeDropSource(dropSource);
+        // join(0) would wait forever.
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (long remaining; writer.isAlive() && (remaining = deadline - System.nanoTime()) > 0; )
+            TimeUnit.NANOSECONDS.timedJoin(writer, remaining);
+        return !writer.isAlive();
+    }
+
+    /**
+     * @return finished segments, oldest first.
+     */
+    public List<File> getSegments() {
+        return Collections.unmodifiableList(segments);
+    }
+
+    public VideoFormat getFormat() {
+        return format;
+    }
+
+    public JpegEncoder getJpegEncoder() {
+        return jpegEncoder;
+    }
+
+    public long getBacklog() {
+        return queue.size();
+    }
+
+    public long getAcceptedFrames() {
+        return accepted.get();
+    }
+
+    public long getWrittenFrames() {
+        return written.get();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+
+    public long getFailedFrames() {
+        return failed.get();
+    }
+
+    /**
+     * @return sustained frames written per second since the recorder was created.
+     */
+    public double getFramesPerSecond() {
+        return written.get() / elapsedSeconds();
+    }
+
+    public double getMegabytesPerSecond() {
+        return writtenBytes.get() / (1024.0 * 1024.0) / elapsedSeconds();
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentRecorder [format=" + format + ", directory=" + directory + ", segments=" + segments.size()
+                + ", written=" + written + ", backlog=" + getBacklog() + ", dropped=" + dropped + ", failed=" + failed
+                + ", fps=" + String.format("%.1f", getFramesPerSecond())
+                + ", MB/s=" + String.format("%.1f", getMegabytesPerSecond()) + "]";
+    }
+
+}
@@ -0,0 +1,74 @@
+package wrapper.toupcam.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.util.FrameConverter;
+
+/**
+ * YUV4MPEG2 segment of raw frames, 8 bit frames as {@code Cmono}, BGR and
+ * BGRX frames converted to BT.601 {@code C444} planes, so nothing is lost
+ * to subsampling.
+ * <p>
+ * Every frame takes the same number of bytes, frame n starts at
+ * {@code header + n * (6 + frame size)}, so the file needs no index. The
+ * frame rate is written as a fixed width field and patched with the one
+ * measured from the arrival times when the segment is finished.
+ *
+ * @author arpit
+ */
+class Y4mSegment extends Segment {
+
+    private static final byte[] FRAME = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int RATE_DIGITS = 10;
+    private static final long MAX_RATE = 9999999999L;
+
+    private final double nominalFps;
+    private final long rateOffset;
+    // planes of one frame, converted before they are written.
+    private final byte[] planes;
+
+    Y4mSegment(File file, ImageHeader header, ByteBuffer buffer, double nominalFps) throws IOException {
+        super(file, header, buffer);
+        this.nominalFps = nominalFps;
+        this.planes = new byte[width * height * (bitcount == 8 ? 1 : 3)];
+        String prefix = "YUV4MPEG2 W" + width + " H" + height + " F";
+        rateOffset = prefix.length();
+        putAscii(prefix + rate(nominalFps) + ":1000 Ip A1:1 " + (bitcount == 8 ? "Cmono" : "C444") + "\n");
+    }
+
+    private static String rate(double fps) {
+        return String.format("%0" + RATE_DIGITS + "d", Math.min(MAX_RATE, Math.round(fps * 1000)));
+    }
+
+    @Override
+    void writeFrame(Frame frame) throws IOException {
+        byte[] data = frame.getData();
+        int stride = FrameConverter.stride(width, bitcount);
+        if (bitcount == 8) {
+            for (int row = 0; row < height; row++) System.arraycopy(data, row * stride, planes, row * width, width);
+        } else {
+            int pixelBytes = bitcount / 8, pixels = width * height;
+            for (int row = 0, out = 0; row < height; row++) {
+                for (int in = row * stride, end = in + width * pixelBytes; in < end; in += pixelBytes, out++) {
+                    int blue = data[in] & 0xff, green = data[in + 1] & 0xff, red = data[in + 2] & 0xff;
+                    planes[out] = (byte) (((66 * red + 129 * green + 25 * blue + 128) >> 8) + 16);
+                    planes[pixels + out] = (byte) (((-38 * red - 74 * green + 112 * blue + 128) >> 8) + 128);
+                    planes[2 * pixels + out] = (byte) (((112 * red - 94 * green - 18 * blue + 128) >> 8) + 128);
+                }
+            }
+        }
+        put(FRAME, 0, FRAME.length);
+        put(planes, 0, planes.length);
+    }
+
+    @Override
+    void finish() throws IOException {
+        patch(rateOffset, rate(measuredFps(nominalFps)).getBytes(StandardCharsets.US_ASCII));
+    }
+
+}
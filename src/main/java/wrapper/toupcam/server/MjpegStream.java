@@ -0,0 +1,241 @@
+package wrapper.toupcam.server;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.processing.JpegEncoder;
+import wrapper.toupcam.util.FrameBufferPool;
+import wrapper.toupcam.util.Util;
+
+/**
+ * Live JPEG stream of one camera, frames are encoded once and shared by
+ * every connected client.
+ * <p>
+ * The SDK thread only copies the frame into a single pending slot, the
+ * encoder thread always picks the newest one, so frames are skipped
+ * rather than queued when encoding falls behind. Nothing is copied or
+ * encoded while no client is connected.
+ *
+ * @author arpit
+ */
+public class MjpegStream implements FrameViewCallback {
+
+    /**
+     * An encoded frame, immutable and shared by all clients.
+     */
+    public static class Jpeg {
+        final byte[] data;
+        final long sequence;
+        final long captureNanos;
+
+        Jpeg(byte[] data, long sequence, long captureNanos) {
+            this.data = data;
+            this.sequence = sequence;
+            this.captureNanos = captureNanos;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return System.nanoTime() when the frame reached the wrapper, or
+         * the stream for frames that weren't stamped.
+         */
+        public long getCaptureNanos() {
+            return captureNanos;
+        }
+    }
+
+    private static class Pending {
+        final Frame frame;
+        final long captureNanos;
+
+        Pending(Frame frame, long captureNanos) {
+            this.frame = frame;
+            this.captureNanos = captureNanos;
+        }
+    }
+
+    private final String name;
+    private final JpegEncoder jpegEncoder;
+    private final FrameBufferPool pool = new FrameBufferPool(3);
+    private final AtomicReference<Pending> pending = new AtomicReference<>();
+    private final AtomicBoolean encoding = new AtomicBoolean();
+    private final ExecutorService encoder;
+    private final Object published = new Object();
+
+    private volatile Jpeg latest = null;
+    private volatile boolean open = true;
+    private final AtomicInteger clients = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    public MjpegStream(String name, float jpegQuality) {
+        this.name = name;
+        this.jpegEncoder = new JpegEncoder(jpegQuality, 1);
+        this.encoder = Executors.newSingleThreadExecutor(Util.namedDaemonThreads("toupcam-mjpeg-" + name));
+    }
+
+    @Override
+    public void onReceiveFrame(FrameView frame) {
+        if (!open || clients.get() == 0) return;
+        long capture = frame.getArrivalNanos() == 0 ? System.nanoTime() : frame.getArrivalNanos();
+        Pending replaced = pending.getAndSet(new Pending(Frame.copyOf(frame, pool), capture));
+        if (replaced != null) {
+            replaced.frame.release();
+            skipped.incrementAndGet();
+        }
+        // close() may have taken the pending frame before this one was put there.
+        if (!open) {
+            discardPending();
+            return;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (!encoding.compareAndSet(false, true)) return;
+        try {
+            encoder.execute(this::encodePending);
+        } catch (RejectedExecutionException e) {
+            // closed in the meantime.
+            encoding.set(false);
+            discardPending();
+        }
+    }
+
+    private void discardPending() {
+        Pending left = pending.getAndSet(null);
+        if (left != null) left.frame.release();
+    }
+
+    private void encodePending() {
+        try {
+            Pending next;
+            while ((next = pending.getAndSet(null)) != null) {
+                try {
+                    publish(new Jpeg(jpegEncoder.encode(next.frame), sequence.incrementAndGet(), next.captureNanos));
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Exception thrown while encoding frame of " + name + " : " + e);
+                } finally {
+                    next.frame.release();
+                }
+            }
+        } finally {
+            encoding.set(false);
+        }
+        // a frame may have arrived between the last poll and clearing the flag.
+        if (pending.get() != null) schedule();
+    }
+
+    private void publish(Jpeg jpeg) {
+        synchronized (published) {
+            latest = jpeg;
+            published.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for a frame newer than {@code lastSequence}, clients skip the
+     * frames encoded while they were still writing an older one.
+     *
+     * @return null on timeout or once the stream is closed.
+     */
+    public Jpeg awaitNext(long lastSequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (published) {
+            while (open && (latest == null || latest.sequence <= lastSequence)) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return null;
+                TimeUnit.NANOSECONDS.timedWait(published, remaining);
+            }
+            return open ? latest : null;
+        }
+    }
+
+    void clientConnected() {
+        clients.incrementAndGet();
+    }
+
+    void clientDisconnected() {
+        clients.decrementAndGet();
+    }
+
+    void frameSent(long skippedFrames) {
+        sent.incrementAndGet();
+        if (skippedFrames > 0) skipped.addAndGet(skippedFrames);
+    }
+
+    public void close() {
+        open = false;
+        synchronized (published) {
+            published.notifyAll();
+        }
+        encoder.shutdown();
+        discardPending();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @return frames copied off the SDK thread and not released yet.
+     */
+    int getOutstandingFrames() {
+        return pool.getOutstandingLeases();
+    }
+
+    public int getClients() {
+        return clients.get();
+    }
+
+    public long getEncodedFrames() {
+        return sequence.get();
+    }
+
+    public JpegEncoder getJpegEncoder() {
+        return jpegEncoder;
+    }
+
+    /**
+     * @return frames sent, summed over all clients.
+     */
+    public long getSentFrames() {
+        return sent.get();
+    }
+
+    /**
+     * @return frames never encoded, plus frames skipped by slow clients.
+     */
+    public long getSkippedFrames() {
+        return skipped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "MjpegStream [name=" + name + ", clients=" + getClients() + ", encoded=" + getEncodedFrames()
+                + ", sent=" + getSentFrames() + ", skipped=" + getSkippedFrames() + "]";
+    }
+
+}
@@ -0,0 +1,130 @@
+package wrapper.toupcam.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import wrapper.toupcam.util.Util;
+
+/**
+ * Serves every added camera as {@code multipart/x-mixed-replace} MJPEG at
+ * {@code http://<host>:<port>/stream/<camera>}, viewable in a browser.
+ * <p>
+ * Each client gets its own thread, which writes the newest encoded frame
+ * whenever it is done with the previous one, so a slow client only
+ * affects itself. Every part carries {@code X-Frame-Sequence} and
+ * {@code X-Capture-Nanos} headers for measuring skips and latency.
+ *
+ * @author arpit
+ */
+public class MjpegStreamServer {
+
+    public static final String BOUNDARY = "toupcamframe";
+    public static final String CONTEXT = "/stream/";
+
+    private static final long CLIENT_WAIT_SECONDS = 5;
+
+    private final HttpServer server;
+    private final ExecutorService clientThreads;
+    private final float jpegQuality;
+    private final Map<String, MjpegStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * @param port 0 picks a free port, see {@link #getPort()}.
+     */
+    public MjpegStreamServer(int port) throws IOException {
+        this(new InetSocketAddress(port), 0.8f);
+    }
+
+    public MjpegStreamServer(InetSocketAddress address, float jpegQuality) throws IOException {
+        this.jpegQuality = jpegQuality;
+        this.server = HttpServer.create(address, 0);
+        this.clientThreads = Executors.newCachedThreadPool(Util.namedDaemonThreads("toupcam-mjpeg-client"));
+        server.setExecutor(clientThreads);
+        server.createContext(CONTEXT, this::handle);
+    }
+
+    /**
+     * @return the stream to register as the camera's frame callback or tap.
+     */
+    public MjpegStream addCamera(String name) {
+        return streams.computeIfAbsent(name, key -> new MjpegStream(key, jpegQuality));
+    }
+
+    public void removeCamera(String name) {
+        MjpegStream stream = streams.remove(name);
+        if (stream != null) stream.close();
+    }
+
+    public MjpegStreamServer start() {
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        streams.values().forEach(MjpegStream::close);
+        streams.clear();
+        server.stop(0);
+        clientThreads.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public MjpegStream getStream(String name) {
+        return streams.get(name);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        MjpegStream stream = streams.get(exchange.getRequestURI().getPath().substring(CONTEXT.length()));
+        if (stream == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "multipart/x-mixed-replace; boundary=" + BOUNDARY);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache, no-store");
+        exchange.sendResponseHeaders(200, 0);
+        stream.clientConnected();
+        try (OutputStream out = exchange.getResponseBody()) {
+            long last = 0;
+            while (stream.isOpen()) {
+                MjpegStream.Jpeg jpeg = stream.awaitNext(last, CLIENT_WAIT_SECONDS, TimeUnit.SECONDS);
+                if (jpeg == null) continue;
+                String part = "--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: " + jpeg.data.length
+                        + "\r\nX-Frame-Sequence: " + jpeg.sequence + "\r\nX-Capture-Nanos: " + jpeg.captureNanos
+                        + "\r\n\r\n";
+                out.write(part.getBytes(StandardCharsets.US_ASCII));
+                out.write(jpeg.data);
+                out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                stream.frameSent(last == 0 ? 0 : jpeg.sequence - last - 1);
+                last = jpeg.sequence;
+            }
+        } catch (IOException e) {
+            // client went away.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stream.clientDisconnected();
+            exchange.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MjpegStreamServer [port=" + getPort() + ", streams=" + streams.values() + "]";
+    }
+
+}
@@ -0,0 +1,306 @@
+package wrapper.toupcam.streaming;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.callbacks.ImageStreamCallback;
+import wrapper.toupcam.enumerations.OverflowPolicy;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.util.FrameBufferPool;
+import wrapper.toupcam.util.Util;
+
+/**
+ * Bounded ring buffer between the SDK's grab thread and the user's
+ * {@link ImageStreamCallback}, so a slow handler never stalls capture.
+ * <p>
+ * The SDK thread copies each frame into a pooled buffer and enqueues it,
+ * frames are then handed to the callback, in order and one at a time, on
+ * the consumer executor. What happens when the ring is full is decided
+ * by the {@link OverflowPolicy}.
+ * <p>
+ * A dispatcher made without an executor runs the callback on a thread of
+ * its own, which {@link #close()} shuts down.
+ *
+ * @author arpit
+ */
+public class FrameDispatcher implements FrameViewCallback {
+
+    public static final int DEFAULT_CAPACITY = 8;
+
+    private final Frame[] ring;
+    private int head = 0, tail = 0, count = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+
+    private final OverflowPolicy policy;
+    private final long timeoutNanos;
+    private volatile Executor executor;
+    // true when the executor was made by the dispatcher, and is shut down by close.
+    private final boolean ownsExecutor;
+    // guarded by the lock, set by close and cleared by start.
+    private boolean closed = false;
+    private final FrameBufferPool pool;
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile ImageStreamCallback target;
+
+    public FrameDispatcher() {
+        this(DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    public FrameDispatcher(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, 0, TimeUnit.MILLISECONDS, newExecutor(), true);
+    }
+
+    /**
+     * @param timeout  how long the SDK thread may block on a full ring,
+     *                 only used with {@link OverflowPolicy#BLOCK}.
+     * @param executor runs the user callback, frames are delivered serially
+     *                 even when the executor has more than one thread.
+     */
+    public FrameDispatcher(int capacity, OverflowPolicy policy, long timeout, TimeUnit unit, Executor executor) {
+        this(capacity, policy, timeout, unit, executor, false);
+    }
+
+    private FrameDispatcher(int capacity, OverflowPolicy policy, long timeout, TimeUnit unit, Executor executor,
+                            boolean ownsExecutor) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.ring = new Frame[capacity];
+        this.policy = policy;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        // the ring, the frame being delivered and the one being copied in.
+        this.pool = new FrameBufferPool(capacity + 2);
+    }
+
+    private static ExecutorService newExecutor() {
+        return Executors.newSingleThreadExecutor(Util.namedDaemonThreads("toupcam-dispatch"));
+    }
+
+    /**
+     * Starts delivering to {@code target}, also after {@link #close()}.
+     */
+    public FrameDispatcher start(ImageStreamCallback target) {
+        this.target = target;
+        lock.lock();
+        try {
+            if (closed && ownsExecutor) executor = newExecutor();
+            closed = false;
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Discards queued frames, a frame already handed to the callback
+     * still completes.
+     */
+    public void stop() {
+        lock.lock();
+        try {
+            while (count > 0) {
+                dropped.incrementAndGet();
+                removeHead().release();
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards queued frames and drops the ones offered until the next
+     * {@link #start}, then shuts down the dispatcher's own executor once
+     * the frame being delivered completes. An executor passed in is left
+     * to its owner.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        stop();
+        if (ownsExecutor) ((ExecutorService) executor).shutdown();
+    }
+
+    /**
+     * Runs on the SDK thread.
+     */
+    @Override
+    public void onReceiveFrame(FrameView frame) {
+        received.incrementAndGet();
+        // a full ring drops the newest frame anyway, don't copy it first.
+        if (policy == OverflowPolicy.DROP_NEWEST && getQueueDepth() == ring.length) {
+            dropped.incrementAndGet();
+            return;
+        }
+        offer(Frame.copyOf(frame, pool));
+    }
+
+    /**
+     * Enqueues a frame, ownership passes to the dispatcher.
+     *
+     * @return false if the frame was dropped.
+     */
+    public boolean offer(Frame frame) {
+        Frame evicted = null;
+        lock.lock();
+        try {
+            if (closed) {
+                dropped.incrementAndGet();
+                frame.release();
+                return false;
+            }
+            if (count == ring.length) {
+                switch (policy) {
+                    case DROP_NEWEST:
+                        dropped.incrementAndGet();
+                        frame.release();
+                        return false;
+                    case DROP_OLDEST:
+                        dropped.incrementAndGet();
+                        evicted = removeHead();
+                        break;
+                    case BLOCK:
+                        if (!awaitRoom()) {
+                            dropped.incrementAndGet();
+                            frame.release();
+                            return false;
+                        }
+                        break;
+                }
+            }
+            ring[tail] = frame;
+            tail = (tail + 1) % ring.length;
+            count++;
+        } finally {
+            lock.unlock();
+        }
+        if (evicted != null) evicted.release();
+        scheduleDrain();
+        return true;
+    }
+
+    private boolean awaitRoom() {
+        long nanos = timeoutNanos;
+        try {
+            while (count == ring.length) {
+                if (nanos <= 0) return false;
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Frame removeHead() {
+        Frame frame = ring[head];
+        ring[head] = null;
+        head = (head + 1) % ring.length;
+        count--;
+        return frame;
+    }
+
+    private Frame poll() {
+        lock.lock();
+        try {
+            if (count == 0) return null;
+            Frame frame = removeHead();
+            notFull.signal();
+            return frame;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // closed since the frame was queued.
+            draining.set(false);
+            stop();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Frame frame = poll();
+            if (frame == null) {
+                draining.set(false);
+                // a frame may have been offered after the poll but before the flag was cleared.
+                if (getQueueDepth() == 0 || !draining.compareAndSet(false, true)) return;
+                continue;
+            }
+            try {
+                ImageStreamCallback callback = target;
+                if (callback != null) callback.onReceiveFrame(frame.view());
+                delivered.incrementAndGet();
+            } catch (RuntimeException e) {
+                System.out.println("Exception thrown by image callback : " + e);
+            } finally {
+                frame.release();
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getReceivedFrames() {
+        return received.get();
+    }
+
+    public long getDeliveredFrames() {
+        return delivered.get();
+    }
+
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+
+    public FrameBufferPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameDispatcher [policy=" + policy + ", capacity=" + ring.length + ", depth=" + getQueueDepth()
+                + ", received=" + received + ", delivered=" + delivered + ", dropped=" + dropped + "]";
+    }
+
+}
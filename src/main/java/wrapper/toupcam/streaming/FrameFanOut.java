@@ -0,0 +1,199 @@
+package wrapper.toupcam.streaming;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.callbacks.ImageStreamCallback;
+import wrapper.toupcam.enumerations.OverflowPolicy;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.util.FrameBufferPool;
+
+/**
+ * Feeds several named outputs, eg. a live preview and a recorder, from a
+ * single capture.
+ * <p>
+ * The SDK thread copies each frame out of native memory once, into a
+ * pooled buffer, and hands a {@link Frame#share() share} of that copy to
+ * every output that wants the frame. Each output has a
+ * {@link FrameDispatcher} of its own, so a slow preview only drops its
+ * own frames and never holds up the recording. Outputs can be rate
+ * limited, frames an output skips are not queued for it at all, and a
+ * frame no output wants is not copied.
+ * <p>
+ * Start the stream with the fan-out as the callback,
+ * {@code app.startStreaming(fanOut)}.
+ *
+ * @author arpit
+ */
+public class FrameFanOut implements FrameViewCallback {
+
+    public static final int RECORDING_CAPACITY = 32;
+
+    private final List<Output> outputs = new CopyOnWriteArrayList<>();
+    private volatile FrameBufferPool pool = new FrameBufferPool(2);
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong copied = new AtomicLong();
+
+    /**
+     * One named output, its queue and rate limit.
+     */
+    public static class Output {
+        private final String name;
+        private final FrameDispatcher queue;
+        private final long minIntervalNanos;
+        // only touched by the SDK thread.
+        private long lastAccepted = Long.MIN_VALUE;
+        private boolean wanted;
+        private final AtomicLong skipped = new AtomicLong();
+
+        Output(String name, FrameDispatcher queue, long minIntervalNanos) {
+            this.name = name;
+            this.queue = queue;
+            this.minIntervalNanos = minIntervalNanos;
+        }
+
+        // stills are never rate limited.
+        boolean accepts(FrameView frame, long now) {
+            if (minIntervalNanos == 0 || frame.isSnapshot()) return true;
+            if (lastAccepted != Long.MIN_VALUE && now - lastAccepted < minIntervalNanos) {
+                skipped.incrementAndGet();
+                return false;
+            }
+            lastAccepted = now;
+            return true;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public FrameDispatcher getQueue() {
+            return queue;
+        }
+
+        /**
+         * @return frames left out by the rate limit, queue drops are counted by {@link #getQueue()}.
+         */
+        public long getSkippedFrames() {
+            return skipped.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Output [name=" + name + ", skipped=" + skipped + ", queue=" + queue + "]";
+        }
+    }
+
+    /**
+     * Adds an output delivering every frame, at full resolution, through
+     * a queue of {@link #RECORDING_CAPACITY} frames. When the queue is full
+     * the incoming frame is dropped, so the recorded frames stay in order.
+     */
+    public FrameFanOut addRecording(String name, ImageStreamCallback target) {
+        return addOutput(name, new FrameDispatcher(RECORDING_CAPACITY, OverflowPolicy.DROP_NEWEST).start(target), 0);
+    }
+
+    /**
+     * Adds an output delivering at most {@code maxFps} frames a second,
+     * scaled down by {@code factor}. Only the latest frame is queued, a
+     * preview that falls behind skips straight to the newest frame.
+     * <p>
+     * With a factor above 1 the box averaged image, see
+     * {@link FrameView#toPreviewImage}, goes to
+     * {@code onReceivePreviewImage(BufferedImage, ImageHeader)} (or the still
+     * variant) on the preview's thread; the header still describes the
+     * captured frame. With factor 1 the target gets the full frame.
+     */
+    public FrameFanOut addPreview(String name, double maxFps, int factor, ImageStreamCallback target) {
+        if (factor < 1) throw new IllegalArgumentException("preview factor " + factor);
+        ImageStreamCallback preview = factor == 1 ? target : (FrameViewCallback) frame -> {
+            if (frame.isSnapshot()) target.onReceiveStillImage(frame.toPreviewImage(null, factor), frame.getHeader());
+            else target.onReceivePreviewImage(frame.toPreviewImage(null, factor), frame.getHeader());
+        };
+        long minInterval = maxFps > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxFps) : 0;
+        return addOutput(name, new FrameDispatcher(1, OverflowPolicy.DROP_OLDEST).start(preview), minInterval);
+    }
+
+    /**
+     * Adds an output with a queue set up by the caller, the queue must
+     * already be started.
+     *
+     * @param minIntervalNanos shortest time between two frames queued for
+     *                         this output, 0 for every frame.
+     */
+    public synchronized FrameFanOut addOutput(String name, FrameDispatcher queue, long minIntervalNanos) {
+        if (getOutput(name) != null) throw new IllegalArgumentException("output " + name + " already added");
+        outputs.add(new Output(name, queue, minIntervalNanos));
+        // every queue full, plus the frame each output is delivering and the one being copied in.
+        int capacity = 1;
+        for (Output output : outputs) capacity += output.queue.getCapacity() + 1;
+        pool = new FrameBufferPool(capacity);
+        return this;
+    }
+
+    public Output getOutput(String name) {
+        for (Output output : outputs) if (output.name.equals(name)) return output;
+        return null;
+    }
+
+    public List<Output> getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * Runs on the SDK thread.
+     */
+    @Override
+    public void onReceiveFrame(FrameView frame) {
+        received.incrementAndGet();
+        long now = frame.getArrivalNanos() == 0 ? System.nanoTime() : frame.getArrivalNanos();
+        int wanted = 0;
+        for (Output output : outputs) {
+            output.wanted = output.accepts(frame, now);
+            if (output.wanted) wanted++;
+        }
+        if (wanted == 0) return;
+
+        Frame copy = Frame.copyOf(frame, pool);
+        copied.incrementAndGet();
+        // the copy itself goes to the last output, so it is still unreleased while the shares are taken.
+        for (Output output : outputs) {
+            if (!output.wanted) continue;
+            output.queue.offer(--wanted == 0 ? copy : copy.share());
+        }
+    }
+
+    /**
+     * Discards the frames queued for every output and closes the queues,
+     * see {@link FrameDispatcher#close()}.
+     */
+    public void stop() {
+        for (Output output : outputs) output.queue.close();
+    }
+
+    public long getReceivedFrames() {
+        return received.get();
+    }
+
+    /**
+     * @return native to java copies made, one per frame at most.
+     */
+    public long getCopiedFrames() {
+        return copied.get();
+    }
+
+    public FrameBufferPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameFanOut [received=" + received + ", copied=" + copied + ", outputs=" + outputs + "]";
+    }
+
+}
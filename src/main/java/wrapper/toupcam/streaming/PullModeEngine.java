@@ -0,0 +1,206 @@
+package wrapper.toupcam.streaming;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+
+import wrapper.toupcam.callbacks.EventCallback;
+import wrapper.toupcam.callbacks.ImageStreamCallback;
+import wrapper.toupcam.enumerations.Event;
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.libraries.LibToupcam;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.models.Resolution;
+import wrapper.toupcam.util.FrameConverter;
+import wrapper.toupcam.util.Util;
+
+/**
+ * Pull mode: the SDK signals {@code EVENT_IMAGE}/{@code EVENT_STILLIMAGE}
+ * and the image is then fetched with {@code Toupcam_PullImage}.
+ * <p>
+ * Native buffers are sized once from the active resolution and bit depth
+ * and reused for every pull. The SDK event thread only schedules the pull,
+ * pulling and the user callback run on the engine's own thread. Events
+ * arriving while a pull is pending are coalesced, the pull always fetches
+ * the latest image.
+ * <p>
+ * Images are stamped with the time of their event, not of the pull, and
+ * with the number of that {@code EVENT_IMAGE}, so coalesced events show up
+ * as gaps in the sequence.
+ *
+ * @author arpit
+ */
+public class PullModeEngine implements EventCallback {
+
+    private final LibToupcam libToupcam;
+    private final Pointer handler;
+    private final int bits;
+    private final Resolution[] resolutions;
+    private final ImageStreamCallback imageCallback;
+    private final ExecutorService executor;
+
+    // pnWidth at offset 0 and pnHeight at offset 4.
+    private final Memory size = new Memory(8);
+    private Memory imageBuffer;
+    private Memory stillBuffer;
+
+    private final ImageHeader header = new ImageHeader();
+    private final FrameView frameView = new FrameView();
+
+    private final AtomicBoolean imagePending = new AtomicBoolean(false);
+    // EVENT_IMAGE count and the time of the latest one.
+    private final AtomicLong imageEvents = new AtomicLong();
+    private volatile long imageEventNanos = 0;
+    private final AtomicLong pulled = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param bits        8 (grey), 24 (BGR) or 32 (BGRX) bits per pixel for the pulled images.
+     * @param resolutions resolution table of the camera, still buffer is sized for its largest entry.
+     */
+    public PullModeEngine(LibToupcam libToupcam, Pointer handler, int bits, Resolution[] resolutions,
+                          ImageStreamCallback imageCallback) {
+        if (bits != 8 && bits != 24 && bits != 32)
+            throw new IllegalArgumentException("bits must be 8, 24 or 32 : " + bits);
+        this.libToupcam = libToupcam;
+        this.handler = handler;
+        this.bits = bits;
+        this.resolutions = resolutions;
+        this.imageCallback = imageCallback;
+        this.executor = Executors.newSingleThreadExecutor(Util.namedDaemonThreads("toupcam-pull"));
+        allocateImageBuffer();
+    }
+
+    /**
+     * Runs on the SDK's event thread, only hands the pull over.
+     */
+    @Override
+    public void invoke(long event) {
+        if (!running) return;
+        Event key = Event.key(event);
+        long arrival = System.nanoTime();
+        if (key == Event.EVENT_IMAGE) {
+            imageEventNanos = arrival;
+            imageEvents.incrementAndGet();
+            if (imagePending.compareAndSet(false, true))
+                schedule(this::pullImage);
+            else coalesced.incrementAndGet();
+        } else if (key == Event.EVENT_STILLIMAGE) {
+            schedule(() -> pullStillImage(arrival));
+        }
+    }
+
+    // an event racing with stop() must not throw on the SDK thread.
+    private void schedule(Runnable pull) {
+        try {
+            executor.execute(pull);
+        } catch (RejectedExecutionException e) {
+            if (running) System.out.println("Exception thrown while scheduling pull : " + e);
+        }
+    }
+
+    /**
+     * Applies a change of resolution, eg. {@code Toupcam_put_eSize}, with no
+     * pull in flight and resizes the image buffer for it.
+     */
+    public synchronized HResult reconfigure(Supplier<HResult> change) {
+        HResult result = change.get();
+        allocateImageBuffer();
+        return result;
+    }
+
+    public void stop() {
+        running = false;
+        executor.shutdown();
+    }
+
+    private synchronized void pullImage() {
+        imagePending.set(false);
+        // the pull fetches the image of the latest event.
+        long event = imageEvents.get(), arrival = imageEventNanos;
+        int result = libToupcam.Toupcam_PullImage(handler, imageBuffer, bits, size, size.share(4));
+        deliver(result, imageBuffer, false, arrival, event);
+    }
+
+    private synchronized void pullStillImage(long arrival) {
+        if (stillBuffer == null) stillBuffer = new Memory(largestFrameSize());
+        int result = libToupcam.Toupcam_PullStillImage(handler, stillBuffer, bits, size, size.share(4));
+        deliver(result, stillBuffer, true, arrival, 0);
+    }
+
+    /**
+     * @param event number of the EVENT_IMAGE pulled, 0 for stills.
+     */
+    private void deliver(int result, Memory buffer, boolean isSnapshot, long arrival, long event) {
+        if (!running) return;
+        if (HResult.key(result) != HResult.S_OK) {
+            failed.incrementAndGet();
+            return;
+        }
+        pulled.incrementAndGet();
+        int width = size.getInt(0), height = size.getInt(4);
+        header.setSize(40);
+        header.setWidth(width);
+        header.setHeight(height);
+        header.setPlanes(1);
+        header.setBitcount(bits);
+        header.setImageSize(FrameConverter.frameSize(width, height, bits));
+        try {
+            imageCallback.onReceiveFrame(frameView.wrap(buffer.getByteBuffer(0, header.getImageSize()),
+                    header, isSnapshot).stamp(arrival, event));
+        } catch (RuntimeException e) {
+            System.out.println("Exception thrown by image callback : " + e);
+        } finally {
+            frameView.invalidate();
+        }
+    }
+
+    private void allocateImageBuffer() {
+        libToupcam.Toupcam_get_Size(handler, size, size.share(4));
+        long required = FrameConverter.frameSize(size.getInt(0), size.getInt(4), bits);
+        if (required <= 0) required = largestFrameSize();
+        if (required <= 0) throw new IllegalStateException("unable to size pull buffer, no active resolution");
+        if (imageBuffer == null || imageBuffer.size() != required)
+            imageBuffer = new Memory(required);
+    }
+
+    private long largestFrameSize() {
+        long largest = 0;
+        for (Resolution resolution : resolutions)
+            largest = Math.max(largest, FrameConverter.frameSize((int) resolution.getWidth(),
+                    (int) resolution.getHeight(), bits));
+        return largest;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public long getPulledFrames() {
+        return pulled.get();
+    }
+
+    public long getCoalescedEvents() {
+        return coalesced.get();
+    }
+
+    public long getFailedPulls() {
+        return failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PullModeEngine [bits=" + bits + ", pulled=" + pulled + ", coalesced=" + coalesced
+                + ", failed=" + failed + "]";
+    }
+
+}
@@ -0,0 +1,178 @@
+package wrapper.toupcam.streaming;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.exceptions.StreamingException;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameBuffer;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.Resolution;
+import wrapper.toupcam.util.FrameConverter;
+import wrapper.toupcam.util.Util;
+
+/**
+ * Matches {@code Toupcam_Snap} calls with the stills the SDK delivers
+ * later, as snapshot frames in push mode or {@code EVENT_STILLIMAGE} in
+ * pull mode.
+ * <p>
+ * The SDK serves snaps in the order they were made, so requests are queued
+ * in the order {@code Toupcam_Snap} is called and every still completes the
+ * oldest open request. The buffer of a still is allocated, from the
+ * resolution table, when it is requested; the SDK thread only copies into
+ * it and futures are completed on a thread shared by all cameras, so
+ * preview frames keep flowing at full rate while stills are in flight.
+ * <p>
+ * A timed out request keeps its place, so a late still is not handed to
+ * the next request, unless the still doesn't match its resolution or comes
+ * more than {@value #LOST_AFTER_TIMEOUTS} timeouts after the request; its
+ * still is then taken as lost.
+ *
+ * @author arpit
+ */
+public class SnapshotRequests implements FrameViewCallback {
+
+    public static final int LOST_AFTER_TIMEOUTS = 2;
+
+    // one thread for every camera, like Timeouts, so reopened cameras don't leave one behind.
+    private static final Executor COMPLETIONS = Executors.newSingleThreadExecutor(Util.namedDaemonThreads("toupcam-snap"));
+
+    private final ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+
+    private static class Request {
+        final int resolutionIndex;
+        final Resolution resolution;
+        final FrameBuffer buffer;
+        final CompletableFuture<Frame> result = new CompletableFuture<>();
+        final long timeoutNanos;
+        long requestNanos;
+
+        Request(int resolutionIndex, Resolution resolution, long timeoutNanos) {
+            this.resolutionIndex = resolutionIndex;
+            this.resolution = resolution;
+            this.timeoutNanos = timeoutNanos;
+            this.buffer = new FrameBuffer(new byte[FrameConverter.frameSize((int) resolution.getWidth(),
+                    (int) resolution.getHeight(), 24)], null, 0);
+        }
+
+        boolean matches(FrameView frame) {
+            return frame.getWidth() == resolution.getWidth() && Math.abs(frame.getHeight()) == resolution.getHeight();
+        }
+
+        /**
+         * @return true for a timed out request that can't be waiting for {@code frame}.
+         */
+        boolean isLost(FrameView frame, long arrivalNanos) {
+            return result.isDone() && (!matches(frame)
+                    || arrivalNanos - requestNanos > LOST_AFTER_TIMEOUTS * timeoutNanos);
+        }
+    }
+
+    /**
+     * Queues a request and calls {@code snap}, safe to call from any thread.
+     *
+     * @param resolution entry {@code resolutionIndex} of the resolution table.
+     * @param snap       the {@code Toupcam_Snap} call.
+     */
+    public CompletableFuture<Frame> request(int resolutionIndex, Resolution resolution, IntSupplier snap,
+                                            long timeout, TimeUnit unit) {
+        Request request = new Request(resolutionIndex, resolution, unit.toNanos(timeout));
+        // queue order has to be the order the SDK sees the snaps in.
+        synchronized (requests) {
+            requests.add(request);
+            request.requestNanos = System.nanoTime();
+            HResult result = HResult.key(snap.getAsInt());
+            if (!HResult.S_OK.equals(result)) {
+                requests.remove(request);
+                request.result.completeExceptionally(new StreamingException("Toupcam_Snap failed : " + result));
+                return request.result;
+            }
+        }
+        requested.incrementAndGet();
+        ScheduledFuture<?> expiry = Timeouts.schedule(() -> {
+            timedOut.incrementAndGet();
+            if (!request.result.completeExceptionally(new TimeoutException("still " + resolutionIndex + " timed out")))
+                timedOut.decrementAndGet();
+        }, timeout, unit);
+        request.result.whenComplete((frame, e) -> expiry.cancel(false));
+        return request.result;
+    }
+
+    /**
+     * Runs on the SDK thread, preview frames are ignored.
+     */
+    @Override
+    public void onReceiveFrame(FrameView frame) {
+        if (!frame.isSnapshot()) return;
+        long arrival = frame.getArrivalNanos() != 0 ? frame.getArrivalNanos() : System.nanoTime();
+        Request request;
+        // drop timed out requests whose still is evidently lost.
+        while ((request = requests.poll()) != null && request.isLost(frame, arrival)) lost.incrementAndGet();
+        if (request == null || request.result.isDone()) return;
+
+        FrameBuffer buffer = request.buffer;
+        int length = frame.getSize();
+        if (length > buffer.getData().length) buffer = new FrameBuffer(new byte[length], null, 0);
+        frame.getBuffer().get(buffer.getData(), 0, length);
+        buffer.setLength(length);
+        buffer.markLeased();
+
+        Frame still = new Frame(buffer, frame.getHeader(), true);
+        if (still.getArrivalNanos() == 0) still.getHeader().setTimestamp(System.nanoTime());
+        still.setRequestNanos(request.requestNanos);
+        CompletableFuture<Frame> result = request.result;
+        COMPLETIONS.execute(() -> {
+            // counted first, so it is up to date once the caller sees the still.
+            completed.incrementAndGet();
+            if (!result.complete(still)) completed.decrementAndGet();
+        });
+    }
+
+    /**
+     * @return requests waiting for their still, including timed out ones
+     * still holding their place.
+     */
+    public int getPending() {
+        return requests.size();
+    }
+
+    public long getRequested() {
+        return requested.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return timed out requests given up on, as the stills arriving didn't fit them.
+     */
+    public long getLost() {
+        return lost.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotRequests [requested=" + requested + ", completed=" + completed + ", timedOut=" + timedOut
+                + ", lost=" + lost + ", pending=" + getPending() + "]";
+    }
+
+}
@@ -0,0 +1,250 @@
+package wrapper.toupcam.streaming;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.enumerations.StreamState;
+import wrapper.toupcam.exceptions.StreamingException;
+import wrapper.toupcam.metrics.LatencyHistogram;
+
+/**
+ * Streaming state of one camera: start, pause, resume, stop and switching
+ * between video and trigger mode without restarting the stream.
+ * <p>
+ * Transitions are serialised, each one runs its SDK call while holding the
+ * transition lock, so a transition never sees another half done. The SDK
+ * thread only reads the state, through {@link #admit(long)}, and drops the
+ * frames that arrive while the stream is not in {@link StreamState#STREAMING},
+ * eg. frames of the old mode still in flight during a mode switch. As the
+ * SDK may still deliver frames of the old mode after the switch returns,
+ * frames are discarded for one more frame interval after it.
+ * <p>
+ * Every mode switch is timed from the request to the first frame admitted
+ * in the new mode, see {@link #getSwitchLatency()}.
+ *
+ * @author arpit
+ */
+public class StreamStateMachine {
+
+    // longest wait for old mode frames after a switch, eg. after a slow trigger mode.
+    public static final long MAX_SETTLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AtomicReference<StreamState> state = new AtomicReference<>(StreamState.STOPPED);
+    private final ReentrantLock transitions = new ReentrantLock();
+    private final Consumer<StreamState> listener;
+
+    // switch waiting for its first frame, with the time it was requested.
+    private final AtomicReference<PendingSwitch> pendingSwitch = new AtomicReference<>();
+    private final LatencyHistogram switchLatency = new LatencyHistogram();
+    private final AtomicLong switches = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    // interval between the last two frames admitted in a row, 0 until known.
+    private final AtomicLong lastArrival = new AtomicLong();
+    private volatile long frameInterval = 0;
+    // frames arriving before this are still of the old mode, 0 when not switching.
+    private volatile long settleUntil = 0;
+
+    private static class PendingSwitch {
+        final long startNanos;
+        final CompletableFuture<Long> firstFrame;
+
+        PendingSwitch(long startNanos, CompletableFuture<Long> firstFrame) {
+            this.startNanos = startNanos;
+            this.firstFrame = firstFrame;
+        }
+    }
+
+    public StreamStateMachine() {
+        this(state -> { });
+    }
+
+    /**
+     * @param listener told of every state change, while holding the transition lock.
+     */
+    public StreamStateMachine(Consumer<StreamState> listener) {
+        this.listener = listener;
+    }
+
+    public StreamState getState() {
+        return state.get();
+    }
+
+    /**
+     * @return true while frames are delivered, including during a mode switch.
+     */
+    public boolean isStreaming() {
+        StreamState current = state.get();
+        return current == StreamState.STREAMING || current == StreamState.SWITCHING;
+    }
+
+    /**
+     * STOPPED to STREAMING. Frames are admitted before {@code start} returns,
+     * the SDK may push the first frame before that.
+     */
+    public HResult start(Supplier<HResult> start) {
+        return transition(StreamState.STOPPED, StreamState.STREAMING, start, false);
+    }
+
+    /**
+     * STREAMING to PAUSED, frames still in flight are discarded.
+     */
+    public HResult pause(Supplier<HResult> pause) {
+        return transition(StreamState.STREAMING, StreamState.PAUSED, pause, true);
+    }
+
+    /**
+     * PAUSED to STREAMING.
+     */
+    public HResult resume(Supplier<HResult> resume) {
+        return transition(StreamState.PAUSED, StreamState.STREAMING, resume, false);
+    }
+
+    /**
+     * Any state to STOPPED, frames still in flight are discarded.
+     */
+    public HResult stop(Supplier<HResult> stop) {
+        transitions.lock();
+        try {
+            setState(StreamState.STOPPED);
+            settleUntil = 0;
+            cancelPendingSwitch("stream stopped");
+            return stop.get();
+        } finally {
+            transitions.unlock();
+        }
+    }
+
+    // optimistic transitions enter the target state before the SDK call, and go back if it fails.
+    private HResult transition(StreamState from, StreamState to, Supplier<HResult> call, boolean afterCall) {
+        transitions.lock();
+        try {
+            if (state.get() != from) return HResult.E_UNEXPECTED;
+            if (!afterCall) setState(to);
+            HResult result = call.get();
+            boolean ok = HResult.S_OK.equals(result) || HResult.S_FALSE.equals(result);
+            if (ok && afterCall) setState(to);
+            else if (!ok && !afterCall) setState(from);
+            return result;
+        } finally {
+            transitions.unlock();
+        }
+    }
+
+    /**
+     * Applies a mode change, {@code change} is eg. the {@code OPTION_TRIGGER}
+     * put. While streaming, frames arriving during the change and up to one
+     * frame interval after it are discarded and {@code firstFrame} completes with the nanoseconds from now to the
+     * first frame of the new mode; in trigger mode that frame only comes
+     * with the first trigger. Otherwise it completes with 0 straight away.
+     * {@code firstFrame} fails when the change fails, or the stream is
+     * stopped or switched again first.
+     */
+    public HResult switchMode(Supplier<HResult> change, CompletableFuture<Long> firstFrame) {
+        long start = System.nanoTime();
+        transitions.lock();
+        try {
+            StreamState before = state.get();
+            if (before != StreamState.STREAMING) {
+                HResult result = change.get();
+                if (HResult.S_OK.equals(result)) firstFrame.complete(0L);
+                else firstFrame.completeExceptionally(new StreamingException("mode switch failed : " + result));
+                return result;
+            }
+
+            setState(StreamState.SWITCHING);
+            cancelPendingSwitch("switched again before the first frame");
+            HResult result;
+            try {
+                result = change.get();
+                if (HResult.S_OK.equals(result))
+                    settleUntil = System.nanoTime() + Math.min(frameInterval, MAX_SETTLE_NANOS);
+            } finally {
+                setState(StreamState.STREAMING);
+            }
+            if (HResult.S_OK.equals(result)) {
+                switches.incrementAndGet();
+                pendingSwitch.set(new PendingSwitch(start, firstFrame));
+            } else {
+                firstFrame.completeExceptionally(new StreamingException("mode switch failed : " + result));
+            }
+            return result;
+        } finally {
+            transitions.unlock();
+        }
+    }
+
+    /**
+     * Runs on the SDK thread for every frame.
+     *
+     * @return false when the frame must be discarded.
+     */
+    public boolean admit(long arrivalNanos) {
+        if (state.get() != StreamState.STREAMING) {
+            discarded.incrementAndGet();
+            return false;
+        }
+        if (settleUntil != 0) {
+            if (arrivalNanos - settleUntil < 0) {
+                discarded.incrementAndGet();
+                return false;
+            }
+            settleUntil = 0;
+        }
+        long previous = lastArrival.getAndSet(arrivalNanos);
+        if (previous != 0 && arrivalNanos > previous) frameInterval = arrivalNanos - previous;
+        if (pendingSwitch.get() != null) {
+            PendingSwitch completed = pendingSwitch.getAndSet(null);
+            if (completed != null) {
+                long latency = Math.max(0, arrivalNanos - completed.startNanos);
+                switchLatency.record(latency);
+                completed.firstFrame.complete(latency);
+            }
+        }
+        return true;
+    }
+
+    private void cancelPendingSwitch(String reason) {
+        PendingSwitch previous = pendingSwitch.getAndSet(null);
+        if (previous != null) previous.firstFrame.completeExceptionally(new CancellationException(reason));
+    }
+
+    private void setState(StreamState next) {
+        // an interval spanning a pause, stop or switch says nothing about the frame rate.
+        if (next != StreamState.STREAMING) lastArrival.set(0);
+        if (state.getAndSet(next) != next) listener.accept(next);
+    }
+
+    /**
+     * @return request to first frame times of the mode switches made while streaming.
+     */
+    public LatencyHistogram getSwitchLatency() {
+        return switchLatency;
+    }
+
+    public long getSwitches() {
+        return switches.get();
+    }
+
+    /**
+     * @return frames dropped because they arrived while stopped, paused or
+     * switching, or were still of the old mode right after a switch.
+     */
+    public long getDiscardedFrames() {
+        return discarded.get();
+    }
+
+    @Override
+    public String toString() {
+        return "StreamStateMachine [state=" + state.get() + ", switches=" + switches + ", discarded=" + discarded
+                + ", switchP50=" + switchLatency.getPercentile(50) / 1000 + " us]";
+    }
+
+}
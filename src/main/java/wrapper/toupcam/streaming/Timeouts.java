@@ -0,0 +1,30 @@
+package wrapper.toupcam.streaming;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import wrapper.toupcam.util.Util;
+
+/**
+ * Single daemon thread expiring the futures of bursts and snapshots,
+ * cancelled timeouts are removed right away.
+ *
+ * @author arpit
+ */
+class Timeouts {
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1,
+            Util.namedDaemonThreads("toupcam-timeout"));
+
+    static {
+        EXECUTOR.setRemoveOnCancelPolicy(true);
+    }
+
+    private Timeouts() {}
+
+    static ScheduledFuture<?> schedule(Runnable expiry, long timeout, TimeUnit unit) {
+        return EXECUTOR.schedule(expiry, timeout, unit);
+    }
+
+}
@@ -0,0 +1,132 @@
+package wrapper.toupcam.streaming;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameBuffer;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+
+/**
+ * Collects the frames of one burst of software triggers.
+ * <p>
+ * Installed as a frame tap before {@code Toupcam_Trigger(n)} is called, it
+ * copies the next {@code n} preview frames into frames allocated up front,
+ * so the SDK thread doesn't allocate while the burst is arriving, unless a
+ * frame turns out larger than the size the burst was built for. The
+ * future completes on the SDK thread as soon as the last frame is copied,
+ * so the caller can start its next step (eg. a stage move) right away.
+ * Every frame carries the trigger time, {@link Frame#getLatencyNanos()} is
+ * its trigger to arrival latency.
+ *
+ * @author arpit
+ */
+public class TriggerBurst implements FrameViewCallback {
+
+    private final int count;
+    private final FrameBuffer[] buffers;
+    private final Frame[] frames;
+    private final AtomicInteger received = new AtomicInteger();
+    // frames fully copied, the ones past it may still be written to.
+    private final AtomicInteger copied = new AtomicInteger();
+    private final CompletableFuture<List<Frame>> result = new CompletableFuture<>();
+    private volatile long requestNanos;
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * @param frameSize bytes preallocated per frame, larger frames get a
+     *                  buffer of their own when they arrive.
+     */
+    public TriggerBurst(int count, int frameSize) {
+        if (count <= 0) throw new IllegalArgumentException("burst of " + count + " frames");
+        this.count = count;
+        this.buffers = new FrameBuffer[count];
+        this.frames = new Frame[count];
+        for (int i = 0; i < count; i++) {
+            buffers[i] = new FrameBuffer(new byte[frameSize], null, 0);
+            frames[i] = new Frame(buffers[i], new ImageHeader(), false);
+        }
+    }
+
+    /**
+     * Marks the triggers as fired and starts the timeout, call right before
+     * {@code Toupcam_Trigger}.
+     */
+    public void arm(long timeout, TimeUnit unit) {
+        requestNanos = System.nanoTime();
+        this.timeout = Timeouts.schedule(() -> fail(new TimeoutException(
+                "burst of " + count + " frames timed out with " + getReceived() + " frames")), timeout, unit);
+        result.whenComplete((frames, e) -> this.timeout.cancel(false));
+    }
+
+    /**
+     * Runs on the SDK thread, stills are not part of a burst.
+     */
+    @Override
+    public void onReceiveFrame(FrameView frame) {
+        if (frame.isSnapshot() || result.isDone()) return;
+        int index = received.getAndIncrement();
+        if (index >= count) return;
+
+        FrameBuffer buffer = buffers[index];
+        Frame copy = frames[index];
+        int length = frame.getSize();
+        if (length > buffer.getData().length) {
+            buffer = buffers[index] = new FrameBuffer(new byte[length], null, 0);
+            copy = frames[index] = new Frame(buffer, frame.getHeader(), false);
+        }
+        frame.getBuffer().get(buffer.getData(), 0, length);
+        buffer.setLength(length);
+        buffer.markLeased();
+
+        copy.getHeader().copyFrom(frame.getHeader());
+        if (copy.getArrivalNanos() == 0) copy.getHeader().setTimestamp(System.nanoTime());
+        copy.setRequestNanos(requestNanos);
+        copied.incrementAndGet();
+        if (index == count - 1) result.complete(Collections.unmodifiableList(Arrays.asList(frames)));
+    }
+
+    public void fail(Throwable cause) {
+        result.completeExceptionally(cause);
+    }
+
+    /**
+     * @return completes with exactly {@code count} frames, in arrival order,
+     * or exceptionally on timeout or when the trigger fails.
+     */
+    public CompletableFuture<List<Frame>> getResult() {
+        return result;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getReceived() {
+        return Math.min(count, received.get());
+    }
+
+    /**
+     * @return trigger to arrival latency of the frames received so far.
+     */
+    public List<Long> getLatenciesNanos() {
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, copied.get()); i++) latencies.add(frames[i].getLatencyNanos());
+        return latencies;
+    }
+
+    @Override
+    public String toString() {
+        return "TriggerBurst [count=" + count + ", received=" + getReceived() + ", done=" + result.isDone() + "]";
+    }
+
+}
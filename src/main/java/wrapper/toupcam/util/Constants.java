@@ -22,6 +22,9 @@ public class Constants {
     //public static final String PATH = "./src/main/resources/";
     public static final String IMAGES_PATH = PROJECT_BASE_PATH + "/capturedImages";
     public static final String NATIVE_LIB_EXTRACTION_DIR = PROJECT_BASE_PATH + "nativeLibs/";
+
+    // stills of the largest resolutions take a few seconds on USB 2.0.
+    public static final long SNAP_TIMEOUT_SECONDS = 10;
     
     /**
      * Exception Messages
@@ -0,0 +1,144 @@
+package wrapper.toupcam.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import wrapper.toupcam.models.FrameBuffer;
+import wrapper.toupcam.models.ImageHeader;
+
+/**
+ * Recycles frame sized byte arrays so that the frame path does not churn
+ * the GC with a new array per frame.
+ * <p>
+ * The pool is keyed by the frame size and resolution of the stream, when
+ * a lease asks for a different shape (eg. after {@code Toupcam_put_eSize})
+ * the pool drops its idle buffers and starts handing out the new size.
+ * Buffers of the old shape released afterwards are left to the GC.
+ *
+ * @author arpit
+ */
+public class FrameBufferPool {
+
+    public static final int DEFAULT_MAX_IDLE = 4;
+
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<FrameBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private volatile int generation = 0;
+    private volatile int frameSize = -1;
+    private volatile int width = -1;
+    private volatile int height = -1;
+
+    public FrameBufferPool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * @param maxIdle number of released buffers kept for reuse, leases beyond
+     *                that are still served but are not retained on release.
+     */
+    public FrameBufferPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public FrameBuffer lease(ImageHeader header) {
+        return lease(FrameConverter.frameSize(header), header.getWidth(), Math.abs(header.getHeight()));
+    }
+
+    public FrameBuffer lease(int frameSize, int width, int height) {
+        if (frameSize != this.frameSize || width != this.width || height != this.height)
+            resize(frameSize, width, height);
+
+        int current = generation;
+        FrameBuffer buffer;
+        while ((buffer = idle.poll()) != null) {
+            idleCount.decrementAndGet();
+            if (buffer.getGeneration() == current) break;
+        }
+
+        if (buffer != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            buffer = new FrameBuffer(new byte[frameSize], this, current);
+        }
+        buffer.setLength(frameSize);
+        buffer.markLeased();
+        outstanding.incrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Called by {@link FrameBuffer#release()}.
+     */
+    public void release(FrameBuffer buffer) {
+        outstanding.decrementAndGet();
+        if (buffer.getGeneration() != generation) return;
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        idle.offer(buffer);
+    }
+
+    /**
+     * Switches the pool to a new frame shape, idle buffers of the old
+     * shape are dropped.
+     */
+    public synchronized void resize(int frameSize, int width, int height) {
+        if (frameSize == this.frameSize && width == this.width && height == this.height) return;
+        this.frameSize = frameSize;
+        this.width = width;
+        this.height = height;
+        generation++;
+        dropIdle();
+    }
+
+    /**
+     * Forgets the current frame shape, eg. when the resolution is changed.
+     * The next lease re-keys the pool.
+     */
+    public synchronized void invalidate() {
+        frameSize = width = height = -1;
+        generation++;
+        dropIdle();
+    }
+
+    private void dropIdle() {
+        while (idle.poll() != null) idleCount.decrementAndGet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getOutstandingLeases() {
+        return outstanding.get();
+    }
+
+    public int getIdleCount() {
+        return Math.max(0, idleCount.get());
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameBufferPool [frameSize=" + frameSize + ", width=" + width + ", height=" + height
+                + ", hits=" + hits + ", misses=" + misses + ", outstanding=" + outstanding
+                + ", idle=" + getIdleCount() + "]";
+    }
+
+}
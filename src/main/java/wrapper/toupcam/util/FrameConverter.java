@@ -0,0 +1,330 @@
+package wrapper.toupcam.util;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.sun.jna.Pointer;
+
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.models.ImageType;
+
+/**
+ * Bulk conversion of frames delivered by toupcam into java images.
+ * <p>
+ * Frames are 24 bit DIB rows in B, G, R order (the same layout as
+ * {@code BufferedImage.TYPE_3BYTE_BGR} and an OpenCV {@code CV_8UC3} Mat),
+ * each row padded to a multiple of 4 bytes. Instead of one JNA call per
+ * channel the whole frame is copied once out of native memory, straight
+ * into the backing array of the destination image.
+ * <p>
+ * For previews {@link #crop} and {@link #decimate} read only the rows and
+ * columns of a region of interest, box averaging it down 2x or 4x, so a
+ * quarter scale preview produces a sixteenth of the bytes of a full frame.
+ *
+ * @author arpit
+ */
+public class FrameConverter {
+
+    public static final int BGR_BYTES_PER_PIXEL = 3;
+    public static final int ARGB_BYTES_PER_PIXEL = 4;
+
+    /**
+     * Length in bytes of one DIB row, rows are padded to 4 byte boundary.
+     */
+    public static int stride(int width, int bitcount) {
+        return ((width * bitcount + 31) / 32) * 4;
+    }
+
+    public static int frameSize(int width, int height, int bitcount) {
+        return stride(width, bitcount) * height;
+    }
+
+    /**
+     * Size of the frame described by {@code header}, biSizeImage may be
+     * left 0 for uncompressed frames.
+     */
+    public static int frameSize(ImageHeader header) {
+        if (header.getImageSize() > 0) return header.getImageSize();
+        int bitcount = header.getBitcount() > 0 ? header.getBitcount() : 24;
+        return frameSize(header.getWidth(), Math.abs(header.getHeight()), bitcount);
+    }
+
+    public static BufferedImage toBGRImage(Pointer imagePointer, int width, int height) {
+        return toBGRImage(wrap(imagePointer, width, height), width, height);
+    }
+
+    public static BufferedImage toABGRImage(Pointer imagePointer, int width, int height) {
+        return toABGRImage(wrap(imagePointer, width, height), width, height);
+    }
+
+    public static byte[] toByteArray(Pointer imagePointer, int width, int height, ImageType imageType) {
+        return toByteArray(wrap(imagePointer, width, height), width, height, imageType);
+    }
+
+    /**
+     * Converts a frame of any bit depth toupcam delivers, 8 bit grey,
+     * 24 bit BGR or 32 bit BGRX, into an image of the matching type.
+     */
+    public static BufferedImage toImage(ByteBuffer frame, ImageHeader header) {
+        int width = header.getWidth(), height = Math.abs(header.getHeight());
+        switch (header.getBitcount()) {
+            case 8:
+                BufferedImage grey = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+                readRows(frame, width, height, stride(width, 8), dataOf(grey), 0);
+                return grey;
+            case 32:
+                BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                // BGRX bytes are little endian 0xXXRRGGBB ints.
+                frame.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+                        .get(((DataBufferInt) rgb.getRaster().getDataBuffer()).getData(), 0, width * height);
+                return rgb;
+            default:
+                return toBGRImage(frame, width, height);
+        }
+    }
+
+    public static BufferedImage toBGRImage(ByteBuffer frame, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        readBGR(frame, width, height, dataOf(image), 0);
+        return image;
+    }
+
+    public static BufferedImage toABGRImage(ByteBuffer frame, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+        convert(frame, width, height, ImageType.ABGR, dataOf(image));
+        return image;
+    }
+
+    public static byte[] toByteArray(ByteBuffer frame, int width, int height, ImageType imageType) {
+        byte[] bytes = new byte[width * height * bytesPerPixel(imageType)];
+        convert(frame, width, height, imageType, bytes);
+        return bytes;
+    }
+
+    /**
+     * Converts a frame of any bit depth toupcam delivers into packed pixels
+     * of {@code imageType}, grey frames are widened to B = G = R and the
+     * padding byte of 32 bit frames is dropped.
+     */
+    public static byte[] toByteArray(ByteBuffer frame, ImageHeader header, ImageType imageType) {
+        byte[] bytes = new byte[header.getWidth() * Math.abs(header.getHeight()) * bytesPerPixel(imageType)];
+        convert(frame, header, imageType, bytes);
+        return bytes;
+    }
+
+    /**
+     * {@link #toByteArray(ByteBuffer, ImageHeader, ImageType)} into the caller supplied array.
+     */
+    public static void convert(ByteBuffer frame, ImageHeader header, ImageType imageType, byte[] dst) {
+        int width = header.getWidth(), height = Math.abs(header.getHeight());
+        int bitcount = header.getBitcount() > 0 ? header.getBitcount() : 24;
+        if (bitcount == 24) {
+            convert(frame, width, height, imageType, dst);
+            return;
+        }
+        if (bitcount != 8 && bitcount != 32) throw new IllegalArgumentException("unsupported bitcount " + bitcount);
+        int outBytes = bytesPerPixel(imageType);
+        if (dst.length < width * height * outBytes)
+            throw new IllegalArgumentException("destination too small for " + width + "x" + height + " " + imageType);
+
+        int pixelBytes = bitcount / 8, stride = stride(width, bitcount);
+        ByteBuffer src = frame.duplicate();
+        int base = src.position();
+        byte[] row = new byte[width * pixelBytes];
+        for (int y = 0, out = 0; y < height; y++) {
+            src.position(base + y * stride);
+            src.get(row);
+            for (int in = 0; in < row.length; in += pixelBytes, out += outBytes) {
+                byte blue = row[in];
+                byte green = pixelBytes == 1 ? blue : row[in + 1], red = pixelBytes == 1 ? blue : row[in + 2];
+                if (imageType == ImageType.ABGR) {
+                    dst[out] = (byte) 0xff;
+                    dst[out + 1] = blue;
+                    dst[out + 2] = green;
+                    dst[out + 3] = red;
+                } else {
+                    dst[out] = blue;
+                    dst[out + 1] = green;
+                    dst[out + 2] = red;
+                    if (imageType == ImageType.BGRA) dst[out + 3] = (byte) 0xff;
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts the frame into the caller supplied array, which must hold at
+     * least {@code width * height * bytesPerPixel(imageType)} bytes.
+     * Allows the destination to be reused across frames.
+     */
+    public static void convert(ByteBuffer frame, int width, int height, ImageType imageType, byte[] dst) {
+        int pixels = width * height;
+        if (dst.length < pixels * bytesPerPixel(imageType))
+            throw new IllegalArgumentException("destination too small for " + width + "x" + height + " " + imageType);
+
+        if (imageType == ImageType.BGR) {
+            readBGR(frame, width, height, dst, 0);
+            return;
+        }
+
+        // copy the BGR pixels into the tail of dst and widen them in place,
+        // 4 * i + 3 < pixels + 3 * (i + 1) so a write never overtakes an unread pixel.
+        readBGR(frame, width, height, dst, pixels);
+        int src = pixels;
+        if (imageType == ImageType.ABGR) {
+            for (int dstIndex = 0; dstIndex < pixels * 4; dstIndex += 4, src += 3) {
+                byte blue = dst[src], green = dst[src + 1], red = dst[src + 2];
+                dst[dstIndex] = (byte) 0xff;
+                dst[dstIndex + 1] = blue;
+                dst[dstIndex + 2] = green;
+                dst[dstIndex + 3] = red;
+            }
+        } else {
+            for (int dstIndex = 0; dstIndex < pixels * 4; dstIndex += 4, src += 3) {
+                byte blue = dst[src], green = dst[src + 1], red = dst[src + 2];
+                dst[dstIndex] = blue;
+                dst[dstIndex + 1] = green;
+                dst[dstIndex + 2] = red;
+                dst[dstIndex + 3] = (byte) 0xff;
+            }
+        }
+    }
+
+    /**
+     * Copies the visible BGR bytes of every row into {@code dst}, dropping
+     * the row padding. A single bulk copy when rows are not padded.
+     */
+    public static void readBGR(ByteBuffer frame, int width, int height, byte[] dst, int dstOffset) {
+        readRows(frame, width * BGR_BYTES_PER_PIXEL, height, stride(width, 24), dst, dstOffset);
+    }
+
+    private static void readRows(ByteBuffer frame, int rowLength, int height, int stride, byte[] dst, int dstOffset) {
+        ByteBuffer src = frame.duplicate();
+        if (stride == rowLength) {
+            src.get(dst, dstOffset, rowLength * height);
+            return;
+        }
+        int base = src.position();
+        for (int row = 0; row < height; row++) {
+            src.position(base + row * stride);
+            src.get(dst, dstOffset + row * rowLength, rowLength);
+        }
+    }
+
+    /**
+     * Copies the region {@code roi} of a frame into a new image, reading
+     * only the rows and columns it covers.
+     */
+    public static BufferedImage crop(Pointer imagePointer, ImageHeader header, Rectangle roi) {
+        return decimate(imagePointer.getByteBuffer(0, frameSize(header)), header, roi, 1);
+    }
+
+    public static BufferedImage crop(ByteBuffer frame, ImageHeader header, Rectangle roi) {
+        return decimate(frame, header, roi, 1);
+    }
+
+    /**
+     * Scales the whole frame down by {@code factor}, each pixel is the
+     * average of a {@code factor x factor} block.
+     */
+    public static BufferedImage decimate(Pointer imagePointer, ImageHeader header, int factor) {
+        return decimate(imagePointer.getByteBuffer(0, frameSize(header)), header, null, factor);
+    }
+
+    public static BufferedImage decimate(ByteBuffer frame, ImageHeader header, int factor) {
+        return decimate(frame, header, null, factor);
+    }
+
+    /**
+     * Crops {@code roi}, the whole frame when null, and scales it down by
+     * {@code factor}. 8 bit frames give a {@code TYPE_BYTE_GRAY} image,
+     * 24 and 32 bit ones a {@code TYPE_3BYTE_BGR} image.
+     */
+    public static BufferedImage decimate(ByteBuffer frame, ImageHeader header, Rectangle roi, int factor) {
+        int width = header.getWidth(), height = Math.abs(header.getHeight());
+        int bitcount = header.getBitcount() > 0 ? header.getBitcount() : 24;
+        Rectangle region = roi == null ? new Rectangle(width, height) : roi;
+        checkRegion(width, height, bitcount, region, factor);
+        BufferedImage image = new BufferedImage(region.width / factor, region.height / factor,
+                bitcount == 8 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR);
+        decimate(frame, width, height, bitcount, region, factor, dataOf(image));
+        return image;
+    }
+
+    /**
+     * Box averages every {@code factor x factor} block of {@code roi} into
+     * one pixel of {@code dst}, rows of {@code roi.width / factor} pixels
+     * without padding; the last columns and rows of {@code roi} that don't
+     * fill a block are left out. Only the rows of {@code roi} are read,
+     * and of those only the bytes between its left and right edge.
+     *
+     * @param bitcount 8, 24 or 32; the padding byte of 32 bit pixels is dropped.
+     * @param dst      holds at least {@code (roi.width / factor) * (roi.height / factor)}
+     *                 pixels of 1 byte for 8 bit frames, 3 otherwise.
+     */
+    public static void decimate(ByteBuffer frame, int width, int height, int bitcount, Rectangle roi, int factor,
+                                byte[] dst) {
+        checkRegion(width, height, bitcount, roi, factor);
+        int pixelBytes = bitcount / 8, channels = Math.min(pixelBytes, BGR_BYTES_PER_PIXEL);
+        int outWidth = roi.width / factor, outHeight = roi.height / factor;
+        int outRowLength = outWidth * channels;
+        if (dst.length < outRowLength * outHeight)
+            throw new IllegalArgumentException("destination too small for " + outWidth + "x" + outHeight);
+
+        ByteBuffer src = frame.duplicate();
+        int stride = stride(width, bitcount);
+        int start = src.position() + roi.y * stride + roi.x * pixelBytes;
+        int rowLength = outWidth * factor * pixelBytes;
+        if (factor == 1 && pixelBytes == channels) {
+            for (int row = 0; row < outHeight; row++) {
+                src.position(start + row * stride);
+                src.get(dst, row * outRowLength, outRowLength);
+            }
+            return;
+        }
+
+        byte[] row = new byte[rowLength];
+        int[] sums = new int[outRowLength];
+        int area = factor * factor;
+        for (int outRow = 0; outRow < outHeight; outRow++) {
+            Arrays.fill(sums, 0);
+            for (int blockRow = 0; blockRow < factor; blockRow++) {
+                src.position(start + (outRow * factor + blockRow) * stride);
+                src.get(row, 0, rowLength);
+                for (int in = 0, sum = 0; sum < outRowLength; sum += channels) {
+                    for (int k = 0; k < factor; k++, in += pixelBytes)
+                        for (int c = 0; c < channels; c++) sums[sum + c] += row[in + c] & 0xff;
+                }
+            }
+            int out = outRow * outRowLength;
+            for (int i = 0; i < outRowLength; i++) dst[out + i] = (byte) ((sums[i] + area / 2) / area);
+        }
+    }
+
+    private static void checkRegion(int width, int height, int bitcount, Rectangle roi, int factor) {
+        if (bitcount != 8 && bitcount != 24 && bitcount != 32)
+            throw new IllegalArgumentException("unsupported bitcount " + bitcount);
+        if (factor < 1) throw new IllegalArgumentException("decimation factor " + factor);
+        if (roi.width < factor || roi.height < factor || roi.x < 0 || roi.y < 0
+                || roi.x + roi.width > width || roi.y + roi.height > height)
+            throw new IllegalArgumentException("region " + roi + " outside of " + width + "x" + height + " frame");
+    }
+
+    public static int bytesPerPixel(ImageType imageType) {
+        return imageType == ImageType.BGR ? BGR_BYTES_PER_PIXEL : ARGB_BYTES_PER_PIXEL;
+    }
+
+    public static byte[] dataOf(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static ByteBuffer wrap(Pointer imagePointer, int width, int height) {
+        return imagePointer.getByteBuffer(0, frameSize(width, height, 24));
+    }
+
+}
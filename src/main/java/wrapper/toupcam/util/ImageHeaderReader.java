@@ -0,0 +1,72 @@
+package wrapper.toupcam.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.sun.jna.Pointer;
+
+import wrapper.toupcam.models.ImageHeader;
+
+/**
+ * Reads the BITMAPINFOHEADER pushed with every frame into one reused
+ * {@link ImageHeader}, with a single bulk copy of its 40 bytes instead of
+ * a JNA call per field.
+ * <p>
+ * The returned header is overwritten by the next read, like the frame it
+ * describes; copy it to keep it. One reader per camera, used from the
+ * SDK's callback thread.
+ *
+ * @author arpit
+ */
+public class ImageHeaderReader {
+
+    public static final int HEADER_SIZE = 40;
+
+    private final byte[] raw = new byte[HEADER_SIZE];
+    private final ByteBuffer fields = ByteBuffer.wrap(raw).order(ByteOrder.nativeOrder());
+    private final ImageHeader header = new ImageHeader();
+    private boolean formatChanged = false;
+    private boolean first = true;
+    private long formatChanges = 0;
+
+    public ImageHeader read(Pointer imageHeaderPointer) {
+        imageHeaderPointer.read(0, raw, 0, HEADER_SIZE);
+        int width = fields.getInt(4), height = fields.getInt(8);
+        int bitcount = fields.getShort(14), compression = fields.getInt(16);
+
+        formatChanged = first || width != header.getWidth() || height != header.getHeight()
+                || bitcount != header.getBitcount() || compression != header.getCompression();
+        if (formatChanged) formatChanges++;
+        first = false;
+
+        header.setSize(fields.getInt(0));
+        header.setWidth(width);
+        header.setHeight(height);
+        header.setPlanes(fields.getShort(12));
+        header.setBitcount(bitcount);
+        header.setCompression(compression);
+        header.setImageSize(fields.getInt(20));
+        header.setxPelsPerMeter(fields.getInt(24));
+        header.setyPelsPerMeter(fields.getInt(28));
+        header.setClrUsed(fields.getInt(32));
+        header.setClrImportant(fields.getInt(36));
+        return header;
+    }
+
+    /**
+     * @return true if width, height, bitcount or compression of the last
+     * read header differ from the one before, always true for the first.
+     */
+    public boolean isFormatChanged() {
+        return formatChanged;
+    }
+
+    public long getFormatChanges() {
+        return formatChanges;
+    }
+
+    public ImageHeader getHeader() {
+        return header;
+    }
+
+}
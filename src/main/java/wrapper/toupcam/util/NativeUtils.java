@@ -1,15 +1,27 @@
 package wrapper.toupcam.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
+import com.sun.jna.Callback;
+import com.sun.jna.CallbackThreadInitializer;
 import com.sun.jna.Native;
 import com.sun.jna.NativeLibrary;
 import com.sun.jna.Platform;
 
+import wrapper.toupcam.libraries.DirectToupcam;
 import wrapper.toupcam.libraries.LibToupcam;
 
 /**
@@ -21,7 +33,24 @@ import wrapper.toupcam.libraries.LibToupcam;
  */
 public class NativeUtils {
 
+    // SHA-256 of an extracted library, kept next to it as <library>.sha256.
+    private static final String DIGEST_SUFFIX = ".sha256";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // younger temp copies may still be written by a JVM starting concurrently.
+    private static final long STALE_TEMP_MILLIS = 60000;
+
+    private static volatile long extractionNanos = 0;
+    private static volatile long loadNanos = 0;
+
+    /**
+     * Extracts the library unless an identical copy (same SHA-256) is
+     * already there, the digest of the extracted copy is stored next to it
+     * so only the packed library is hashed. A new copy is written to a temp
+     * file and atomically moved in place, so JVMs starting concurrently
+     * never load a half written library.
+     */
     private static String extractNativeLibs(String libraryName) {
+        long start = System.nanoTime();
         ClassLoader classLoader = NativeUtils.class.getClassLoader();
 
         String subDir = null;
@@ -30,23 +59,118 @@ public class NativeUtils {
             subDir = libraryName.substring(0, libraryName.indexOf("/"));
 
         createNativeDir(subDir);
-        String pathToLibrary = Constants.NATIVE_LIB_EXTRACTION_DIR + File.separator + libraryName;
+        Path pathToLibrary = Paths.get(Constants.NATIVE_LIB_EXTRACTION_DIR, libraryName);
 
-        try (InputStream in = classLoader.getResourceAsStream(libraryName);
-             FileOutputStream outStream = new FileOutputStream(pathToLibrary)) {
-
-            byte[] buf = new byte[8 * 1024];
-            int len;
-            while ((len = in.read(buf)) != -1)
-                outStream.write(buf, 0, len);
-
-            return new File(pathToLibrary).getAbsolutePath();
+        try {
+            byte[] library;
+            try (InputStream in = classLoader.getResourceAsStream(libraryName)) {
+                if (in == null) throw new IOException("resource not found: " + libraryName);
+                library = readFully(in);
+            }
+            String digest = sha256(library);
+            Path digestFile = pathToLibrary.resolveSibling(pathToLibrary.getFileName() + DIGEST_SUFFIX);
+            if (!Files.isRegularFile(pathToLibrary) || Files.size(pathToLibrary) != library.length
+                    || !digest.equals(readDigest(digestFile))) {
+                Files.createDirectories(pathToLibrary.getParent());
+                Path temp = Files.createTempFile(pathToLibrary.getParent(), pathToLibrary.getFileName().toString(),
+                        TEMP_SUFFIX);
+                Files.write(temp, library);
+                readableByAll(temp);
+                Path loaded = moveInPlace(temp, pathToLibrary);
+                if (!loaded.equals(pathToLibrary)) return loaded.toAbsolutePath().toString();
+                Files.write(digestFile, digest.getBytes(StandardCharsets.US_ASCII));
+            }
+            deleteStaleTemps(pathToLibrary);
+            return pathToLibrary.toAbsolutePath().toString();
         } catch (Exception e) {
             System.out.println(e);
             return null;
+        } finally {
+            extractionNanos = System.nanoTime() - start;
+        }
+    }
+
+    private static Path moveInPlace(Path temp, Path target) throws IOException {
+        try {
+            return Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            return Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // the old copy is in use (windows locks loaded dlls), load the fresh one from its temp file.
+            System.out.println("Exception thrown while replacing " + target + " : " + e);
+            temp.toFile().deleteOnExit();
+            return temp;
         }
     }
 
+    private static String readDigest(Path digestFile) {
+        try {
+            return new String(Files.readAllBytes(digestFile), StandardCharsets.US_ASCII).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes temp copies left by earlier runs which could not replace the
+     * library, or died while extracting it. Copies still loaded by another
+     * JVM can't be deleted on windows and are left for a later run.
+     */
+    private static void deleteStaleTemps(Path library) {
+        String glob = library.getFileName() + "*" + TEMP_SUFFIX;
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(library.getParent(), glob)) {
+            for (Path temp : temps) {
+                try {
+                    if (Files.getLastModifiedTime(temp).toMillis() < staleBefore) Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // in use, see above.
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Exception thrown while deleting stale copies of " + library + " : " + e);
+        }
+    }
+
+    // temp files are created owner only, extracted libraries used to be world readable.
+    private static void readableByAll(Path path) throws IOException {
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rwxr-xr-x"));
+        } catch (UnsupportedOperationException e) {
+            // not a posix file system, windows keeps the default acl.
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+        byte[] buf = new byte[64 * 1024];
+        int len;
+        while ((len = in.read(buf)) != -1)
+            out.write(buf, 0, len);
+        return out.toByteArray();
+    }
+
+    private static String sha256(byte[] data) throws NoSuchAlgorithmException {
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    /**
+     * @return time taken by the last extraction, in nanoseconds.
+     */
+    public static long getExtractionNanos() {
+        return extractionNanos;
+    }
+
+    /**
+     * @return time taken by the last native library load, including the
+     * extraction, in nanoseconds.
+     */
+    public static long getLoadNanos() {
+        return loadNanos;
+    }
+
     public static Object loadLibrary(String libraryName, Class interfaceClass) {
         String absPathToLibrary = extractNativeLibs(libraryName);
         if (absPathToLibrary != null)
@@ -61,34 +185,61 @@ public class NativeUtils {
         }
     }
 
+    /**
+     * Resource path of the toupcam library for the machine's architecture
+     * and OS.
+     * <p>
+     * Machine Architecture: 32-bit or 64-bit
+     * OS: Linux, Windows or Mac
+     */
+    private static String toupcamLibraryName() {
+        if (Platform.is64Bit()) {
+            if (Platform.isLinux()) return Constants.x64_TOUPCAM_SO;
+            else if (Platform.isWindows()) return Constants.x64_TOUPCAM_DLL;
+            else return Constants.x64_TOUPCAM_DYLIB;
+        } else {
+            if (Platform.isLinux()) return Constants.x86_TOUPCAM_SO;
+            else return Constants.x86_TOUPCAM_DLL;
+        }
+    }
+
     /**
      * Checks for the machine's architecture and OS, load
      * and returns machine specific native library.
      * <p>
-     * Machine Architecture: 32-bit or 64-bit
-     * OS: Linux or Windows
+     * The hot calls are direct mapped ({@link DirectToupcam}) unless the
+     * system property {@code toupcam.jna.direct} is false, or the library
+     * lacks one of them, then every call goes through the interface mapping.
      * <p>
      * Note: To load native library JNA requires absolute path.
      *
      * @return
      */
     public static Object getNativeLib() {
-        Object nativeLib;
-        if (Platform.is64Bit()) {
-            if (Platform.isLinux())
-                nativeLib = (LibToupcam) NativeUtils.loadLibrary(Constants.x64_TOUPCAM_SO, LibToupcam.class);
-            else if (Platform.isWindows()) {
-                nativeLib = (LibToupcam) NativeUtils.loadLibrary(Constants.x64_TOUPCAM_DLL, LibToupcam.class);
-            } else {
-                nativeLib = (LibToupcam) NativeUtils.loadLibrary(Constants.x64_TOUPCAM_DYLIB, LibToupcam.class);
-            }
-        } else {
-            if (Platform.isLinux())
-                nativeLib = (LibToupcam) NativeUtils.loadLibrary(Constants.x86_TOUPCAM_SO, LibToupcam.class);
-            else
-                nativeLib = (LibToupcam) NativeUtils.loadLibrary(Constants.x86_TOUPCAM_DLL, LibToupcam.class);
+        long start = System.nanoTime();
+        String absPathToLibrary = extractNativeLibs(toupcamLibraryName());
+        if (absPathToLibrary == null) return null;
+        LibToupcam nativeLib = (LibToupcam) Native.loadLibrary(absPathToLibrary, LibToupcam.class);
+        try {
+            if (!Boolean.parseBoolean(System.getProperty("toupcam.jna.direct", "true"))) return nativeLib;
+            DirectToupcam.register(NativeLibrary.getInstance(absPathToLibrary));
+            return new DirectToupcam(nativeLib);
+        } catch (UnsatisfiedLinkError e) {
+            System.out.println("Exception thrown while direct mapping toupcam: " + e);
+            return nativeLib;
+        } finally {
+            loadNanos = System.nanoTime() - start;
         }
-        return nativeLib;
+    }
+
+    /**
+     * Keeps native threads calling {@code callback} attached to the JVM as
+     * named daemon threads, instead of attaching and detaching them around
+     * every call. Must be set before the callback is handed to native code.
+     */
+    public static <T extends Callback> T attachCallbackThreads(T callback, String threadName) {
+        Native.setCallbackThreadInitializer(callback, new CallbackThreadInitializer(true, false, threadName));
+        return callback;
     }
 
 }
@@ -0,0 +1,33 @@
+package wrapper.toupcam.util;
+
+import org.opencv.core.Core;
+
+/**
+ * Loads the OpenCV native library on first use of a Mat based path,
+ * consumers that never touch a Mat don't pay for it at startup.
+ *
+ * @author arpit
+ */
+public class OpenCvLoader {
+
+    private static class Holder {
+        static final long LOAD_NANOS;
+
+        static {
+            long start = System.nanoTime();
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+            LOAD_NANOS = System.nanoTime() - start;
+            System.out.println("OpenCV loaded in " + LOAD_NANOS / 1000000 + " ms");
+        }
+    }
+
+    /**
+     * Loads OpenCV once, later calls return immediately.
+     *
+     * @return time taken by the load, in nanoseconds.
+     */
+    public static long load() {
+        return Holder.LOAD_NANOS;
+    }
+
+}
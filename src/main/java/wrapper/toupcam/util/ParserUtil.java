@@ -1,8 +1,14 @@
 package wrapper.toupcam.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.sun.jna.Pointer;
 
 import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.models.Model;
+import wrapper.toupcam.models.Resolution;
+import wrapper.toupcam.models.ToupcamInst;
 
 public class ParserUtil {
 
@@ -29,4 +35,54 @@ public class ParserUtil {
 		return header;
 	}
 	
+	/**
+	 * To parse the ToupcamInst array filled by Toupcam_Enum, each entry is
+	 * displayname char[64], id char[64] and a pointer to its model.
+	 * @param structurePointer
+	 * @param count number of entries, as returned by Toupcam_Enum.
+	 * @return
+	 */
+	public static List<ToupcamInst> parseToupcamInsts(Pointer structurePointer, int count){
+		List<ToupcamInst> toupcamInstList = new ArrayList<ToupcamInst>();
+		long entrySize = 64 + 64 + Pointer.SIZE;
+		for (int i = 0; i < count; i++) {
+			long structurePointerOffset = i * entrySize;
+			ToupcamInst toupcamInst = new ToupcamInst();
+			toupcamInst.setDisplayName(structurePointer.getString(structurePointerOffset));
+			structurePointerOffset += 64;
+			toupcamInst.setId(structurePointer.getString(structurePointerOffset));
+			structurePointerOffset += 64;
+			toupcamInst.setModel(parseModel(structurePointer.getPointer(structurePointerOffset)));
+			toupcamInstList.add(toupcamInst);
+		}
+		return toupcamInstList;
+	}
+	
+	private static Model parseModel(Pointer modelPointer){
+		Model model = new Model();
+		int modelPointerOffset = 0;
+		model.setName(modelPointer.getPointer(modelPointerOffset).getString(0));
+		modelPointerOffset += Pointer.SIZE;
+		model.setFlag(modelPointer.getInt(modelPointerOffset));
+		modelPointerOffset += Constants.INT_SIZE;
+		model.setMaxspeed(modelPointer.getInt(modelPointerOffset));
+		modelPointerOffset += Constants.INT_SIZE;
+		model.setStill(modelPointer.getInt(modelPointerOffset));
+		modelPointerOffset += Constants.INT_SIZE;
+		model.setPreview(modelPointer.getInt(modelPointerOffset));
+		modelPointerOffset += Constants.INT_SIZE;
+		
+		int resolutions = (int) Math.max(model.getPreview(), model.getStill());
+		Resolution[] resolutionArray = new Resolution[resolutions];
+		for (int i = 0; i < resolutions; i++) {
+			resolutionArray[i] = new Resolution();
+			resolutionArray[i].width = modelPointer.getInt(modelPointerOffset);
+			modelPointerOffset += Constants.INT_SIZE;
+			resolutionArray[i].height = modelPointer.getInt(modelPointerOffset);
+			modelPointerOffset += Constants.INT_SIZE;
+		}
+		model.setRes(resolutionArray);
+		return model;
+	}
+	
 }
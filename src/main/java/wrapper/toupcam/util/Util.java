@@ -1,17 +1,17 @@
 package wrapper.toupcam.util;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 import java.util.Iterator;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -22,7 +22,10 @@ import javax.imageio.stream.ImageOutputStream;
 import com.sun.jna.Pointer;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import wrapper.toupcam.models.FrameBuffer;
+import wrapper.toupcam.models.ImageHeader;
 import wrapper.toupcam.models.ImageType;
+import wrapper.toupcam.processing.JpegEncoder;
 
 public class Util {
 
@@ -40,19 +43,55 @@ public class Util {
         }).start();
     }
 
+    /**
+     * Thread factory for the wrapper's background threads, daemon so they
+     * never keep the JVM alive on their own.
+     */
+    public static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // shared by callers that don't bring their own pool, see App for per camera pools.
+    private static final FrameBufferPool SHARED_POOL = new FrameBufferPool();
+
     public static Mat convertRGBImagePointerToMat(Pointer imagePointer, int height, int width) {
+        return convertRGBImagePointerToMat(imagePointer, height, width, SHARED_POOL);
+    }
+
+    /**
+     * Copies the frame into the Mat through a pooled buffer, Mat.put
+     * copies again so the buffer goes straight back to the pool.
+     */
+    public static Mat convertRGBImagePointerToMat(Pointer imagePointer, int height, int width,
+                                                  FrameBufferPool pool) {
+        OpenCvLoader.load();
         Mat mat = new Mat(height, width, CvType.CV_8UC3);
-        byte[] bytes = new byte[height * width * 3];
-        imagePointer.read(0, bytes, 0, height * width * 3);
-        mat.put(0, 0, bytes);
-        bytes = null;
+        int length = height * width * 3;
+        FrameBuffer buffer = pool.lease(length, width, height);
+        try {
+            imagePointer.read(0, buffer.getData(), 0, length);
+            mat.put(0, 0, buffer.getData());
+        } finally {
+            buffer.release();
+        }
         return mat;
     }
 
+    // clearBuffer's own, a lease of another shape would flush the shared pool.
+    private static final FrameBufferPool CLEAR_POOL = new FrameBufferPool(1);
+
     public static void clearBuffer(Pointer imagePointer, int expectedLength) {
-        byte[] bytes = new byte[expectedLength];
-        imagePointer.read(0, bytes, 0, expectedLength);
-        bytes = null;
+        FrameBuffer buffer = CLEAR_POOL.lease(expectedLength, -1, -1);
+        try {
+            imagePointer.read(0, buffer.getData(), 0, expectedLength);
+        } finally {
+            buffer.release();
+        }
     }
 
     public static void displayBytes(Pointer pointer) {
@@ -61,11 +100,25 @@ public class Util {
         System.out.println();
     }
 
+    /**
+     * Bulk copies the frame into a {@code TYPE_3BYTE_BGR} image, see {@link FrameConverter}.
+     */
     public static BufferedImage convertImagePointerToImage(Pointer imagePointer, int width, int height) {
-        BufferedImage newbImage = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
-        int[] ints = convertImagePointerToIntArrayABGR(imagePointer, width, height);
-        newbImage.setRGB(0, 0, width, height, ints, 0, width);
-        return newbImage;
+        return FrameConverter.toBGRImage(imagePointer, width, height);
+    }
+
+    /**
+     * Reads only the region {@code roi} of the frame, see {@link FrameConverter#crop(Pointer, ImageHeader, Rectangle)}.
+     */
+    public static BufferedImage convertImagePointerToImage(Pointer imagePointer, ImageHeader header, Rectangle roi) {
+        return FrameConverter.crop(imagePointer, header, roi);
+    }
+
+    /**
+     * Box averaged 1/factor scale image of the frame, see {@link FrameConverter#decimate(Pointer, ImageHeader, int)}.
+     */
+    public static BufferedImage convertImagePointerToImage(Pointer imagePointer, ImageHeader header, int factor) {
+        return FrameConverter.decimate(imagePointer, header, factor);
     }
 
     public static BufferedImage convertIntArrayToImage(int[] imageData, int width, int height) {
@@ -76,18 +129,14 @@ public class Util {
 
     public static byte[] convertImagePointerToByteArray(Pointer imagePointer, int width, int height,
                                                         ImageType imageType) {
-        int[] imageData;
-        if (imageType.equals(ImageType.ABGR)) {
-            imageData = convertImagePointerToIntArrayABGR(imagePointer, width, height);
-        } else {
-            imageData = convertImagePointerToIntArrayBGRA(imagePointer, width, height);
-        }
-        ByteBuffer byteBuffer = ByteBuffer.allocate(imageData.length * 4);
-        IntBuffer intBuffer = byteBuffer.asIntBuffer();
-        intBuffer.put(imageData);
-        return byteBuffer.array();
+        return FrameConverter.toByteArray(imagePointer, width, height, imageType);
     }
 
+    /**
+     * @deprecated one JNA call per channel, kept as the baseline the
+     * {@link FrameConverter} is measured against.
+     */
+    @Deprecated
     public static int[] convertImagePointerToIntArrayABGR(Pointer imagePointer, int width, int height) {
         int counter = 0;
         int[] ints = new int[height * width * 3];
@@ -105,6 +154,10 @@ public class Util {
         return ints;
     }
 
+    /**
+     * @deprecated see {@link #convertImagePointerToIntArrayABGR(Pointer, int, int)}.
+     */
+    @Deprecated
     public static int[] convertImagePointerToIntArrayBGRA(Pointer imagePointer, int width, int height) {
         int counter = 0;
         int[] ints = new int[height * width * 3];
@@ -129,7 +182,7 @@ public class Util {
         graphics.drawImage(image, 0, 0, null);
         graphics.dispose();
 
-        File compressedImageFile = new File(Constants.IMAGES_PATH + "/image" + imageCounter++ + "compress.jpg");
+        File compressedImageFile = new File(Constants.IMAGES_PATH + "/image" + imageCounter.getAndIncrement() + "compress.jpg");
         OutputStream os = new FileOutputStream(compressedImageFile);
 
         Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
@@ -150,35 +203,21 @@ public class Util {
         writer.dispose();
     }
 
-    public static byte[] compressBufferedImageByteArray(BufferedImage image) {
-        BufferedImage imageRGB = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.OPAQUE);
-        Graphics2D graphics = imageRGB.createGraphics();
-        graphics.drawImage(image, 0, 0, null);
-        graphics.dispose();
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
-        ImageWriter writer = (ImageWriter) writers.next();
-
-        ImageOutputStream imageOutputStream = null;
-        try {
-            imageOutputStream = ImageIO.createImageOutputStream(outputStream);
-        } catch (IOException e1) {
-            e1.printStackTrace();
-        }
-        writer.setOutput(imageOutputStream);
-        ImageWriteParam param = writer.getDefaultWriteParam();
-
-        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    // quality 0.5, as compressBufferedImageByteArray always used.
+    private static final JpegEncoder JPEG_ENCODER = new JpegEncoder(0.5f);
 
-        param.setCompressionQuality(0.5f);
+    /**
+     * Encodes through a shared {@link JpegEncoder}, which caches its writer
+     * and buffer per thread. Frames can be encoded without converting to a
+     * BufferedImage first, see {@link JpegEncoder#encode(wrapper.toupcam.models.FrameView)}.
+     */
+    public static byte[] compressBufferedImageByteArray(BufferedImage image) {
         try {
-            writer.write(null, new IIOImage(imageRGB, null, null), param);
+            return JPEG_ENCODER.encode(image);
         } catch (IOException e) {
             e.printStackTrace();
+            return new byte[0];
         }
-
-        writer.dispose();
-        return outputStream.toByteArray();
     }
 
     public static BufferedImage compressBufferedImage(BufferedImage image) {
@@ -192,13 +231,13 @@ public class Util {
         return null;
     }
 
-    private static int imageCounter = 0;
+    private static final AtomicInteger imageCounter = new AtomicInteger();
 
     public static void writeImageToDisk(BufferedImage image) {
         createImageDir();        // prefer displaying images on JFrame, in that case remove this line.
         try {
             ImageIO.write(image, "png", new File(
-                    Constants.IMAGES_PATH + "/image" + imageCounter++ + ".png"));
+                    Constants.IMAGES_PATH + "/image" + imageCounter.getAndIncrement() + ".png"));
         } catch (Exception e) {
             System.out.println("Exception thrown during convertion : " + e);
         }
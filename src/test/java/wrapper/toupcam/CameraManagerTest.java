@@ -0,0 +1,85 @@
+package wrapper.toupcam;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.ImageFormat;
+import wrapper.toupcam.libraries.SyntheticToupcam;
+import wrapper.toupcam.models.Resolution;
+
+public class CameraManagerTest {
+
+    private static final Resolution[] RESOLUTIONS = {new Resolution(320, 240)};
+
+    @Test
+    public void testOpensEveryCameraWithItsOwnPipeline() throws Exception {
+        File root = Files.createTempDirectory("cameras").toFile();
+        CameraManager manager = new CameraManager(new SyntheticToupcam(4, RESOLUTIONS, 100, 0), root);
+
+        List<CameraManager.ManagedCamera> cameras = manager.openAll();
+        assertEquals(4, cameras.size());
+        assertEquals(4, manager.openAll().size());          // already opened ones are kept
+        assertNotSame(cameras.get(0).getToupcam(), cameras.get(1).getToupcam());
+
+        assertTrue(manager.startStreaming(camera -> (FrameViewCallback) frame -> { }).isEmpty());
+        Thread.sleep(300);
+        manager.stopAll(1, TimeUnit.SECONDS);
+
+        for (CameraManager.ManagedCamera camera : cameras)
+            assertTrue(camera.toString(), camera.getFrames() > 5);
+        assertEquals(cameras.stream().mapToLong(CameraManager.ManagedCamera::getFrames).sum(), manager.getTotalFrames());
+        System.out.println(manager);
+    }
+
+    @Test
+    public void testRecordsIntoPerCameraDirectories() throws Exception {
+        File root = Files.createTempDirectory("cameras").toFile();
+        CameraManager manager = new CameraManager(new SyntheticToupcam(2, RESOLUTIONS, 50, 0), root);
+        manager.openAll();
+
+        assertTrue(manager.startRecording(ImageFormat.RAW_BGR).isEmpty());
+        Thread.sleep(200);
+        manager.stopAll(5, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 2; i++) {
+            CameraManager.ManagedCamera camera = manager.getCamera(SyntheticToupcam.idOf(i));
+            assertEquals(new File(root, SyntheticToupcam.idOf(i)), camera.getOutputDirectory());
+            assertEquals(camera.getFrameWriter().getWrittenFrames(), camera.getOutputDirectory().list().length);
+            assertTrue(camera.getFrameWriter().getWrittenFrames() > 0);
+        }
+    }
+
+    @Test
+    public void testClosedCamerasCanBeOpenedAgain() throws Exception {
+        File root = Files.createTempDirectory("cameras").toFile();
+        CameraManager manager = new CameraManager(new SyntheticToupcam(2, RESOLUTIONS, 50, 0), root);
+        List<CameraManager.ManagedCamera> cameras = manager.openAll();
+        assertTrue(manager.startRecording(ImageFormat.RAW_BGR).isEmpty());
+        Thread.sleep(100);
+        manager.closeAll(5, TimeUnit.SECONDS);
+
+        assertTrue(manager.getCameras().isEmpty());
+        for (CameraManager.ManagedCamera camera : cameras) {
+            App app = (App) camera.getToupcam();
+            assertNull(app.getCamHandler());
+            assertNull(app.getMetrics().getObjectName());
+        }
+
+        // the handles were released, so the same cameras open again.
+        List<CameraManager.ManagedCamera> reopened = manager.openAll();
+        assertEquals(2, reopened.size());
+        assertNotSame(cameras.get(0).getToupcam(), reopened.get(0).getToupcam());
+        assertTrue(manager.startStreaming(camera -> (FrameViewCallback) frame -> { }).isEmpty());
+        Thread.sleep(200);
+        manager.closeAll(1, TimeUnit.SECONDS);
+        for (CameraManager.ManagedCamera camera : reopened) assertTrue(camera.toString(), camera.getFrames() > 0);
+    }
+
+}
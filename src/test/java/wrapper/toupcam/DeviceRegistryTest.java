@@ -0,0 +1,63 @@
+package wrapper.toupcam;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import wrapper.toupcam.enumerations.Flag;
+import wrapper.toupcam.libraries.SyntheticToupcam;
+import wrapper.toupcam.models.DeviceCapabilities;
+import wrapper.toupcam.models.Resolution;
+import wrapper.toupcam.models.ToupcamInst;
+
+public class DeviceRegistryTest {
+
+    private static final Resolution[] RESOLUTIONS = {new Resolution(640, 480), new Resolution(320, 240)};
+
+    @Test
+    public void testEnumerationIsCachedUntilHotPlug() {
+        SyntheticToupcam library = new SyntheticToupcam(2, RESOLUTIONS, 30, 0);
+        DeviceRegistry registry = DeviceRegistry.of(library);
+        assertSame(registry, DeviceRegistry.of(library));
+        registry.registerHotPlug();
+
+        assertEquals(2, registry.count());
+        assertEquals(SyntheticToupcam.idOf(1), registry.getToupcams().get(1).getId());
+        assertEquals(1, registry.getEnumerations());
+
+        library.plugIn();
+        assertEquals(3, registry.count());
+        assertEquals(3, registry.getToupcams().size());
+        assertEquals(2, registry.getEnumerations());
+    }
+
+    @Test
+    public void testCallersCantChangeTheCache() {
+        DeviceRegistry registry = DeviceRegistry.of(new SyntheticToupcam(1, RESOLUTIONS, 30, 0));
+        ToupcamInst toupcam = registry.getToupcams().get(0);
+        toupcam.id = "changed";
+        toupcam.model.name = "changed";
+        toupcam.model.res[0].width = 1;
+        registry.getToupcams().clear();
+
+        ToupcamInst cached = registry.getToupcams().get(0);
+        assertEquals(SyntheticToupcam.idOf(0), cached.id);
+        assertEquals("SyntheticCam", cached.model.name);
+        assertEquals(640, cached.model.res[0].width);
+        assertEquals(1, registry.getEnumerations());
+    }
+
+    @Test
+    public void testCapabilities() {
+        DeviceRegistry registry = DeviceRegistry.of(new SyntheticToupcam(1, RESOLUTIONS, 30, 0));
+        DeviceCapabilities capabilities = registry.getCapabilities(SyntheticToupcam.idOf(0));
+
+        assertEquals("SyntheticCam", capabilities.getName());
+        assertTrue(capabilities.has(Flag.FLAG_TRIGGER));
+        assertFalse(capabilities.has(Flag.FLAG_MONO));
+        assertEquals(2, capabilities.getResolutionCount());
+        assertEquals(320, capabilities.getResolution(1).getWidth());
+        assertNull(registry.getCapabilities("missing"));
+    }
+
+}
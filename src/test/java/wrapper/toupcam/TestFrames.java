@@ -0,0 +1,52 @@
+package wrapper.toupcam;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntUnaryOperator;
+
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.util.FrameConverter;
+
+/**
+ * Frames as the SDK hands them to the callbacks, in native memory with
+ * rows padded to 4 bytes, for the tests.
+ */
+public final class TestFrames {
+
+    private TestFrames() {}
+
+    public static ImageHeader header(int width, int height, int bitcount) {
+        ImageHeader header = new ImageHeader();
+        header.setWidth(width);
+        header.setHeight(height);
+        header.setBitcount(bitcount);
+        header.setImageSize(FrameConverter.frameSize(width, height, bitcount));
+        return header;
+    }
+
+    /**
+     * @param byteAt value of every byte of the frame, by its offset.
+     */
+    public static FrameView frame(int width, int height, int bitcount, IntUnaryOperator byteAt) {
+        ImageHeader header = header(width, height, bitcount);
+        ByteBuffer data = ByteBuffer.allocateDirect(header.getImageSize());
+        for (int i = 0; i < header.getImageSize(); i++) data.put(i, (byte) byteAt.applyAsInt(i));
+        return new FrameView().wrap(data, header, false);
+    }
+
+    /**
+     * @return a BGR frame whose first byte is {@code marker}, to tell frames
+     * apart once they went through a queue.
+     */
+    public static FrameView marked(int width, int height, int marker) {
+        return frame(width, height, 24, i -> i == 0 ? marker : 0);
+    }
+
+    /**
+     * @return a BGR frame of a single grey.
+     */
+    public static FrameView filled(int width, int height, int grey) {
+        return frame(width, height, 24, i -> grey);
+    }
+
+}
@@ -0,0 +1,138 @@
+package wrapper.toupcam.libraries;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.Event;
+import wrapper.toupcam.enumerations.Options;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.Resolution;
+import wrapper.toupcam.streaming.PullModeEngine;
+import wrapper.toupcam.util.Constants;
+
+public class SyntheticToupcamTest {
+
+    private static final Resolution[] RESOLUTIONS = {new Resolution(320, 240), new Resolution(160, 120)};
+
+    SyntheticToupcam camera;
+    Pointer handler;
+
+    @Before
+    public void setup() {
+        camera = new SyntheticToupcam(2, RESOLUTIONS, 200, 1);
+        handler = camera.Toupcam_Open(null);
+    }
+
+    @After
+    public void tearDown() {
+        camera.Toupcam_Stop(handler);
+    }
+
+    @Test
+    public void testEnumLayout() {
+        Memory memory = new Memory(Constants.MEM_SIZE_FOR_TOUPCAMINST);
+        assertEquals(2, camera.Toupcam_Enum(memory));
+
+        int entry = 64 + 64 + Pointer.SIZE;
+        assertEquals("synthetic-1", memory.getString(entry + 64));
+        Pointer model = memory.getPointer(entry + 128);
+        assertEquals("SyntheticCam", model.getPointer(0).getString(0));
+        assertEquals(2, model.getInt(Pointer.SIZE + 8));
+        assertEquals(160, model.getInt(Pointer.SIZE + 16 + 8));
+    }
+
+    @Test
+    public void testOpenById() {
+        assertNull(camera.Toupcam_Open(SyntheticToupcam.idOf(0)));       // already opened in setup
+        assertNotNull(camera.Toupcam_Open(SyntheticToupcam.idOf(1)));
+        assertNull(camera.Toupcam_Open("missing"));
+    }
+
+    @Test
+    public void testPushModeDeliversFrames() throws Exception {
+        CountDownLatch frames = new CountDownLatch(20);
+        AtomicInteger wrongSize = new AtomicInteger();
+        assertEquals(SyntheticToupcam.S_OK, camera.Toupcam_StartPushMode(handler,
+                (imagePointer, imageMetaData, isSnapshot) -> {
+                    if (imageMetaData.getInt(4) != 320 || imageMetaData.getInt(8) != 240) wrongSize.incrementAndGet();
+                    frames.countDown();
+                }, Pointer.NULL));
+
+        assertTrue(frames.await(5, TimeUnit.SECONDS));
+        assertEquals(0, wrongSize.get());
+    }
+
+    @Test
+    public void testTriggerModeWaitsForTriggers() throws Exception {
+        AtomicInteger frames = new AtomicInteger();
+        camera.Toupcam_put_Option(handler, Options.OPTION_TRIGGER.getValue(), 1);
+        camera.Toupcam_StartPushMode(handler, (imagePointer, imageMetaData, isSnapshot) -> frames.incrementAndGet(),
+                Pointer.NULL);
+
+        Thread.sleep(100);
+        assertEquals(0, frames.get());
+        camera.Toupcam_Trigger(handler, 3);
+        Thread.sleep(200);
+        assertEquals(3, frames.get());
+    }
+
+    @Test
+    public void testPullModeWithSnap() throws Exception {
+        CountDownLatch previews = new CountDownLatch(5), stills = new CountDownLatch(1);
+        PullModeEngine engine = new PullModeEngine(camera, handler, 24, RESOLUTIONS, new FrameViewCallback() {
+            @Override
+            public void onReceiveFrame(FrameView frame) {
+                if (frame.isSnapshot()) {
+                    if (frame.getWidth() == 160) stills.countDown();
+                } else if (frame.getWidth() == 320) previews.countDown();
+            }
+        });
+        camera.Toupcam_StartPullModeWithCallback(handler, engine, 0);
+        camera.Toupcam_Snap(handler, 1);
+
+        assertTrue(previews.await(5, TimeUnit.SECONDS));
+        assertTrue(stills.await(5, TimeUnit.SECONDS));
+        engine.stop();
+    }
+
+    @Test
+    public void testUnpluggingStopsAnOpenedCamera() throws Exception {
+        Pointer last = camera.Toupcam_Open(SyntheticToupcam.idOf(1));
+        AtomicInteger frames = new AtomicInteger();
+        AtomicInteger disconnected = new AtomicInteger();
+        camera.Toupcam_StartPullModeWithCallback(last, event -> {
+            if (event == Event.EVENT_DISCONNECTED.getValue()) disconnected.incrementAndGet();
+            else frames.incrementAndGet();
+        }, 0);
+        camera.Toupcam_StartPushMode(handler, (imagePointer, imageMetaData, isSnapshot) -> { }, Pointer.NULL);
+        Thread.sleep(50);
+        assertTrue(frames.get() > 0);
+
+        camera.plugOut();
+        int delivered = frames.get();
+        assertEquals(1, disconnected.get());
+        assertEquals(SyntheticToupcam.E_INVALIDARG, camera.Toupcam_PullImage(last, null, 24, null, null));
+        assertEquals(SyntheticToupcam.E_INVALIDARG, camera.Toupcam_Trigger(last, 1));
+        assertNull(camera.Toupcam_Open(SyntheticToupcam.idOf(1)));
+        Thread.sleep(50);
+        assertEquals(delivered, frames.get());
+
+        // the camera still plugged in streams on.
+        long generated = camera.getGeneratedFrames();
+        Thread.sleep(50);
+        assertTrue(camera.getGeneratedFrames() > generated);
+        camera.Toupcam_Close(last);
+    }
+
+}
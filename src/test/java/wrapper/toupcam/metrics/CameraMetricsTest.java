@@ -0,0 +1,88 @@
+package wrapper.toupcam.metrics;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import wrapper.toupcam.App;
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.libraries.SyntheticToupcam;
+import wrapper.toupcam.models.ImageType;
+import wrapper.toupcam.models.Resolution;
+
+public class CameraMetricsTest {
+
+    @Test
+    public void testLateFrames() {
+        CameraMetrics metrics = new CameraMetrics("late");
+        long now = 0;
+        for (int i = 0; i < 10; i++) metrics.recordFrame(now += 10000000);
+        metrics.recordFrame(now += 50000000);
+
+        assertEquals(11, metrics.getFramesReceived());
+        assertEquals(1, metrics.getLateFrames());
+        assertEquals(50, metrics.getFrameIntervalMaxMillis(), 0.01);
+    }
+
+    @Test
+    public void testRemovedDropSourceStillCounts() {
+        CameraMetrics metrics = new CameraMetrics("drops");
+        AtomicLong dropped = new AtomicLong(3);
+        LongSupplier source = dropped::get;
+        metrics.addDropSource(source);
+        metrics.addDropSource(() -> 2);
+        assertEquals(5, metrics.getDroppedFrames());
+
+        metrics.removeDropSource(source);
+        dropped.set(100);
+        assertEquals(5, metrics.getDroppedFrames());
+        metrics.removeDropSource(source);
+        assertEquals(5, metrics.getDroppedFrames());
+    }
+
+    @Test
+    public void testCloseOnlyUnregistersOwnMetrics() throws Exception {
+        SyntheticToupcam camera = new SyntheticToupcam(1, new Resolution[]{new Resolution(160, 120)}, 100, 0);
+        App first = new App(camera), second = new App(camera);
+        ObjectName name = second.getMetrics().getObjectName();
+        assertEquals(name, first.getMetrics().getObjectName());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        first.close();
+        assertTrue(server.isRegistered(name));
+        second.getMetrics().recordFrame(1);
+        assertEquals(1L, server.getAttribute(name, "FramesReceived"));
+        second.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testStreamingCameraIsExposedOverJmx() throws Exception {
+        App app = new App(new SyntheticToupcam(1, new Resolution[]{new Resolution(160, 120)}, 100, 0),
+                SyntheticToupcam.idOf(0));
+        app.startStreaming((FrameViewCallback) frame -> frame.toByteArray(ImageType.BGR));
+        Thread.sleep(300);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = app.getMetrics().getObjectName();
+        assertEquals(Boolean.TRUE, server.getAttribute(name, "Streaming"));
+        assertTrue((Long) server.getAttribute(name, "FramesReceived") > 10);
+        assertEquals(10, (Double) server.getAttribute(name, "FrameIntervalP50Millis"), 2.5);
+        assertTrue((Double) server.getAttribute(name, "FramesPerSecond") > 50);
+        assertTrue(app.getMetrics().getConversionTimes().getCount() > 0);
+        assertEquals(app.getMetrics().getFramesReceived(), app.getMetrics().getCallbackTimes().getCount(), 1);
+
+        app.stopStreaming();
+        assertEquals(Boolean.FALSE, server.getAttribute(name, "Streaming"));
+        app.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+}
@@ -0,0 +1,33 @@
+package wrapper.toupcam.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverTheirValues() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1000, 33333333, Long.MAX_VALUE / 3}) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.highestValue(index));
+            if (index > 0) assertTrue(value + " below its bucket", value > LatencyHistogram.highestValue(index - 1));
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) histogram.record(i * 1000);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500000, histogram.getPercentile(50), 500000 * 0.125);
+        assertEquals(990000, histogram.getPercentile(99), 990000 * 0.125);
+        assertEquals(1000000, histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+}
@@ -0,0 +1,71 @@
+package wrapper.toupcam.models;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.Test;
+
+import com.sun.jna.Memory;
+
+import wrapper.toupcam.callbacks.ByteImageStreamCallback;
+
+public class FrameViewTest {
+
+    private static ImageHeader header(int width, int height) {
+        ImageHeader header = new ImageHeader();
+        header.setWidth(width);
+        header.setHeight(height);
+        header.setBitcount(24);
+        return header;
+    }
+
+    private static ByteBuffer nativeFrame(int size) {
+        Memory memory = new Memory(size);
+        for (int i = 0; i < size; i++) memory.setByte(i, (byte) i);
+        return memory.getByteBuffer(0, size);
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testViewIsReadOnly() {
+        FrameView view = new FrameView().wrap(nativeFrame(4 * 2 * 3), header(4, 2), false);
+        assertTrue(view.getBuffer().isDirect());
+        view.getBuffer().put((byte) 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testViewIsInvalidAfterCallback() {
+        FrameView view = new FrameView().wrap(nativeFrame(4 * 2 * 3), header(4, 2), false);
+        view.invalidate();
+        view.getBuffer();
+    }
+
+    @Test
+    public void testCopySurvivesInvalidate() {
+        FrameView view = new FrameView().wrap(nativeFrame(4 * 2 * 3), header(4, 2), true);
+        byte[] copy = view.copy();
+        view.invalidate();
+        assertEquals(24, copy.length);
+        assertEquals(23, copy[23]);
+    }
+
+    @Test
+    public void testByteCallbackBuiltOnView() {
+        final byte[][] received = new byte[1][];
+        ByteImageStreamCallback callback = new ByteImageStreamCallback() {
+            @Override
+            public void onReceivePreviewImage(byte[] imageBytes, ImageHeader imageHeader) {
+                received[0] = imageBytes;
+            }
+
+            @Override
+            public void onReceiveStillImage(byte[] imageBytes, ImageHeader imageHeader) {
+                fail("not a snapshot");
+            }
+        };
+        callback.onReceiveFrame(new FrameView().wrap(nativeFrame(4 * 2 * 3), header(4, 2), false));
+        assertEquals(4 * 2 * 4, received[0].length);
+    }
+
+}
@@ -0,0 +1,166 @@
+package wrapper.toupcam.processing;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import wrapper.toupcam.enumerations.BayerPattern;
+import wrapper.toupcam.enumerations.DemosaicAlgorithm;
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.models.RawFormat;
+
+/**
+ * Reference images are generated here: a known BGR image is mosaiced with
+ * the pattern under test and the demosaiced result compared with it.
+ */
+public class DemosaicEngineTest {
+
+    private static final int WIDTH = 64, HEIGHT = 48;
+
+    private interface Image {
+        int channel(int x, int y, int colour);
+    }
+
+    // linear in x and y, which both algorithms reconstruct exactly away from the border.
+    private static final Image GRADIENT = (x, y, colour) ->
+            colour == BayerPattern.RED ? 3 * x : colour == BayerPattern.GREEN ? 2 * x + 2 * y : 5 * y;
+
+    // grey vertical edge, where bilinear leaves a zipper.
+    private static final Image EDGE = (x, y, colour) -> x < WIDTH / 2 ? 40 : 200;
+
+    private static byte[] mosaic(Image image, BayerPattern pattern, int width, int height, boolean wide) {
+        byte[] raw = new byte[width * height * (wide ? 2 : 1)];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++) {
+                int value = image.channel(x, y, pattern.colorAt(x, y));
+                int index = y * width + x;
+                if (wide) {
+                    raw[2 * index] = (byte) value;
+                    raw[2 * index + 1] = (byte) (value >> 8);
+                } else raw[index] = (byte) value;
+            }
+        return raw;
+    }
+
+    private static int maxInteriorError(Image image, byte[] bgr, int border) {
+        int worst = 0;
+        for (int y = border; y < HEIGHT - border; y++)
+            for (int x = border; x < WIDTH - border; x++) {
+                int index = (y * WIDTH + x) * 3;
+                worst = Math.max(worst, Math.abs((bgr[index] & 0xff) - image.channel(x, y, BayerPattern.BLUE)));
+                worst = Math.max(worst, Math.abs((bgr[index + 1] & 0xff) - image.channel(x, y, BayerPattern.GREEN)));
+                worst = Math.max(worst, Math.abs((bgr[index + 2] & 0xff) - image.channel(x, y, BayerPattern.RED)));
+            }
+        return worst;
+    }
+
+    private static int pixelsOff(Image image, byte[] bgr, int tolerance) {
+        int off = 0;
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                for (int c = 0; c < 3; c++) {
+                    int colour = c == 0 ? BayerPattern.BLUE : c == 1 ? BayerPattern.GREEN : BayerPattern.RED;
+                    if (Math.abs((bgr[(y * WIDTH + x) * 3 + c] & 0xff) - image.channel(x, y, colour)) > tolerance)
+                        off++;
+                }
+        return off;
+    }
+
+    @Test
+    public void testGradientIsReconstructedForEveryPattern() {
+        DemosaicEngine engine = new DemosaicEngine(new ForkJoinPool(4), 8);
+        for (BayerPattern pattern : BayerPattern.values()) {
+            byte[] raw = mosaic(GRADIENT, pattern, WIDTH, HEIGHT, false);
+            for (DemosaicAlgorithm algorithm : DemosaicAlgorithm.values()) {
+                byte[] bgr = new byte[WIDTH * HEIGHT * 3];
+                engine.demosaic(raw, WIDTH, HEIGHT, pattern, 8, algorithm, bgr);
+                assertTrue(pattern + " " + algorithm, maxInteriorError(GRADIENT, bgr, 2) <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeAwareAvoidsZipperOnEdges() {
+        DemosaicEngine engine = new DemosaicEngine();
+        byte[] raw = mosaic(EDGE, BayerPattern.RGGB, WIDTH, HEIGHT, false);
+        byte[] bilinear = new byte[WIDTH * HEIGHT * 3], edgeAware = new byte[WIDTH * HEIGHT * 3];
+        engine.demosaic(raw, WIDTH, HEIGHT, BayerPattern.RGGB, 8, DemosaicAlgorithm.BILINEAR, bilinear);
+        engine.demosaic(raw, WIDTH, HEIGHT, BayerPattern.RGGB, 8, DemosaicAlgorithm.EDGE_AWARE, edgeAware);
+
+        assertTrue(pixelsOff(EDGE, bilinear, 8) > 0);
+        assertEquals(0, pixelsOff(EDGE, edgeAware, 8));
+    }
+
+    @Test
+    public void testSixteenBitOutputIsScaled() {
+        Image flat = (x, y, colour) -> 0x0abc;
+        byte[] raw = mosaic(flat, BayerPattern.GBRG, WIDTH, HEIGHT, true);
+        short[] bgr = new short[WIDTH * HEIGHT * 3];
+        new DemosaicEngine().demosaic(raw, WIDTH, HEIGHT, BayerPattern.GBRG, 12, DemosaicAlgorithm.EDGE_AWARE, bgr);
+        for (short sample : bgr) assertEquals(0xabc0, sample & 0xffff);
+    }
+
+    @Test
+    public void testNativeAndHeapFramesMatchArrays() {
+        byte[] raw = mosaic(GRADIENT, BayerPattern.RGGB, WIDTH, HEIGHT, false);
+        byte[] expected = new byte[WIDTH * HEIGHT * 3];
+        DemosaicEngine engine = new DemosaicEngine();
+        engine.demosaic(raw, WIDTH, HEIGHT, BayerPattern.RGGB, 8, DemosaicAlgorithm.EDGE_AWARE, expected);
+
+        ImageHeader header = new ImageHeader();
+        header.setWidth(WIDTH);
+        header.setHeight(HEIGHT);
+        header.setBitcount(8);
+        header.setImageSize(raw.length);
+        RawFormat format = new RawFormat(BayerPattern.RGGB.getFourCC(), 8, HResult.S_OK);
+        ByteBuffer direct = ByteBuffer.allocateDirect(raw.length);
+        direct.put(raw).flip();
+        FrameView frame = new FrameView().wrap(direct, header, false);
+        for (int i = 0; i < 2; i++)
+            assertTrue(Arrays.equals(expected, engine.demosaic8(frame, format, DemosaicAlgorithm.EDGE_AWARE)));
+        FrameView heap = new FrameView().wrap(ByteBuffer.wrap(raw), header, false);
+        assertTrue(Arrays.equals(expected, engine.demosaic8(heap, format, DemosaicAlgorithm.EDGE_AWARE)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFramesUnderThreeByThreeAreRejected() {
+        new DemosaicEngine().demosaic(new byte[4], 2, 2, BayerPattern.RGGB, 8, DemosaicAlgorithm.BILINEAR,
+                new byte[2 * 2 * 3]);
+    }
+
+    @Test
+    public void testFourCC() {
+        assertEquals(BayerPattern.GBRG, BayerPattern.key('G' | 'B' << 8 | 'R' << 16 | 'G' << 24));
+        assertNull(BayerPattern.key('Y' | '8' << 8 | '0' << 16 | '0' << 24));
+    }
+
+    @Test
+    public void testSameOutputOnAnyNumberOfThreads() {
+        int width = 259, height = 194;
+        byte[] raw = new byte[width * height];
+        for (int i = 0; i < raw.length; i++) raw[i] = (byte) (i * 7);
+
+        for (DemosaicAlgorithm algorithm : DemosaicAlgorithm.values()) {
+            byte[] expected = null;
+            for (int threads : new int[]{1, 2, 4}) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    // one strip on a single thread, against short strips split across the others.
+                    byte[] bgr = new byte[width * height * 3];
+                    new DemosaicEngine(pool, threads == 1 ? height : 16).demosaic(raw, width, height, BayerPattern.RGGB, 8, algorithm, bgr);
+                    if (expected == null) expected = bgr;
+                    else assertArrayEquals(algorithm + " on " + threads + " threads", expected, bgr);
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+}
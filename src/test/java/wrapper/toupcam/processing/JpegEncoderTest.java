@@ -0,0 +1,132 @@
+package wrapper.toupcam.processing;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import wrapper.toupcam.TestFrames;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.util.FrameBufferPool;
+import wrapper.toupcam.util.FrameConverter;
+
+public class JpegEncoderTest {
+
+    // left half blue, right half red, rows padded as the SDK pads them.
+    private static FrameView frame(int width, int height, int bitcount) {
+        int stride = FrameConverter.stride(width, bitcount), bytesPerPixel = bitcount / 8;
+        return TestFrames.frame(width, height, bitcount, i -> {
+            int column = i % stride;
+            // garbage in the padding must not show up.
+            if (column >= width * bytesPerPixel) return 0x7f;
+            boolean left = column / bytesPerPixel < width / 2;
+            if (bitcount == 8) return left ? 40 : 200;
+            switch (column % bytesPerPixel) {
+                case 0: return left ? 255 : 0;
+                case 2: return left ? 0 : 255;
+                default: return 0;
+            }
+        });
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws Exception {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    private static void assertColor(int expected, int actual) {
+        for (int shift = 0; shift < 24; shift += 8)
+            assertEquals(expected >> shift & 0xff, actual >> shift & 0xff, 24.0);
+    }
+
+    @Test
+    public void testEncodesPaddedBGRFrames() throws Exception {
+        JpegEncoder encoder = new JpegEncoder(0.95f);
+        FrameView view = frame(66, 18, 24);
+        BufferedImage image = decode(encoder.encode(view));
+
+        assertEquals(66, image.getWidth());
+        assertEquals(18, image.getHeight());
+        assertColor(0x0000ff, image.getRGB(8, 9));
+        assertColor(0xff0000, image.getRGB(58, 9));
+    }
+
+    @Test
+    public void testEncodesGreyAndBGRXFrames() throws Exception {
+        JpegEncoder encoder = new JpegEncoder(0.95f);
+        BufferedImage grey = decode(encoder.encode(frame(30, 16, 8)));
+        assertEquals(1, grey.getRaster().getNumBands());
+        assertEquals(40, grey.getRaster().getSample(4, 8, 0), 4.0);
+        assertEquals(200, grey.getRaster().getSample(26, 8, 0), 4.0);
+
+        BufferedImage bgrx = decode(encoder.encode(frame(32, 16, 32)));
+        assertColor(0x0000ff, bgrx.getRGB(4, 8));
+        assertColor(0xff0000, bgrx.getRGB(28, 8));
+    }
+
+    @Test
+    public void testQualityChangesSize() throws Exception {
+        FrameView view = frame(64, 64, 24);
+        byte[] noise = new byte[view.getSize()];
+        new Random(3).nextBytes(noise);
+        ByteBuffer data = ByteBuffer.allocateDirect(noise.length).put(noise);
+        data.flip();
+        view.wrap(data, view.getHeader(), false);
+        assertTrue(new JpegEncoder(0.3f).encode(view).length < new JpegEncoder(0.95f).encode(view).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInvalidQuality() {
+        new JpegEncoder(1.5f);
+    }
+
+    @Test
+    public void testFrameEncodesMatchViewEncodes() throws Exception {
+        JpegEncoder encoder = new JpegEncoder(0.8f);
+        FrameView view = frame(66, 18, 24);
+        Frame frame = Frame.copyOf(view, new FrameBufferPool(1));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int length = encoder.encode(frame, out);
+
+        assertArrayEquals(encoder.encode(view), out.toByteArray());
+        assertArrayEquals(out.toByteArray(), encoder.encode(frame));
+        assertEquals(length, out.size());
+    }
+
+    @Test
+    public void testEncodesImagesWithAlpha() throws Exception {
+        BufferedImage argb = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        argb.setRGB(3, 3, 0xff00ff00);
+        BufferedImage image = decode(new JpegEncoder(0.9f).encode(argb));
+        assertEquals(16, image.getWidth());
+    }
+
+    @Test
+    public void testSubmittedFramesAreEncodedInParallel() throws Exception {
+        JpegEncoder encoder = new JpegEncoder(0.8f, 4);
+        FrameBufferPool pool = new FrameBufferPool(4);
+        FrameView view = frame(320, 240, 24);
+        List<CompletableFuture<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < 32; i++) results.add(encoder.submit(Frame.copyOf(view, pool)));
+        for (CompletableFuture<byte[]> result : results)
+            assertEquals(320, decode(result.get(10, TimeUnit.SECONDS)).getWidth());
+
+        encoder.close();
+        assertTrue(encoder.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(32, encoder.getEncodedFrames());
+        assertTrue(encoder.getFramesPerCoreSecond() > 0);
+        System.out.println(encoder + " on " + Runtime.getRuntime().availableProcessors() + " cores");
+    }
+
+}
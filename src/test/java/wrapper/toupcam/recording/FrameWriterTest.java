@@ -0,0 +1,82 @@
+package wrapper.toupcam.recording;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import wrapper.toupcam.TestFrames;
+import wrapper.toupcam.enumerations.ImageFormat;
+import wrapper.toupcam.enumerations.OverflowPolicy;
+import wrapper.toupcam.models.FrameView;
+
+public class FrameWriterTest {
+
+    private File directory;
+
+    @Before
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("frame-writer").toFile();
+    }
+
+    private static FrameView frame(int width, int height, int marker) {
+        return TestFrames.frame(width, height, 24, i -> marker + i);
+    }
+
+    @Test
+    public void testRawFramesAreNamedInSequence() throws Exception {
+        FrameWriter writer = new FrameWriter(directory, ImageFormat.RAW_BGR, 0.9f, FileNamer.sequential("frame"),
+                64, 4, OverflowPolicy.BLOCK);
+        for (int i = 0; i < 40; i++) writer.onReceiveFrame(frame(16, 8, i));
+        assertTrue(writer.close(10, TimeUnit.SECONDS));
+
+        String[] names = directory.list();
+        Arrays.sort(names);
+        assertEquals(40, names.length);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(String.format("frame%09d.bgr", i), names[i]);
+            byte[] bytes = Files.readAllBytes(new File(directory, names[i]).toPath());
+            assertEquals(16 * 8 * 3, bytes.length);
+            assertEquals((byte) i, bytes[0]);
+        }
+        assertEquals(40, writer.getWrittenFrames());
+        assertEquals(0, writer.getBacklog());
+    }
+
+    @Test
+    public void testJpegFramesDecode() throws Exception {
+        FrameWriter writer = new FrameWriter(directory, ImageFormat.JPEG, 0.7f, FileNamer.sequential("image"),
+                8, 2, OverflowPolicy.BLOCK);
+        for (int i = 0; i < 4; i++) writer.onReceiveFrame(frame(64, 48, i));
+        assertTrue(writer.close(10, TimeUnit.SECONDS));
+
+        BufferedImage image = ImageIO.read(new File(directory, String.format("image%09d.jpg", 3)));
+        assertEquals(64, image.getWidth());
+        assertEquals(48, image.getHeight());
+        System.out.println(writer);
+    }
+
+    @Test
+    public void testFailedWriteLeavesNoTempFile() throws Exception {
+        FrameWriter writer = new FrameWriter(directory, ImageFormat.JPEG, 0.7f, FileNamer.sequential("image"),
+                8, 2, OverflowPolicy.BLOCK);
+        FrameView truncated = frame(64, 48, 0);
+        // header claims fewer bytes than 64x48 needs, encoding fails after the file is opened.
+        truncated.getHeader().setImageSize(12);
+        writer.onReceiveFrame(truncated);
+        writer.onReceiveFrame(frame(64, 48, 1));
+        assertTrue(writer.close(10, TimeUnit.SECONDS));
+
+        assertEquals(1, writer.getFailedFrames());
+        assertEquals(Arrays.asList(String.format("image%09d.jpg", 1)), Arrays.asList(directory.list()));
+    }
+
+}
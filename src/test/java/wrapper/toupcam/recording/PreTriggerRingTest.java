@@ -0,0 +1,91 @@
+package wrapper.toupcam.recording;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import wrapper.toupcam.TestFrames;
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.models.FrameView;
+
+public class PreTriggerRingTest {
+
+    private static final int SIZE = 8 * 4 * 3;
+
+    private static FrameView frame(int marker) {
+        return TestFrames.marked(8, 4, marker);
+    }
+
+    @Test
+    public void testDumpsHistoryAndPostEventFrames() throws Exception {
+        PreTriggerRing ring = new PreTriggerRing(4, 1 << 20);
+        for (int i = 0; i < 10; i++) ring.onReceiveFrame(frame(i));
+        assertEquals(4, ring.getBufferedFrames());
+
+        List<Integer> markers = new CopyOnWriteArrayList<>();
+        // holds the dump until every frame has arrived, so 12 and 13 arrive while dumping.
+        CountDownLatch arrived = new CountDownLatch(1);
+        FrameViewCallback sink = frame -> {
+            try {
+                arrived.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            markers.add((int) frame.getBuffer().get(0));
+        };
+        CompletableFuture<Integer> result = ring.freeze(2, sink);
+        for (int i = 10; i < 14; i++) ring.onReceiveFrame(frame(i));
+        arrived.countDown();
+
+        assertEquals(6, (int) result.get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(6, 7, 8, 9, 10, 11), markers);
+        assertEquals(2, ring.getMissedFrames());
+        assertFalse(ring.isDumping());
+        assertEquals(0, ring.getBufferedFrames());
+    }
+
+    @Test
+    public void testMemoryBudgetBoundsCapacity() {
+        PreTriggerRing ring = new PreTriggerRing(100, SIZE * 3);
+        for (int i = 0; i < 10; i++) ring.onReceiveFrame(frame(i));
+        assertEquals(3, ring.getCapacity());
+        assertEquals(SIZE * 3, ring.getMemoryBytes());
+    }
+
+    @Test
+    public void testPostEventSlotsShareTheBudget() {
+        PreTriggerRing ring = new PreTriggerRing(2, 2, SIZE * 3, 0, TimeUnit.SECONDS);
+        ring.onReceiveFrame(frame(0));
+        assertEquals(2, ring.getCapacity());
+        assertEquals(1, ring.getPostEventSlots());
+        assertEquals(SIZE * 3, ring.getMemoryBytes());
+        try {
+            ring.freeze(2, (FrameViewCallback) frame -> {});
+            fail("two post-event frames don't fit");
+        } catch (IllegalArgumentException e) {
+            assertFalse(ring.isDumping());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBudgetOverTwoGigabytesIsRejected() {
+        // 200 full frames of a 20 megapixel sensor.
+        new PreTriggerRing(200, 200L * 5440 * 3648 * 3);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSingleDumpAtATime() {
+        PreTriggerRing ring = new PreTriggerRing(4, 1 << 20);
+        ring.onReceiveFrame(frame(0));
+        ring.freeze(1, (FrameViewCallback) frame -> {});
+        ring.freeze(1, (FrameViewCallback) frame -> {});
+    }
+
+}
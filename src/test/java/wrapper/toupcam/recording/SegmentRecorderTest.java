@@ -0,0 +1,213 @@
+package wrapper.toupcam.recording;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import wrapper.toupcam.App;
+import wrapper.toupcam.TestFrames;
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.enumerations.VideoFormat;
+import wrapper.toupcam.libraries.SyntheticToupcam;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.Resolution;
+import wrapper.toupcam.util.FrameBufferPool;
+
+public class SegmentRecorderTest {
+
+    private File directory;
+
+    @Before
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("segment-recorder").toFile();
+    }
+
+    private static FrameView frame(int width, int height, int grey, long arrivalNanos) {
+        return TestFrames.filled(width, height, grey).stamp(arrivalNanos, 0);
+    }
+
+    /**
+     * What the test reads back out of an AVI file.
+     */
+    private static class Avi {
+        int width, height, totalFrames, length, rate, scale;
+        final List<BufferedImage> frames = new ArrayList<>();
+    }
+
+    private static String fourcc(ByteBuffer file, int offset) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) bytes[i] = file.get(offset + i);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static Avi readAvi(File path) throws Exception {
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals("RIFF", fourcc(file, 0));
+        assertEquals(file.capacity() - 8, file.getInt(4));
+        assertEquals("AVI ", fourcc(file, 8));
+        assertEquals("avih", fourcc(file, 24));
+        assertEquals("strh", fourcc(file, 100));
+        assertEquals("MJPG", fourcc(file, 112));
+        assertEquals("movi", fourcc(file, 220));
+
+        Avi avi = new Avi();
+        avi.totalFrames = file.getInt(48);
+        avi.width = file.getInt(64);
+        avi.height = file.getInt(68);
+        avi.scale = file.getInt(128);
+        avi.rate = file.getInt(132);
+        avi.length = file.getInt(140);
+
+        // the index follows the movi list, its offsets are relative to the movi fourcc.
+        int index = 220 + file.getInt(216);
+        assertEquals("idx1", fourcc(file, index));
+        int entries = file.getInt(index + 4) / 16;
+        for (int i = 0; i < entries; i++) {
+            int entry = index + 8 + i * 16;
+            assertEquals("00dc", fourcc(file, entry));
+            int chunk = 220 + file.getInt(entry + 8), size = file.getInt(entry + 12);
+            assertEquals("00dc", fourcc(file, chunk));
+            assertEquals(size, file.getInt(chunk + 4));
+            avi.frames.add(ImageIO.read(new ByteArrayInputStream(file.array(), chunk + 8, size)));
+        }
+        return avi;
+    }
+
+    /**
+     * @return the Y plane of every frame of a 4:4:4 file, after checking its header.
+     */
+    private static List<byte[]> readY4m(File path, int width, int height, String rate) throws Exception {
+        byte[] file = Files.readAllBytes(path.toPath());
+        int end = 0;
+        while (file[end] != '\n') end++;
+        String header = new String(file, 0, end, StandardCharsets.US_ASCII);
+        assertTrue(header, header.startsWith("YUV4MPEG2 W" + width + " H" + height + " F" + rate + ":1000 "));
+        assertTrue(header, header.endsWith(" C444"));
+
+        int planes = width * height * 3;
+        assertEquals(0, (file.length - end - 1) % (6 + planes));
+        List<byte[]> frames = new ArrayList<>();
+        for (int offset = end + 1; offset < file.length; offset += 6 + planes) {
+            assertEquals("FRAME\n", new String(file, offset, 6, StandardCharsets.US_ASCII));
+            byte[] luma = new byte[width * height];
+            System.arraycopy(file, offset + 6, luma, 0, luma.length);
+            frames.add(luma);
+        }
+        return frames;
+    }
+
+    @Test
+    public void testAviSegmentsRollOverBySizeAndParseBack() throws Exception {
+        SegmentRecorder recorder = new SegmentRecorder(directory, "cam", VideoFormat.MJPEG_AVI, 0.8f,
+                20 * 1024, 0, TimeUnit.SECONDS, 128);
+        // 100 fps, every frame a different grey.
+        for (int i = 0; i < 60; i++)
+            recorder.onReceiveFrame(frame(64, 48, i * 4, TimeUnit.MILLISECONDS.toNanos(10 * (i + 1))));
+        assertTrue(recorder.close(10, TimeUnit.SECONDS));
+
+        assertTrue(recorder.getSegments().size() > 1);
+        assertEquals(recorder.getSegments().size(), directory.list().length);
+        int frames = 0;
+        for (File segment : recorder.getSegments()) {
+            assertTrue(segment.getName().matches("cam\\d{6}\\.avi"));
+            Avi avi = readAvi(segment);
+            assertEquals(64, avi.width);
+            assertEquals(48, avi.height);
+            assertEquals(avi.frames.size(), avi.totalFrames);
+            assertEquals(avi.frames.size(), avi.length);
+            if (avi.frames.size() > 1) assertEquals(100.0, avi.rate / (double) avi.scale, 0.5);
+            for (BufferedImage image : avi.frames) {
+                assertEquals(64, image.getWidth());
+                // greys survive the JPEG round trip, give or take.
+                assertEquals(frames * 4, image.getRaster().getSample(32, 24, 0), 3);
+                frames++;
+            }
+        }
+        assertEquals(60, frames);
+        assertEquals(60, recorder.getWrittenFrames());
+        assertEquals(0, recorder.getDroppedFrames());
+    }
+
+    @Test
+    public void testY4mSegmentsRollOverByDuration() throws Exception {
+        SegmentRecorder recorder = new SegmentRecorder(directory, "raw", VideoFormat.Y4M, 0, 0, 100,
+                TimeUnit.MILLISECONDS, 128);
+        for (int i = 0; i < 30; i++)
+            recorder.onReceiveFrame(frame(32, 16, 100, TimeUnit.MILLISECONDS.toNanos(10 * (i + 1))));
+        assertTrue(recorder.close(10, TimeUnit.SECONDS));
+
+        assertEquals(3, recorder.getSegments().size());
+        for (File segment : recorder.getSegments()) {
+            List<byte[]> frames = readY4m(segment, 32, 16, "0000100000");
+            assertEquals(10, frames.size());
+            // BT.601 luma of grey 100.
+            for (byte[] luma : frames) assertEquals(102, luma[0] & 0xff);
+        }
+    }
+
+    @Test
+    public void testFormatChangeStartsNewSegment() throws Exception {
+        SegmentRecorder recorder = new SegmentRecorder(directory, VideoFormat.Y4M);
+        for (int i = 1; i <= 8; i++)
+            recorder.onReceiveFrame(frame(i <= 4 ? 32 : 16, i <= 4 ? 16 : 8, 0, TimeUnit.MILLISECONDS.toNanos(20 * i)));
+        assertTrue(recorder.close(10, TimeUnit.SECONDS));
+
+        assertEquals(2, recorder.getSegments().size());
+        assertEquals(4, readY4m(recorder.getSegments().get(1), 16, 8, "0000050000").size());
+    }
+
+    @Test
+    public void testFramesAfterCloseAreReleased() throws Exception {
+        SegmentRecorder recorder = new SegmentRecorder(directory, VideoFormat.Y4M);
+        // a zero timeout doesn't wait.
+        recorder.close(0, TimeUnit.SECONDS);
+        FrameBufferPool pool = new FrameBufferPool();
+        assertFalse(recorder.submit(Frame.copyOf(frame(32, 16, 0, 1), pool)));
+        assertEquals(0, pool.getOutstandingLeases());
+        assertEquals(0, recorder.getAcceptedFrames());
+        assertTrue(recorder.close(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Records a synthetic 640x480 stream at 60 fps through the push path,
+     * every frame has to make it into the files at the camera's rate.
+     */
+    @Test
+    public void testSustainsSyntheticStream() throws Exception {
+        SyntheticToupcam camera = new SyntheticToupcam(1, new Resolution[] {new Resolution(640, 480)}, 60, 0);
+        App app = new App(camera);
+        SegmentRecorder recorder = new SegmentRecorder(directory, VideoFormat.MJPEG_AVI);
+        try {
+            assertEquals(HResult.S_OK, app.startStreaming(recorder));
+            Thread.sleep(1500);
+        } finally {
+            app.stopStreaming();
+            app.getMetrics().unregister();
+        }
+        assertTrue(recorder.close(10, TimeUnit.SECONDS));
+        System.out.println(recorder + ", " + recorder.getJpegEncoder());
+
+        assertEquals(0, recorder.getDroppedFrames());
+        assertEquals(1, recorder.getSegments().size());
+        Avi avi = readAvi(recorder.getSegments().get(0));
+        assertEquals(recorder.getAcceptedFrames(), avi.frames.size());
+        assertTrue(avi.frames.size() > 60);
+        assertEquals(60.0, avi.rate / (double) avi.scale, 6);
+    }
+
+}
@@ -0,0 +1,223 @@
+package wrapper.toupcam.server;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import wrapper.toupcam.TestFrames;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+
+public class MjpegStreamServerTest {
+
+    MjpegStreamServer server;
+    Thread camera;
+
+    // reads parts off the stream for a while, optionally slowly.
+    private static class Client extends Thread {
+        final URL url;
+        final long pauseMillis, runMillis;
+        final List<Long> latencies = new ArrayList<>();
+        long lastSequence, skipped;
+        byte[] lastJpeg;
+        Exception failure;
+
+        Client(URL url, long pauseMillis, long runMillis) {
+            this.url = url;
+            this.pauseMillis = pauseMillis;
+            this.runMillis = runMillis;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // a small receive buffer, so a slow reader backs up the server instead of the socket.
+                try (Socket socket = new Socket()) {
+                    socket.setReceiveBufferSize(4096);
+                    socket.connect(new InetSocketAddress(url.getHost(), url.getPort()));
+                    socket.getOutputStream().write(("GET " + url.getPath() + " HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                            .getBytes(StandardCharsets.US_ASCII));
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    while (!readLine(in).isEmpty()) ;          // response headers
+                    long end = System.currentTimeMillis() + runMillis;
+                    while (System.currentTimeMillis() < end) {
+                        int length = -1;
+                        long sequence = 0, capture = 0;
+                        String line;
+                        while (!(line = readLine(in)).isEmpty() || length < 0) {
+                            if (line.startsWith("Content-Length:")) length = Integer.parseInt(line.substring(15).trim());
+                            if (line.startsWith("X-Frame-Sequence:")) sequence = Long.parseLong(line.substring(17).trim());
+                            if (line.startsWith("X-Capture-Nanos:")) capture = Long.parseLong(line.substring(16).trim());
+                        }
+                        lastJpeg = new byte[length];
+                        in.readFully(lastJpeg);
+                        readLine(in);
+                        latencies.add(System.nanoTime() - capture);
+                        if (lastSequence > 0) skipped += sequence - lastSequence - 1;
+                        lastSequence = sequence;
+                        if (pauseMillis > 0) Thread.sleep(pauseMillis);
+                    }
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c == -1) throw new IOException("stream ended");
+                if (c != '\r') line.append((char) c);
+            }
+            return line.toString();
+        }
+
+        double medianLatencyMillis() {
+            List<Long> sorted = new ArrayList<>(latencies);
+            sorted.sort(null);
+            return sorted.get(sorted.size() / 2) / 1e6;
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        server = new MjpegStreamServer(0).start();
+        MjpegStream stream = server.addCamera("cam0");
+        // noise barely compresses, so slow clients back up the server rather than the socket buffers.
+        int width = 640, height = 480;
+        ImageHeader header = TestFrames.header(width, height, 24);
+        Random random = new Random(1);
+        ByteBuffer[] frames = new ByteBuffer[4];
+        for (int i = 0; i < frames.length; i++) {
+            byte[] noise = new byte[width * height * 3];
+            random.nextBytes(noise);
+            frames[i] = ByteBuffer.allocateDirect(noise.length).put(noise);
+            frames[i].flip();
+        }
+        camera = new Thread(() -> {
+            FrameView view = new FrameView();
+            for (int i = 0; !Thread.currentThread().isInterrupted(); i++) {
+                stream.onReceiveFrame(view.wrap(frames[i % frames.length].duplicate(), header, false));
+                view.invalidate();
+                try {
+                    Thread.sleep(1000 / 60);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        camera.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        camera.interrupt();
+        camera.join();
+        server.stop();
+    }
+
+    @Test
+    public void testSlowClientDoesNotStallOthers() throws Exception {
+        URL url = new URL("http://localhost:" + server.getPort() + MjpegStreamServer.CONTEXT + "cam0");
+        List<Client> fast = new ArrayList<>();
+        for (int i = 0; i < 4; i++) fast.add(new Client(url, 0, 2500));
+        Client slow = new Client(url, 50, 2500);
+        fast.forEach(Thread::start);
+        slow.start();
+        for (Client client : fast) client.join(5000);
+        slow.join(5000);
+
+        MjpegStream stream = server.getStream("cam0");
+        for (Client client : fast) {
+            assertNull(client.failure);
+            // frames the slow client can't keep up with are skipped for it alone.
+            assertTrue("fast client skipped " + client.skipped + ", slow client " + slow.skipped,
+                    client.skipped < slow.skipped);
+            System.out.println(String.format("fast client: %d frames, %d skipped, median latency %.1f ms",
+                    client.latencies.size(), client.skipped, client.medianLatencyMillis()));
+        }
+        System.out.println(String.format("slow client: %d frames, %d skipped; %s on %d cores",
+                slow.latencies.size(), slow.skipped, stream, Runtime.getRuntime().availableProcessors()));
+        assertNull(slow.failure);
+        assertTrue(slow.skipped > 0);
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(slow.lastJpeg)));
+        // every client shares the same encodes.
+        assertTrue(stream.getSentFrames() > stream.getEncodedFrames());
+    }
+
+    @Test
+    public void testUnknownCameraIs404() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort()
+                + MjpegStreamServer.CONTEXT + "missing").openConnection();
+        assertEquals(404, connection.getResponseCode());
+    }
+
+    /**
+     * Frames racing with close() neither throw on the SDK thread nor leak their copy.
+     */
+    @Test
+    public void testFramesRacingWithCloseAreReleased() throws Exception {
+        ImageHeader header = TestFrames.header(16, 16, 24);
+        ByteBuffer data = ByteBuffer.allocateDirect(header.getImageSize());
+        for (int i = 0; i < 200; i++) {
+            MjpegStream stream = new MjpegStream("race", 0.5f);
+            stream.clientConnected();
+            List<Throwable> failures = new ArrayList<>();
+            Thread sdk = new Thread(() -> {
+                FrameView view = new FrameView();
+                try {
+                    while (stream.isOpen()) {
+                        stream.onReceiveFrame(view.wrap(data.duplicate(), header, false));
+                        view.invalidate();
+                    }
+                    stream.onReceiveFrame(view.wrap(data.duplicate(), header, false));
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            sdk.start();
+            Thread.sleep(1);
+            stream.close();
+            sdk.join();
+            assertEquals(new ArrayList<Throwable>(), failures);
+            // the encoder releases the frame it was working on once it's done.
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (stream.getOutstandingFrames() > 0 && System.nanoTime() < deadline) Thread.sleep(1);
+            assertEquals(0, stream.getOutstandingFrames());
+        }
+    }
+
+    @Test
+    public void testNoEncodingWithoutClients() throws Exception {
+        Thread.sleep(200);
+        assertEquals(0, server.getStream("cam0").getEncodedFrames());
+        MjpegStream stream = server.getStream("cam0");
+        server.removeCamera("cam0");
+        assertFalse(stream.isOpen());
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort()
+                + MjpegStreamServer.CONTEXT + "cam0").openConnection();
+        assertEquals(404, connection.getResponseCode());
+    }
+
+}
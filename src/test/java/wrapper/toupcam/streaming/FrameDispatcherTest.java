@@ -0,0 +1,137 @@
+package wrapper.toupcam.streaming;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import wrapper.toupcam.TestFrames;
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.OverflowPolicy;
+import wrapper.toupcam.models.FrameView;
+
+public class FrameDispatcherTest {
+
+    // holds delivery until released, so the ring fills up.
+    private static class ManualExecutor implements Executor {
+        Runnable task;
+
+        @Override
+        public void execute(Runnable command) {
+            task = command;
+        }
+
+        void runPending() {
+            Runnable pending = task;
+            task = null;
+            if (pending != null) pending.run();
+        }
+    }
+
+    private static FrameView frame(int marker) {
+        return TestFrames.marked(4, 1, marker);
+    }
+
+    private static FrameViewCallback recorder(List<Integer> markers) {
+        return frame -> markers.add((int) frame.getBuffer().get(0));
+    }
+
+    @Test
+    public void testDropOldest() {
+        ManualExecutor executor = new ManualExecutor();
+        List<Integer> markers = new CopyOnWriteArrayList<>();
+        FrameDispatcher dispatcher = new FrameDispatcher(2, OverflowPolicy.DROP_OLDEST, 0, TimeUnit.MILLISECONDS, executor);
+        dispatcher.start(recorder(markers));
+
+        for (int i = 1; i <= 4; i++) dispatcher.onReceiveFrame(frame(i));
+        assertEquals(2, dispatcher.getQueueDepth());
+        assertEquals(2, dispatcher.getDroppedFrames());
+
+        executor.runPending();
+        assertEquals(3, (int) markers.get(0));
+        assertEquals(4, (int) markers.get(1));
+        assertEquals(0, dispatcher.getPool().getOutstandingLeases());
+    }
+
+    @Test
+    public void testDropNewest() {
+        ManualExecutor executor = new ManualExecutor();
+        List<Integer> markers = new CopyOnWriteArrayList<>();
+        FrameDispatcher dispatcher = new FrameDispatcher(2, OverflowPolicy.DROP_NEWEST, 0, TimeUnit.MILLISECONDS, executor);
+        dispatcher.start(recorder(markers));
+
+        for (int i = 1; i <= 4; i++) dispatcher.onReceiveFrame(frame(i));
+        executor.runPending();
+        assertEquals(2, markers.size());
+        assertEquals(1, (int) markers.get(0));
+        assertEquals(2, (int) markers.get(1));
+        assertEquals(2, dispatcher.getDroppedFrames());
+        // dropped frames are never copied.
+        assertEquals(2, dispatcher.getPool().getHits() + dispatcher.getPool().getMisses());
+    }
+
+    @Test
+    public void testBlockTimesOut() {
+        ManualExecutor executor = new ManualExecutor();
+        FrameDispatcher dispatcher = new FrameDispatcher(1, OverflowPolicy.BLOCK, 20, TimeUnit.MILLISECONDS, executor);
+        dispatcher.start(recorder(new CopyOnWriteArrayList<>()));
+
+        dispatcher.onReceiveFrame(frame(1));
+        long start = System.nanoTime();
+        dispatcher.onReceiveFrame(frame(2));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(1, dispatcher.getDroppedFrames());
+    }
+
+    @Test
+    public void testSlowHandlerDoesNotBlockProducer() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+        FrameDispatcher dispatcher = new FrameDispatcher(8, OverflowPolicy.DROP_OLDEST);
+        dispatcher.start((FrameViewCallback) frame -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) dispatcher.onReceiveFrame(frame(i));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(5, dispatcher.getReceivedFrames());
+    }
+
+    @Test
+    public void testCloseShutsDownItsOwnThread() throws InterruptedException {
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        FrameDispatcher dispatcher = new FrameDispatcher(2, OverflowPolicy.DROP_OLDEST);
+        dispatcher.start((FrameViewCallback) frame -> threads.add(Thread.currentThread()));
+        dispatcher.onReceiveFrame(frame(1));
+        while (dispatcher.getDeliveredFrames() < 1) Thread.sleep(1);
+
+        dispatcher.close();
+        threads.get(0).join(5000);
+        assertFalse(threads.get(0).isAlive());
+        dispatcher.onReceiveFrame(frame(2));
+        assertEquals(1, dispatcher.getDroppedFrames());
+        assertEquals(0, dispatcher.getPool().getOutstandingLeases());
+
+        // started again on a new thread.
+        dispatcher.start((FrameViewCallback) frame -> threads.add(Thread.currentThread()));
+        dispatcher.onReceiveFrame(frame(3));
+        while (dispatcher.getDeliveredFrames() < 2) Thread.sleep(1);
+        assertNotSame(threads.get(0), threads.get(1));
+        dispatcher.close();
+    }
+
+}
@@ -0,0 +1,133 @@
+package wrapper.toupcam.streaming;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import wrapper.toupcam.TestFrames;
+import wrapper.toupcam.callbacks.BufferedImageStreamCallback;
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.OverflowPolicy;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.util.FrameBufferPool;
+
+public class FrameFanOutTest {
+
+    private static final int WIDTH = 16, HEIGHT = 8;
+
+    // never runs the drain, an output that has stopped consuming.
+    private static final Executor STALLED = command -> { };
+    private static final Executor DIRECT = Runnable::run;
+
+    private static FrameView frame(int marker, long arrivalNanos) {
+        return TestFrames.marked(WIDTH, HEIGHT, marker).stamp(arrivalNanos, marker);
+    }
+
+    private static FrameViewCallback recorder(List<Integer> markers) {
+        return frame -> markers.add((int) frame.getBuffer().get(0));
+    }
+
+    @Test
+    public void testStalledPreviewDoesNotDropRecording() {
+        List<Integer> recorded = new CopyOnWriteArrayList<>();
+        FrameDispatcher preview = new FrameDispatcher(1, OverflowPolicy.DROP_OLDEST, 0, TimeUnit.MILLISECONDS, STALLED);
+        FrameFanOut fanOut = new FrameFanOut()
+                .addOutput("recording", new FrameDispatcher(4, OverflowPolicy.DROP_NEWEST, 0, TimeUnit.MILLISECONDS,
+                        DIRECT).start(recorder(recorded)), 0)
+                .addOutput("preview", preview.start(recorder(new CopyOnWriteArrayList<>())), 0);
+
+        for (int i = 1; i <= 100; i++) fanOut.onReceiveFrame(frame(i, i));
+        assertEquals(100, recorded.size());
+        for (int i = 0; i < 100; i++) assertEquals(i + 1, (int) recorded.get(i));
+        assertEquals(0, fanOut.getOutput("recording").getQueue().getDroppedFrames());
+        assertEquals(99, preview.getDroppedFrames());
+        // one copy per frame, shared by both outputs.
+        assertEquals(100, fanOut.getCopiedFrames());
+
+        // only the frame stuck in the preview queue is still leased.
+        assertEquals(1, fanOut.getPool().getOutstandingLeases());
+        fanOut.stop();
+        assertEquals(0, fanOut.getPool().getOutstandingLeases());
+    }
+
+    @Test
+    public void testRateLimitedOutputSkipsFrames() {
+        List<Integer> recorded = new CopyOnWriteArrayList<>(), previewed = new CopyOnWriteArrayList<>();
+        FrameFanOut fanOut = new FrameFanOut()
+                .addOutput("recording", new FrameDispatcher(4, OverflowPolicy.DROP_NEWEST, 0, TimeUnit.MILLISECONDS,
+                        DIRECT).start(recorder(recorded)), 0)
+                .addOutput("preview", new FrameDispatcher(1, OverflowPolicy.DROP_OLDEST, 0, TimeUnit.MILLISECONDS,
+                        DIRECT).start(recorder(previewed)), TimeUnit.MILLISECONDS.toNanos(40));
+
+        // 100 fps into a 25 fps output.
+        for (int i = 1; i <= 20; i++) fanOut.onReceiveFrame(frame(i, TimeUnit.MILLISECONDS.toNanos(10 * i)));
+        assertEquals(20, recorded.size());
+        assertEquals(5, previewed.size());
+        assertEquals(15, fanOut.getOutput("preview").getSkippedFrames());
+        assertEquals(0, fanOut.getPool().getOutstandingLeases());
+    }
+
+    @Test
+    public void testPreviewIsDownscaled() throws Exception {
+        CountDownLatch previewed = new CountDownLatch(1);
+        List<BufferedImage> images = new CopyOnWriteArrayList<>();
+        List<ImageHeader> headers = new CopyOnWriteArrayList<>();
+        FrameFanOut fanOut = new FrameFanOut().addPreview("preview", 30, 4, new BufferedImageStreamCallback() {
+            @Override
+            public void onReceivePreviewImage(BufferedImage image, ImageHeader imageHeader) {
+                images.add(image);
+                headers.add(imageHeader);
+                previewed.countDown();
+            }
+
+            @Override
+            public void onReceiveStillImage(BufferedImage image, ImageHeader imageHeader) {}
+        });
+        fanOut.onReceiveFrame(frame(1, 1));
+        assertTrue(previewed.await(1, TimeUnit.SECONDS));
+        assertEquals(WIDTH / 4, images.get(0).getWidth());
+        assertEquals(HEIGHT / 4, images.get(0).getHeight());
+        // the header describes the captured frame.
+        assertEquals(WIDTH, headers.get(0).getWidth());
+    }
+
+    @Test
+    public void testFrameWithoutOutputsIsNotCopied() {
+        FrameFanOut fanOut = new FrameFanOut();
+        fanOut.onReceiveFrame(frame(1, 1));
+        assertEquals(1, fanOut.getReceivedFrames());
+        assertEquals(0, fanOut.getCopiedFrames());
+    }
+
+    @Test
+    public void testSharedFrameReleasesBufferWithLastShare() {
+        FrameBufferPool pool = new FrameBufferPool();
+        Frame frame = Frame.copyOf(frame(7, 1), pool);
+        Frame share = frame.share();
+        assertEquals(7, share.getData()[0]);
+        assertEquals(7, share.getSequence());
+        assertEquals(2, frame.getReferences());
+
+        frame.release();
+        assertEquals(1, pool.getOutstandingLeases());
+        assertEquals(7, share.view().getBuffer().get(0));
+        try {
+            frame.release();
+            fail();
+        } catch (IllegalStateException e) {
+            // each share is released once.
+        }
+        share.release();
+        assertEquals(0, pool.getOutstandingLeases());
+    }
+
+}
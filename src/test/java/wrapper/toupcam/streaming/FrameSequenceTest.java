@@ -0,0 +1,110 @@
+package wrapper.toupcam.streaming;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import wrapper.toupcam.App;
+import wrapper.toupcam.callbacks.BufferedImageStreamCallback;
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.libraries.SyntheticToupcam;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.models.Resolution;
+
+public class FrameSequenceTest {
+
+    private static final Resolution[] RESOLUTIONS = {new Resolution(160, 120)};
+
+    SyntheticToupcam camera;
+    App app;
+    final List<long[]> stamps = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setup() {
+        camera = new SyntheticToupcam(1, RESOLUTIONS, 200, 0);
+        app = new App(camera);
+    }
+
+    @After
+    public void tearDown() {
+        app.stopStreaming();
+        app.getMetrics().unregister();
+    }
+
+    private void awaitStamps(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (stamps.size() < count && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertTrue(stamps.size() >= count);
+    }
+
+    private void assertStamps(long first, boolean consecutive) {
+        long previousSequence = first - 1, previousTimestamp = 0;
+        for (long[] stamp : stamps) {
+            if (consecutive) assertEquals(previousSequence + 1, stamp[0]);
+            else assertTrue(stamp[0] > previousSequence);
+            assertTrue(stamp[1] > 0);
+            assertTrue(stamp[1] >= previousTimestamp);
+            previousSequence = stamp[0];
+            previousTimestamp = stamp[1];
+        }
+    }
+
+    @Test
+    public void testPushedFramesKeepStampsThroughDispatcher() throws Exception {
+        long start = System.nanoTime();
+        assertEquals(HResult.S_OK, app.startStreaming(new BufferedImageStreamCallback() {
+            @Override
+            public void onReceivePreviewImage(BufferedImage image, ImageHeader imageHeader) {
+                stamps.add(new long[] {imageHeader.getSequence(), imageHeader.getTimestamp()});
+            }
+
+            @Override
+            public void onReceiveStillImage(BufferedImage image, ImageHeader imageHeader) {}
+        }, new FrameDispatcher()));
+        awaitStamps(20);
+        // the dispatcher may drop frames, sequence gaps show where.
+        assertStamps(1, false);
+        assertTrue(stamps.get(0)[1] >= start);
+    }
+
+    @Test
+    public void testKeptHeadersAreNotReused() throws Exception {
+        List<ImageHeader> headers = new CopyOnWriteArrayList<>();
+        assertEquals(HResult.S_OK, app.startStreaming(new BufferedImageStreamCallback() {
+            @Override
+            public void onReceivePreviewImage(BufferedImage image, ImageHeader imageHeader) {
+                headers.add(imageHeader);
+                stamps.add(new long[] {imageHeader.getSequence(), imageHeader.getTimestamp()});
+            }
+
+            @Override
+            public void onReceiveStillImage(BufferedImage image, ImageHeader imageHeader) {}
+        }));
+        awaitStamps(10);
+        app.stopStreaming();
+        for (int i = 0; i < headers.size(); i++) assertEquals(stamps.get(i)[0], headers.get(i).getSequence());
+        assertStamps(1, true);
+    }
+
+    @Test
+    public void testSequenceContinuesAcrossRestartAndPullMode() throws Exception {
+        FrameViewCallback recorder = frame -> stamps.add(new long[] {frame.getSequence(), frame.getArrivalNanos()});
+        assertEquals(HResult.S_OK, app.startStreaming(recorder));
+        awaitStamps(10);
+        app.stopStreaming();
+        Thread.sleep(20);
+
+        assertEquals(HResult.S_OK, app.startPullMode(24, recorder));
+        awaitStamps(stamps.size() + 10);
+        app.stopStreaming();
+        assertStamps(1, true);
+    }
+
+}
@@ -0,0 +1,156 @@
+package wrapper.toupcam.streaming;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.jna.Pointer;
+
+import wrapper.toupcam.callbacks.ByteImageStreamCallback;
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.Event;
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.libraries.SyntheticToupcam;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.models.Resolution;
+
+public class PullModeEngineTest {
+
+    private static final Resolution[] RESOLUTIONS = {new Resolution(160, 120)};
+
+    SyntheticToupcam camera;
+    Pointer handle;
+    PullModeEngine engine;
+
+    @Before
+    public void setup() {
+        camera = new SyntheticToupcam(1, RESOLUTIONS, 200, 0);
+        handle = camera.Toupcam_Open(null);
+    }
+
+    @After
+    public void tearDown() {
+        camera.Toupcam_Stop(handle);
+        if (engine != null) engine.stop();
+    }
+
+    @Test
+    public void testImagesCarryTheirEventTimeAndNumber() throws Exception {
+        // sequence, arrival and when the callback returned, of every image.
+        List<long[]> images = new CopyOnWriteArrayList<>();
+        engine = new PullModeEngine(camera, handle, 24, RESOLUTIONS, (FrameViewCallback) frame -> {
+            long sequence = frame.getSequence(), arrival = frame.getArrivalNanos();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            images.add(new long[] {sequence, arrival, System.nanoTime()});
+        });
+        assertEquals(HResult.S_OK, HResult.key(camera.Toupcam_StartPullModeWithCallback(handle, engine, 0)));
+        Thread.sleep(300);
+        camera.Toupcam_Stop(handle);
+        engine.stop();
+
+        assertTrue(images.size() > 5);
+        assertTrue(engine.getCoalescedEvents() > 0);
+        long gaps = 0;
+        for (int i = 1; i < images.size(); i++) {
+            long[] previous = images.get(i - 1), image = images.get(i);
+            assertTrue(image[0] > previous[0]);
+            gaps += image[0] - previous[0] - 1;
+            // the event of the next image came while the previous one was still in the callback.
+            assertTrue(image[1] < previous[2]);
+        }
+        assertTrue(gaps > 0);
+        assertTrue(gaps <= engine.getCoalescedEvents());
+    }
+
+    @Test
+    public void testEventsRacingWithStopDontThrow() throws Exception {
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        for (int i = 0; i < 50 && thrown.get() == null; i++) {
+            PullModeEngine racing = new PullModeEngine(camera, handle, 24, RESOLUTIONS, (FrameViewCallback) frame -> { });
+            CountDownLatch started = new CountDownLatch(1);
+            Thread sdk = new Thread(() -> {
+                try {
+                    for (int event = 0; event < 100000; event++) {
+                        racing.invoke(Event.EVENT_STILLIMAGE.getValue());
+                        started.countDown();
+                    }
+                } catch (Throwable t) {
+                    thrown.compareAndSet(null, t);
+                }
+            });
+            sdk.start();
+            started.await();
+            racing.stop();
+            sdk.join();
+        }
+        assertNull(thrown.get());
+    }
+
+    /**
+     * Byte callbacks get the same pixels as the image path at every bit
+     * depth, on a frame whose 8 bit rows are padded.
+     */
+    @Test
+    public void testByteImagesAtEveryBitDepth() throws Exception {
+        Resolution[] padded = {new Resolution(158, 120)};
+        for (int bits : new int[] {8, 24, 32}) {
+            SyntheticToupcam library = new SyntheticToupcam(1, padded, 200, 0);
+            Pointer opened = library.Toupcam_Open(null);
+            AtomicInteger images = new AtomicInteger();
+            AtomicReference<String> mismatch = new AtomicReference<>();
+            PullModeEngine pulling = new PullModeEngine(library, opened, bits, padded, new ByteImageStreamCallback() {
+                BufferedImage expected;
+
+                @Override
+                public void onReceiveFrame(FrameView frame) {
+                    expected = frame.toBufferedImage();
+                    ByteImageStreamCallback.super.onReceiveFrame(frame);
+                }
+
+                @Override
+                public void onReceivePreviewImage(byte[] abgr, ImageHeader header) {
+                    assertEquals(158 * 120 * 4, abgr.length);
+                    for (int y = 0, i = 0; y < 120; y++) {
+                        for (int x = 0; x < 158; x++, i += 4) {
+                            int rgb = (abgr[i + 3] & 0xff) << 16 | (abgr[i + 2] & 0xff) << 8 | (abgr[i + 1] & 0xff);
+                            // getRGB would gamma correct a grey image.
+                            int reference = expected.getType() == BufferedImage.TYPE_BYTE_GRAY
+                                    ? expected.getRaster().getSample(x, y, 0) * 0x010101 : expected.getRGB(x, y) & 0xffffff;
+                            if (abgr[i] != (byte) 0xff || rgb != reference)
+                                mismatch.compareAndSet(null, bits + " bits, pixel " + x + "," + y);
+                        }
+                    }
+                    images.incrementAndGet();
+                }
+
+                @Override
+                public void onReceiveStillImage(byte[] abgr, ImageHeader header) {
+                }
+            });
+            try {
+                assertEquals(HResult.S_OK, HResult.key(library.Toupcam_StartPullModeWithCallback(opened, pulling, 0)));
+                Thread.sleep(150);
+            } finally {
+                library.Toupcam_Stop(opened);
+                pulling.stop();
+            }
+            assertEquals(null, mismatch.get());
+            assertTrue(bits + " bits", images.get() > 0);
+        }
+    }
+
+}
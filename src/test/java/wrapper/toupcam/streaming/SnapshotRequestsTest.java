@@ -0,0 +1,165 @@
+package wrapper.toupcam.streaming;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import wrapper.toupcam.App;
+import wrapper.toupcam.TestFrames;
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.libraries.SyntheticToupcam;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.models.Resolution;
+import wrapper.toupcam.util.FrameConverter;
+
+public class SnapshotRequestsTest {
+
+    private static final Resolution[] RESOLUTIONS = {new Resolution(320, 240), new Resolution(160, 120)};
+
+    SyntheticToupcam camera;
+    App app;
+    final AtomicInteger previews = new AtomicInteger();
+
+    @Before
+    public void setup() {
+        camera = new SyntheticToupcam(1, RESOLUTIONS, 100, 0);
+        app = new App(camera);
+    }
+
+    @After
+    public void tearDown() {
+        app.stopStreaming();
+        app.getMetrics().unregister();
+    }
+
+    private void assertStill(Frame still, int resolutionIndex) {
+        Resolution resolution = RESOLUTIONS[resolutionIndex];
+        assertTrue(still.isSnapshot());
+        assertEquals(resolution.getWidth(), still.getHeader().getWidth(), 0);
+        assertEquals(FrameConverter.frameSize((int) resolution.getWidth(), (int) resolution.getHeight(), 24),
+                still.getLength());
+        assertTrue(still.getLatencyNanos() > 0);
+    }
+
+    @Test
+    public void testConcurrentSnapsWhileStreaming() throws Exception {
+        assertEquals(HResult.S_OK, app.startStreaming((FrameViewCallback) frame -> {
+            if (!frame.isSnapshot()) previews.incrementAndGet();
+        }));
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        List<Future<Frame>> stills = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        long start = System.nanoTime();
+        int previewsBefore = previews.get();
+        for (int i = 0; i < 12; i++) {
+            int index = i % 2;
+            indexes.add(index);
+            stills.add(callers.submit(() -> app.snap(index).get(5, TimeUnit.SECONDS)));
+        }
+        for (int i = 0; i < stills.size(); i++) assertStill(stills.get(i).get(10, TimeUnit.SECONDS), indexes.get(i));
+        callers.shutdown();
+
+        // preview frames keep their rate while stills are delivered.
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertTrue("preview fps " + (previews.get() - previewsBefore) / seconds,
+                (previews.get() - previewsBefore) / seconds > 60);
+        assertEquals(12, app.getSnapshots().getCompleted());
+        assertEquals(0, app.getSnapshots().getPending());
+    }
+
+    @Test
+    public void testSnapInPullMode() throws Exception {
+        assertEquals(HResult.S_OK, app.startPullMode(24, (FrameViewCallback) frame -> { }));
+        assertStill(app.snap(1).get(5, TimeUnit.SECONDS), 1);
+        assertStill(app.snap(0).get(5, TimeUnit.SECONDS), 0);
+    }
+
+    @Test
+    public void testSnapTimesOutWithoutStream() throws Exception {
+        CompletableFuture<Frame> still = app.snap(0, 100, TimeUnit.MILLISECONDS);
+        try {
+            still.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(1, app.getSnapshots().getTimedOut());
+        try {
+            app.snap(5).get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    private static FrameView still(Resolution resolution) {
+        ImageHeader header = TestFrames.header((int) resolution.getWidth(), (int) resolution.getHeight(), 24);
+        return new FrameView().wrap(ByteBuffer.allocateDirect(header.getImageSize()), header, true)
+                .stamp(System.nanoTime(), 0);
+    }
+
+    @Test
+    public void testTimedOutRequestKeepsItsLateStill() throws Exception {
+        SnapshotRequests snapshots = new SnapshotRequests();
+        CompletableFuture<Frame> first = snapshots.request(0, RESOLUTIONS[0], () -> 0, 5, TimeUnit.SECONDS);
+        CompletableFuture<Frame> second = snapshots.request(0, RESOLUTIONS[0], () -> 0, 5, TimeUnit.SECONDS);
+        first.completeExceptionally(new TimeoutException());
+
+        snapshots.onReceiveFrame(still(RESOLUTIONS[0]));
+        Thread.sleep(50);
+        assertFalse(second.isDone());
+        assertEquals(1, snapshots.getPending());
+        assertEquals(0, snapshots.getLost());
+    }
+
+    @Test
+    public void testStillLongAfterTimeoutGoesToNextRequest() throws Exception {
+        SnapshotRequests snapshots = new SnapshotRequests();
+        CompletableFuture<Frame> first = snapshots.request(0, RESOLUTIONS[0], () -> 0, 20, TimeUnit.MILLISECONDS);
+        CompletableFuture<Frame> second = snapshots.request(0, RESOLUTIONS[0], () -> 0, 5, TimeUnit.SECONDS);
+        try {
+            first.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        // more than two timeouts after the first request.
+        Thread.sleep(50);
+
+        snapshots.onReceiveFrame(still(RESOLUTIONS[0]));
+        assertStill(second.get(1, TimeUnit.SECONDS), 0);
+        assertEquals(1, snapshots.getLost());
+        assertEquals(0, snapshots.getPending());
+    }
+
+    @Test
+    public void testCompletionThreadIsShared() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            SnapshotRequests snapshots = new SnapshotRequests();
+            CompletableFuture<Frame> still = snapshots.request(0, RESOLUTIONS[0], () -> 0, 5, TimeUnit.SECONDS);
+            snapshots.onReceiveFrame(still(RESOLUTIONS[0]));
+            assertStill(still.get(1, TimeUnit.SECONDS), 0);
+        }
+        long threads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("toupcam-snap")).count();
+        assertEquals(1, threads);
+    }
+
+}
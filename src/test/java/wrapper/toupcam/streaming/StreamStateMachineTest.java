@@ -0,0 +1,168 @@
+package wrapper.toupcam.streaming;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import wrapper.toupcam.App;
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.enumerations.StreamState;
+import wrapper.toupcam.libraries.SyntheticToupcam;
+import wrapper.toupcam.models.Resolution;
+
+public class StreamStateMachineTest {
+
+    private static final Resolution[] RESOLUTIONS = {new Resolution(160, 120)};
+
+    SyntheticToupcam camera;
+    App app;
+    final AtomicInteger frames = new AtomicInteger();
+
+    @Before
+    public void setup() {
+        camera = new SyntheticToupcam(1, RESOLUTIONS, 200, 0);
+        app = new App(camera);
+    }
+
+    @After
+    public void tearDown() {
+        app.stopStreaming();
+        app.getMetrics().unregister();
+    }
+
+    private HResult start() {
+        return app.startStreaming((FrameViewCallback) frame -> frames.incrementAndGet());
+    }
+
+    private void awaitFrames(int count) throws InterruptedException {
+        int target = frames.get() + count;
+        long deadline = System.currentTimeMillis() + 2000;
+        while (frames.get() < target && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertTrue(frames.get() >= target);
+    }
+
+    @Test
+    public void testPauseAndResume() throws Exception {
+        assertEquals(HResult.S_OK, start());
+        assertEquals(HResult.E_UNEXPECTED, start());
+        awaitFrames(5);
+
+        assertEquals(HResult.S_OK, app.pauseStreaming());
+        assertEquals(StreamState.PAUSED, app.getStreamState().getState());
+        assertFalse(app.isStreaming());
+        assertFalse(app.getMetrics().isStreaming());
+        Thread.sleep(30);
+        int paused = frames.get();
+        Thread.sleep(100);
+        assertEquals(paused, frames.get());
+        assertEquals(HResult.E_UNEXPECTED, app.pauseStreaming());
+
+        // resume must not pause again.
+        assertEquals(HResult.S_OK, app.resumeStreaming());
+        assertTrue(app.isStreaming());
+        awaitFrames(5);
+        assertEquals(HResult.E_UNEXPECTED, app.resumeStreaming());
+
+        app.stopStreaming();
+        assertEquals(StreamState.STOPPED, app.getStreamState().getState());
+        assertEquals(HResult.S_OK, start());
+        awaitFrames(5);
+    }
+
+    @Test
+    public void testModeFlipsWithoutRestart() throws Exception {
+        assertEquals(HResult.S_OK, start());
+        awaitFrames(3);
+        List<Long> videoLatencies = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(HResult.S_OK, app.setTriggerMode(1));
+            Thread.sleep(20);
+            int triggered = frames.get();
+            Thread.sleep(30);
+            assertEquals("frames in trigger mode without a trigger", triggered, frames.get());
+
+            CompletableFuture<Long> video = app.switchTriggerMode(0);
+            videoLatencies.add(video.get(1, TimeUnit.SECONDS));
+        }
+        for (long latency : videoLatencies) assertTrue(latency < TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(app.isStreaming());
+        assertEquals(20, app.getStreamState().getSwitches());
+        System.out.println(app.getStreamState());
+
+        // in trigger mode the first frame is the first triggered one.
+        CompletableFuture<Long> trigger = app.switchTriggerMode(1);
+        Thread.sleep(30);
+        assertFalse(trigger.isDone());
+        app.getTriggerImages(1);
+        assertTrue(trigger.get(1, TimeUnit.SECONDS) > TimeUnit.MILLISECONDS.toNanos(30));
+    }
+
+    @Test
+    public void testSwitchWhileStoppedCompletesAtOnce() throws Exception {
+        assertEquals(0L, (long) app.switchTriggerMode(1).get(1, TimeUnit.SECONDS));
+        assertEquals(0, app.getStreamState().getSwitches());
+    }
+
+    @Test
+    public void testFramesDuringSwitchAreDiscarded() throws Exception {
+        CountDownLatch changing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StreamStateMachine machine = new StreamStateMachine();
+        machine.start(() -> HResult.S_OK);
+        assertTrue(machine.admit(System.nanoTime()));
+
+        CompletableFuture<Long> firstFrame = new CompletableFuture<>();
+        Thread switcher = new Thread(() -> machine.switchMode(() -> {
+            changing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                return HResult.E_FAIL;
+            }
+            return HResult.S_OK;
+        }, firstFrame));
+        switcher.start();
+        changing.await();
+        assertEquals(StreamState.SWITCHING, machine.getState());
+        assertFalse(machine.admit(System.nanoTime()));
+        assertEquals(1, machine.getDiscardedFrames());
+        release.countDown();
+        switcher.join();
+
+        assertFalse(firstFrame.isDone());
+        assertTrue(machine.admit(System.nanoTime()));
+        assertTrue(firstFrame.get() > 0);
+        assertEquals(1, machine.getSwitchLatency().getCount());
+    }
+
+    @Test
+    public void testOldModeFramesAfterSwitchAreDiscarded() throws Exception {
+        StreamStateMachine machine = new StreamStateMachine();
+        machine.start(() -> HResult.S_OK);
+        long interval = TimeUnit.MILLISECONDS.toNanos(50), now = System.nanoTime();
+        assertTrue(machine.admit(now - 2 * interval));
+        assertTrue(machine.admit(now - interval));
+
+        CompletableFuture<Long> firstFrame = new CompletableFuture<>();
+        assertEquals(HResult.S_OK, machine.switchMode(() -> HResult.S_OK, firstFrame));
+        // still in flight when the switch returned.
+        assertFalse(machine.admit(System.nanoTime()));
+        assertFalse(firstFrame.isDone());
+        assertEquals(1, machine.getDiscardedFrames());
+
+        assertTrue(machine.admit(System.nanoTime() + interval));
+        assertTrue(firstFrame.isDone());
+        assertTrue(machine.admit(System.nanoTime() + 2 * interval));
+    }
+
+}
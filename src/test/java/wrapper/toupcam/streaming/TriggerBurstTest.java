@@ -0,0 +1,135 @@
+package wrapper.toupcam.streaming;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import wrapper.toupcam.App;
+import wrapper.toupcam.TestFrames;
+import wrapper.toupcam.callbacks.FrameViewCallback;
+import wrapper.toupcam.enumerations.HResult;
+import wrapper.toupcam.libraries.SyntheticToupcam;
+import wrapper.toupcam.models.Frame;
+import wrapper.toupcam.models.FrameView;
+import wrapper.toupcam.models.Resolution;
+import wrapper.toupcam.util.FrameConverter;
+
+public class TriggerBurstTest {
+
+    private static final Resolution[] RESOLUTIONS = {new Resolution(320, 240)};
+
+    SyntheticToupcam camera;
+    App app;
+
+    @Before
+    public void setup() {
+        camera = new SyntheticToupcam(1, RESOLUTIONS, 200, 0);
+        app = new App(camera);
+        assertEquals(HResult.S_OK, app.setTriggerMode(1));
+        assertEquals(HResult.S_OK, app.startStreaming((FrameViewCallback) frame -> { }));
+    }
+
+    @After
+    public void tearDown() {
+        app.stopStreaming();
+        app.getMetrics().unregister();
+    }
+
+    @Test
+    public void testBurstCollectsExactlyItsFrames() throws Exception {
+        for (int burst = 0; burst < 3; burst++) {
+            List<Frame> frames = app.triggerBurst(5, 2, TimeUnit.SECONDS).get(3, TimeUnit.SECONDS);
+            assertEquals(5, frames.size());
+            long previous = -1;
+            for (Frame frame : frames) {
+                assertEquals(320 * 240 * 3, frame.getLength());
+                assertTrue(frame.getLatencyNanos() > 0);
+                assertTrue(frame.getArrivalNanos() >= frame.getRequestNanos());
+                long sequence = frame.view().getBuffer().order(ByteOrder.nativeOrder()).getLong(0);
+                assertTrue(sequence > previous);
+                previous = sequence;
+            }
+        }
+        Thread.sleep(50);
+        // no frames beyond the triggered ones.
+        assertEquals(15, camera.getGeneratedFrames());
+    }
+
+    @Test
+    public void testOneBurstAtATime() throws Exception {
+        CompletableFuture<List<Frame>> first = app.triggerBurst(4, 2, TimeUnit.SECONDS);
+        CompletableFuture<List<Frame>> second = app.triggerBurst(4, 2, TimeUnit.SECONDS);
+        try {
+            second.get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(4, first.get(3, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void testBurstTimesOutAndCancelsTriggers() throws Exception {
+        TriggerBurst burst = new TriggerBurst(3, 16);
+        burst.arm(50, TimeUnit.MILLISECONDS);
+        try {
+            burst.getResult().get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        app.setTriggerMode(0);
+        try {
+            app.triggerBurst(2, 1, TimeUnit.SECONDS).get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            // video mode, the trigger itself fails.
+            assertFalse(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void testPullBurstAtThirtyTwoBits() throws Exception {
+        app.stopStreaming();
+        assertEquals(HResult.S_OK, app.startPullMode(32, (FrameViewCallback) frame -> { }));
+        List<Frame> frames = app.triggerBurst(3, 2, TimeUnit.SECONDS).get(3, TimeUnit.SECONDS);
+        assertEquals(3, frames.size());
+        for (Frame frame : frames) {
+            assertEquals(32, frame.getHeader().getBitcount());
+            assertEquals(320 * 240 * 4, frame.getLength());
+            assertTrue(frame.getLatencyNanos() > 0);
+        }
+    }
+
+    @Test
+    public void testFramesKeepTheirOwnHeader() throws Exception {
+        TriggerBurst burst = new TriggerBurst(2, FrameConverter.frameSize(8, 4, 32));
+        burst.arm(1, TimeUnit.SECONDS);
+        FrameView first = TestFrames.frame(8, 4, 32, i -> 1);
+        first.stamp(100, 1);
+        burst.onReceiveFrame(first);
+        FrameView second = TestFrames.frame(8, 4, 32, i -> 2);
+        second.stamp(200, 2);
+        burst.onReceiveFrame(second);
+
+        List<Frame> frames = burst.getResult().get(1, TimeUnit.SECONDS);
+        for (int i = 0; i < 2; i++) {
+            Frame frame = frames.get(i);
+            assertEquals(32, frame.getHeader().getBitcount());
+            assertEquals(i + 1, frame.getSequence());
+            assertEquals(i + 1, frame.getData()[0]);
+        }
+        assertEquals(2, burst.getLatenciesNanos().size());
+    }
+
+}
@@ -0,0 +1,61 @@
+package wrapper.toupcam.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import wrapper.toupcam.models.FrameBuffer;
+
+public class FrameBufferPoolTest {
+
+    @Test
+    public void testReleasedBuffersAreReused() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        FrameBuffer first = pool.lease(1280 * 960 * 3, 1280, 960);
+        assertEquals(1, pool.getOutstandingLeases());
+        first.release();
+
+        FrameBuffer second = pool.lease(1280 * 960 * 3, 1280, 960);
+        assertSame(first, second);
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        second.release();
+        assertEquals(0, pool.getOutstandingLeases());
+    }
+
+    @Test
+    public void testResolutionChangeDropsOldBuffers() {
+        FrameBufferPool pool = new FrameBufferPool();
+        FrameBuffer small = pool.lease(1280 * 960 * 3, 1280, 960);
+        FrameBuffer idle = pool.lease(1280 * 960 * 3, 1280, 960);
+        idle.release();
+
+        FrameBuffer large = pool.lease(2592 * 1944 * 3, 2592, 1944);
+        assertEquals(2592 * 1944 * 3, large.getData().length);
+        assertEquals(0, pool.getIdleCount());
+
+        // outstanding buffer of the old shape is not taken back.
+        small.release();
+        assertEquals(0, pool.getIdleCount());
+        large.release();
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getOutstandingLeases());
+    }
+
+    @Test
+    public void testIdleBuffersAreBounded() {
+        FrameBufferPool pool = new FrameBufferPool(1);
+        FrameBuffer a = pool.lease(16, 4, 1), b = pool.lease(16, 4, 1);
+        a.release();
+        b.release();
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleReleaseIsRejected() {
+        FrameBuffer buffer = new FrameBufferPool().lease(16, 4, 1);
+        buffer.release();
+        buffer.release();
+    }
+
+}
@@ -0,0 +1,161 @@
+package wrapper.toupcam.util;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.sun.jna.Memory;
+
+import wrapper.toupcam.models.ImageHeader;
+import wrapper.toupcam.models.ImageType;
+
+public class FrameConverterTest {
+
+    private static Memory syntheticFrame(int width, int height) {
+        int stride = FrameConverter.stride(width, 24);
+        Memory memory = new Memory(stride * height);
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < stride; col++)
+                memory.setByte(row * stride + col, (byte) (row * 31 + col));
+        return memory;
+    }
+
+    @Test
+    public void testBGRImageIsBulkCopyOfFrame() {
+        Memory frame = syntheticFrame(64, 48);
+        BufferedImage image = FrameConverter.toBGRImage(frame, 64, 48);
+
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, image.getType());
+        assertArrayEquals(frame.getByteArray(0, 64 * 48 * 3), FrameConverter.dataOf(image));
+    }
+
+    @Test
+    public void testPaddedRowsAreDropped() {
+        int width = 5, height = 3, stride = FrameConverter.stride(width, 24);
+        assertEquals(16, stride);
+        Memory frame = syntheticFrame(width, height);
+
+        byte[] bgr = FrameConverter.toByteArray(frame, width, height, ImageType.BGR);
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width * 3; col++)
+                assertEquals(frame.getByte(row * stride + col), bgr[row * width * 3 + col]);
+    }
+
+    @Test
+    public void testByteArrayOfTopDownGreyFrame() {
+        int width = 5, height = 3, stride = FrameConverter.stride(width, 8);
+        ImageHeader header = new ImageHeader();
+        header.setWidth(width);
+        header.setHeight(-height);
+        header.setBitcount(8);
+        ByteBuffer frame = ByteBuffer.allocate(stride * height);
+        for (int i = 0; i < stride * height; i++) frame.put(i, (byte) i);
+
+        byte[] bgr = FrameConverter.toByteArray(frame, header, ImageType.BGR);
+        assertEquals(width * height * 3, bgr.length);
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++)
+                for (int channel = 0; channel < 3; channel++)
+                    assertEquals((byte) (row * stride + col), bgr[(row * width + col) * 3 + channel]);
+    }
+
+    @Test
+    public void testChannelOrders() {
+        int width = 7, height = 5;
+        Memory frame = syntheticFrame(width, height);
+        byte[] bgr = FrameConverter.toByteArray(frame, width, height, ImageType.BGR);
+        byte[] abgr = FrameConverter.toByteArray(frame, width, height, ImageType.ABGR);
+        byte[] bgra = FrameConverter.toByteArray(frame, width, height, ImageType.BGRA);
+
+        for (int i = 0; i < width * height; i++) {
+            assertEquals((byte) 0xff, abgr[i * 4]);
+            assertEquals(bgr[i * 3], abgr[i * 4 + 1]);
+            assertEquals(bgr[i * 3 + 1], abgr[i * 4 + 2]);
+            assertEquals(bgr[i * 3 + 2], abgr[i * 4 + 3]);
+
+            assertEquals(bgr[i * 3], bgra[i * 4]);
+            assertEquals(bgr[i * 3 + 1], bgra[i * 4 + 1]);
+            assertEquals(bgr[i * 3 + 2], bgra[i * 4 + 2]);
+            assertEquals((byte) 0xff, bgra[i * 4 + 3]);
+        }
+
+        BufferedImage image = FrameConverter.toABGRImage(frame, width, height);
+        assertEquals(BufferedImage.TYPE_4BYTE_ABGR, image.getType());
+        assertArrayEquals(abgr, FrameConverter.dataOf(image));
+    }
+
+    private static ImageHeader header(int width, int height, int bitcount) {
+        ImageHeader header = new ImageHeader();
+        header.setWidth(width);
+        header.setHeight(height);
+        header.setBitcount(bitcount);
+        return header;
+    }
+
+    @Test
+    public void testCropReadsOnlyTheRegion() {
+        int width = 7, height = 5, stride = FrameConverter.stride(width, 24);
+        Memory frame = syntheticFrame(width, height);
+        Rectangle roi = new Rectangle(2, 1, 3, 2);
+
+        BufferedImage crop = FrameConverter.crop(frame, header(width, height, 24), roi);
+        assertEquals(3, crop.getWidth());
+        assertEquals(2, crop.getHeight());
+        byte[] data = FrameConverter.dataOf(crop);
+        for (int row = 0; row < roi.height; row++)
+            for (int i = 0; i < roi.width * 3; i++)
+                assertEquals(frame.getByte((roi.y + row) * stride + roi.x * 3 + i), data[row * roi.width * 3 + i]);
+    }
+
+    @Test
+    public void testDecimationAveragesBlocks() {
+        int width = 10, height = 9;
+        Memory frame = syntheticFrame(width, height);
+        ByteBuffer buffer = frame.getByteBuffer(0, FrameConverter.frameSize(width, height, 24));
+        BufferedImage full = FrameConverter.toBGRImage(buffer, width, height);
+
+        for (int factor : new int[] {2, 4}) {
+            BufferedImage small = FrameConverter.decimate(buffer, header(width, height, 24), factor);
+            assertEquals(width / factor, small.getWidth());
+            assertEquals(height / factor, small.getHeight());
+            byte[] expected = FrameConverter.dataOf(full), actual = FrameConverter.dataOf(small);
+            for (int y = 0; y < small.getHeight(); y++)
+                for (int x = 0; x < small.getWidth(); x++)
+                    for (int c = 0; c < 3; c++) {
+                        int sum = 0;
+                        for (int dy = 0; dy < factor; dy++)
+                            for (int dx = 0; dx < factor; dx++)
+                                sum += expected[((y * factor + dy) * width + x * factor + dx) * 3 + c] & 0xff;
+                        int average = (sum + factor * factor / 2) / (factor * factor);
+                        assertEquals(average, actual[(y * small.getWidth() + x) * 3 + c] & 0xff);
+                    }
+        }
+    }
+
+    @Test
+    public void testDecimatedRegionOfGreyAndBGRXFrames() {
+        Memory grey = new Memory(FrameConverter.frameSize(6, 4, 8));
+        for (int i = 0; i < grey.size(); i++) grey.setByte(i, (byte) (i % 8 * 10));
+        BufferedImage small = FrameConverter.decimate(grey.getByteBuffer(0, grey.size()), header(6, 4, 8),
+                new Rectangle(2, 0, 4, 4), 2);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, small.getType());
+        // stride 8, columns 2,3 average to 25 and columns 4,5 to 45 on every row.
+        assertArrayEquals(new byte[] {25, 45, 25, 45}, FrameConverter.dataOf(small));
+
+        Memory bgrx = new Memory(FrameConverter.frameSize(2, 2, 32));
+        for (int i = 0; i < bgrx.size(); i++) bgrx.setByte(i, (byte) (i % 4 == 3 ? 0xff : 40 * (i % 4) + i / 4));
+        BufferedImage pixel = FrameConverter.decimate(bgrx.getByteBuffer(0, bgrx.size()), header(2, 2, 32), 2);
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, pixel.getType());
+        assertArrayEquals(new byte[] {2, 42, 82}, FrameConverter.dataOf(pixel));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegionOutsideFrameIsRejected() {
+        FrameConverter.crop(syntheticFrame(8, 8), header(8, 8, 24), new Rectangle(4, 4, 8, 2));
+    }
+
+}
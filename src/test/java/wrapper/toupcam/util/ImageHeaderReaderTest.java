@@ -0,0 +1,52 @@
+package wrapper.toupcam.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.sun.jna.Memory;
+
+import wrapper.toupcam.models.ImageHeader;
+
+public class ImageHeaderReaderTest {
+
+    private static Memory header(int width, int height, int bitcount, int imageSize) {
+        Memory memory = new Memory(ImageHeaderReader.HEADER_SIZE);
+        memory.clear();
+        memory.setInt(0, 40);
+        memory.setInt(4, width);
+        memory.setInt(8, height);
+        memory.setShort(12, (short) 1);
+        memory.setShort(14, (short) bitcount);
+        memory.setInt(20, imageSize);
+        memory.setInt(32, 7);
+        return memory;
+    }
+
+    @Test
+    public void testMatchesFieldByFieldParser() {
+        Memory memory = header(1280, -960, 24, 1280 * 960 * 3);
+        ImageHeader expected = ParserUtil.parseImageHeader(memory);
+        ImageHeader actual = new ImageHeaderReader().read(memory);
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testFlagsOnlyRealFormatChanges() {
+        ImageHeaderReader reader = new ImageHeaderReader();
+        ImageHeader first = reader.read(header(640, 480, 24, 0));
+        assertTrue(reader.isFormatChanged());
+
+        assertSame(first, reader.read(header(640, 480, 24, 640 * 480 * 3)));
+        assertFalse(reader.isFormatChanged());
+
+        reader.read(header(640, 480, 8, 0));
+        assertTrue(reader.isFormatChanged());
+        reader.read(header(320, 240, 8, 0));
+        assertTrue(reader.isFormatChanged());
+        reader.read(header(320, 240, 8, 0));
+        assertFalse(reader.isFormatChanged());
+        assertEquals(3, reader.getFormatChanges());
+    }
+
+}